@@ -0,0 +1,237 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import io.github.emanuelpalm.plisp.runtime.Budget;
+import io.github.emanuelpalm.plisp.runtime.BytecodeCompiler;
+import io.github.emanuelpalm.plisp.runtime.ClosureCompiler;
+import io.github.emanuelpalm.plisp.runtime.Environment;
+import io.github.emanuelpalm.plisp.runtime.Evaluator;
+import io.github.emanuelpalm.plisp.runtime.HeapMachine;
+import io.github.emanuelpalm.plisp.runtime.Interpreter;
+import io.github.emanuelpalm.plisp.runtime.Machine;
+import io.github.emanuelpalm.plisp.runtime.Memoizer;
+import io.github.emanuelpalm.plisp.runtime.ParallelEvaluator;
+import io.github.emanuelpalm.plisp.runtime.Program;
+import io.github.emanuelpalm.plisp.runtime.Resolver;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+import io.github.emanuelpalm.plisp.runtime.TieredEvaluator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the programs of the benchmark corpus using every evaluation engine.
+ * <p>
+ * The corpus holds classic Lisp workloads, with numbers represented as lists of ones: Gabriel's TAK and DERIV, the
+ * eight queens problem, substitution in a large tree, sorting, and symbolic differentiation with simplification. Each
+ * program is evaluated a number of times by each engine after having been warmed up, and is expected to produce the
+ * same result as when evaluated by {@link Evaluator#eval(SExpr)}.
+ * <p>
+ * Results are written as tab-separated rows, one per program and engine, with the columns named by its header line.
+ * Wall times are in milliseconds. Peak heap is the greatest heap usage observed during any run, and allocated memory
+ * is the average amount of bytes allocated per run by the thread running the benchmark, both in kilobytes. Cons cells
+ * are counted using a {@link Budget}, and are only available for engines that accept one. Unavailable values are
+ * written as "-", and failed evaluations as comment lines. The format is versioned by the first line of the output,
+ * and is only ever extended with new columns.
+ */
+public class Corpus {
+    /** Programs of the corpus, found as resources in the corpus directory. */
+    public static final List<String> PROGRAMS = Arrays.asList("deriv", "diff", "queens", "sort", "subst", "tak");
+
+    private static final String VERSION = "# plisp corpus 1";
+    private static final String HEADER = "program\tengine\truns\tmedian_ms\tmin_ms\tpeak_heap_kb\tallocated_kb\tconses";
+    private static final List<String> FLAGS = Arrays.asList("--programs", "--engines", "--warmups", "--runs");
+    private static final String USAGE = "Usage: Corpus [--programs=<name>,...] [--engines=<name>,...] "
+            + "[--warmups=<n>] [--runs=<n>]";
+
+    private static final Map<String, Engine> ENGINES = new LinkedHashMap<>();
+
+    static {
+        ENGINES.put("evaluator", new Engine(e -> () -> Evaluator.eval(e), Evaluator::eval));
+        ENGINES.put("resolved", new Engine(e -> {
+            final Program p = Resolver.resolve(e);
+            return () -> Evaluator.eval(p);
+        }, (e, budget) -> Evaluator.eval(Resolver.resolve(e), budget)));
+        ENGINES.put("machine", new Engine(e -> () -> Machine.eval(e), null));
+        ENGINES.put("heap", new Engine(e -> () -> HeapMachine.eval(e), null));
+        ENGINES.put("interpreter", new Engine(e -> new Interpreter(e)::eval, null));
+        ENGINES.put("compiled", new Engine(e -> {
+            final Function<Environment, SExpr> code = ClosureCompiler.compile(Resolver.resolve(e));
+            return () -> code.apply(Environment.EMPTY);
+        }, null));
+        ENGINES.put("bytecode", new Engine(e -> {
+            final Function<Environment, SExpr> code = BytecodeCompiler.compile(Resolver.resolve(e));
+            return () -> code.apply(Environment.EMPTY);
+        }, null));
+        ENGINES.put("tiered", new Engine(e -> new TieredEvaluator(Resolver.resolve(e),
+                TieredEvaluator.DEFAULT_THRESHOLD, promotion -> {
+        })::eval, null));
+        ENGINES.put("memo", new Engine(e -> () -> new Memoizer(Resolver.resolve(e), d -> true,
+                Memoizer.DEFAULT_CAPACITY).eval(), null));
+        ENGINES.put("parallel", new Engine(e -> new ParallelEvaluator(Resolver.resolve(e))::eval, null));
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Map<String, String> flags = new HashMap<>();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            flags.put(separator < 0 ? arg : arg.substring(0, separator),
+                    separator < 0 ? "" : arg.substring(separator + 1));
+        }
+        final List<String> programs = listOf(flags.get("--programs"), PROGRAMS);
+        final List<String> engines = listOf(flags.get("--engines"), new ArrayList<>(ENGINES.keySet()));
+        final int warmups = countOf(flags.get("--warmups"), 5);
+        final int runs = countOf(flags.get("--runs"), 10);
+        if (!FLAGS.containsAll(flags.keySet()) || !PROGRAMS.containsAll(programs)
+                || !ENGINES.keySet().containsAll(engines) || warmups < 0 || runs < 1) {
+            System.err.println(USAGE);
+            return;
+        }
+
+        System.out.println(VERSION);
+        System.out.println(HEADER);
+        for (final String program : programs) {
+            final SExpr e = Parser.parse(sourceOf(program));
+            final SExpr expected = Evaluator.eval(e);
+            for (final String engine : engines) {
+                try {
+                    System.out.println(program + "\t" + engine + "\t" + ENGINES.get(engine).run(e, expected, warmups,
+                            runs));
+
+                } catch (final RuntimeException | StackOverflowError exception) {
+                    System.out.println("# " + program + "\t" + engine + "\tfailed: " + exception);
+                }
+            }
+        }
+    }
+
+    /** Reads source of named corpus program. */
+    public static String sourceOf(final String program) throws IOException {
+        try (final InputStream in = Corpus.class.getResourceAsStream("/corpus/" + program + ".plp")) {
+            if (in == null) {
+                throw new IOException("Corpus program '" + program + "' not found.");
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<String> listOf(final String value, final List<String> defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : Arrays.asList(value.split(","));
+    }
+
+    private static int countOf(final String value, final int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Some way of evaluating programs.
+     */
+    private static final class Engine {
+        private final Function<SExpr, Supplier<SExpr>> prepare;
+        private final Budgeted budgeted;
+
+        /**
+         * Creates engine.
+         *
+         * @param prepare  Function preparing a program for evaluation, outside of measurements.
+         * @param budgeted Function evaluating a program using a budget, or null if not supported.
+         */
+        private Engine(final Function<SExpr, Supplier<SExpr>> prepare, final Budgeted budgeted) {
+            this.prepare = prepare;
+            this.budgeted = budgeted;
+        }
+
+        /** Measures evaluations of expression e, producing the columns of a result row following the engine name. */
+        private String run(final SExpr e, final SExpr expected, final int warmups, final int runs) {
+            final Supplier<SExpr> evaluation = prepare.apply(e);
+            for (int i = 0; i < warmups; ++i) {
+                check(evaluation.get(), expected);
+            }
+
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final boolean isCountingBytes = threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+            final long thread = Thread.currentThread().getId();
+
+            final long[] nanos = new long[runs];
+            long peak = 0, allocated = 0;
+            for (int i = 0; i < runs; ++i) {
+                System.gc();
+                for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    pool.resetPeakUsage();
+                }
+                final long bytes = isCountingBytes
+                        ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread) : 0;
+                final long start = System.nanoTime();
+                final SExpr result = evaluation.get();
+                nanos[i] = System.nanoTime() - start;
+                if (isCountingBytes) {
+                    allocated += ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread) - bytes;
+                }
+                check(result, expected);
+
+                long usage = 0;
+                for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP) {
+                        usage += pool.getPeakUsage().getUsed();
+                    }
+                }
+                peak = Math.max(peak, usage);
+            }
+            Arrays.sort(nanos);
+
+            String conses = "-";
+            if (budgeted != null) {
+                final Budget budget = new Budget(Budget.UNLIMITED, Budget.UNLIMITED, Budget.UNLIMITED);
+                check(budgeted.eval(e, budget), expected);
+                conses = Long.toString(budget.conses());
+            }
+            return String.format(Locale.ROOT, "%d\t%.3f\t%.3f\t%d\t%s\t%s", runs, nanos[runs / 2] / 1e6,
+                    nanos[0] / 1e6, peak / 1024, isCountingBytes ? Long.toString(allocated / runs / 1024) : "-",
+                    conses);
+        }
+
+        private static void check(final SExpr result, final SExpr expected) {
+            if (!result.equals(expected)) {
+                throw new IllegalStateException("Unexpected result " + result + ".");
+            }
+        }
+    }
+
+    /**
+     * Evaluates expressions using budgets.
+     */
+    private interface Budgeted {
+        SExpr eval(final SExpr e, final Budget budget);
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.emanuelpalm.plisp;
+
+/**
+ * Generates benchmark inputs of varying size.
+ */
+public class Inputs {
+    private static final String SUBST = "((label subst (lambda (x y z) (cond\n" +
+            "    ((atom z) (cond ((eq z y) x) ('t z)))\n" +
+            "    ('t (cons (subst x y (car z)) (subst x y (cdr z)))))))\n" +
+            "  ((label cadr (lambda (x) (car (cdr x))))\n" +
+            "    (cadr (subst 'm 'b '(%1$s %1$s)))))";
+
+    private Inputs() {}
+
+    /** Creates source of list with given amount of elements, alternating between atoms and nested lists. */
+    public static String listOf(final int size) {
+        final StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(i % 2 == 0 ? "a" + i : "(b " + i + " 'c)");
+        }
+        return builder.append(')').toString();
+    }
+
+    /** Creates source of balanced binary tree with given amount of leaves, alternating between atoms a and b. */
+    public static String treeOf(final int size) {
+        if (size <= 1) {
+            return size == 1 ? "a" : "()";
+        }
+        if (size == 2) {
+            return "(a b)";
+        }
+        return "(" + treeOf(size / 2) + " " + treeOf(size - size / 2) + ")";
+    }
+
+    /** Creates source of program substituting atoms in two trees with given amount of leaves. */
+    public static String programOf(final int size) {
+        return String.format(SUBST, treeOf(size));
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.emanuelpalm.plisp.anaylzer;
+
+import io.github.emanuelpalm.plisp.Inputs;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyzerBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private SExpr program;
+
+    @Setup
+    public void setup() {
+        program = Parser.parse(Inputs.programOf(size));
+    }
+
+    @Benchmark
+    public void checkEnvironmentOf() throws AnalyzerException {
+        Analyzer.checkEnvironmentOf(program);
+    }
+}
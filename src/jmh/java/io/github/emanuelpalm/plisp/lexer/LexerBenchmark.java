@@ -0,0 +1,50 @@
+package io.github.emanuelpalm.plisp.lexer;
+
+import io.github.emanuelpalm.plisp.Inputs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Inputs.programOf(size);
+    }
+
+    @Benchmark
+    public void next(final Blackhole blackhole) {
+        final Lexer lexer = Lexer.fromString(source);
+        Token token;
+        do {
+            token = lexer.next();
+            blackhole.consume(token);
+        } while (token.type() != TokenClass.END);
+    }
+
+    @Benchmark
+    public TokenBuffer buffer() {
+        return new TokenBuffer(Lexer.fromString(source));
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.emanuelpalm.plisp.parser;
+
+import io.github.emanuelpalm.plisp.Inputs;
+import io.github.emanuelpalm.plisp.lexer.Lexer;
+import io.github.emanuelpalm.plisp.lexer.TokenBuffer;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private String source;
+    private TokenBuffer buffer;
+    private int state;
+
+    @Setup
+    public void setup() {
+        source = Inputs.programOf(size);
+        buffer = new TokenBuffer(Lexer.fromString(source));
+        state = buffer.state();
+    }
+
+    /** Parses tokens lexed in advance. */
+    @Benchmark
+    public SExpr parse() {
+        buffer.restore(state);
+        return Parser.parse(buffer);
+    }
+
+    /** Lexes and parses source. */
+    @Benchmark
+    public SExpr parseString() {
+        return Parser.parse(source);
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.Inputs;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluatorBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    @Param({"evaluator", "resolved", "closure", "bytecode"})
+    public String engine;
+
+    private Function<Environment, SExpr> function;
+
+    @Setup
+    public void setup() {
+        final SExpr expr = Parser.parse(Inputs.programOf(size));
+        final Program program = Resolver.resolve(expr);
+        switch (engine) {
+            case "evaluator":
+                function = a -> Evaluator.eval(expr);
+                break;
+
+            case "resolved":
+                function = a -> Evaluator.eval(program);
+                break;
+
+            case "closure":
+                function = ClosureCompiler.compile(program);
+                break;
+
+            case "bytecode":
+                function = BytecodeCompiler.compile(program);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine + ".");
+        }
+    }
+
+    @Benchmark
+    public SExpr eval() {
+        return function.apply(Environment.EMPTY);
+    }
+}
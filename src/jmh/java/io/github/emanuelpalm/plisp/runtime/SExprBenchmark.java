@@ -0,0 +1,61 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.Inputs;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SExprBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private SExpr list, copy;
+
+    @Setup
+    public void setup() {
+        list = Parser.parse(Inputs.listOf(size));
+        copy = Parser.parse(Inputs.listOf(size));
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return list.equals(copy);
+    }
+
+    @Benchmark
+    public int size() {
+        return list.size();
+    }
+
+    @Benchmark
+    public SExpr concat() {
+        return list.concat(copy);
+    }
+
+    @Benchmark
+    public SExpr zip() {
+        return list.zip(copy);
+    }
+
+    @Benchmark
+    public String print() {
+        return list.toString();
+    }
+}
@@ -0,0 +1,271 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.anaylzer.Analyzer;
+import io.github.emanuelpalm.plisp.anaylzer.AnalyzerException;
+import io.github.emanuelpalm.plisp.anaylzer.Prototype;
+import io.github.emanuelpalm.plisp.anaylzer.Prototypes;
+import io.github.emanuelpalm.plisp.lexer.Lexer;
+import io.github.emanuelpalm.plisp.lexer.Token;
+import io.github.emanuelpalm.plisp.lexer.TokenBuffer;
+import io.github.emanuelpalm.plisp.lexer.TokenClass;
+import io.github.emanuelpalm.plisp.lexer.TokenOrigin;
+import io.github.emanuelpalm.plisp.lexer.TokenReader;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import io.github.emanuelpalm.plisp.parser.ParserException;
+import io.github.emanuelpalm.plisp.parser.Rule;
+import io.github.emanuelpalm.plisp.runtime.Image;
+import io.github.emanuelpalm.plisp.runtime.Positions;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed on-disk cache of parsed and analyzed programs.
+ * <p>
+ * Programs are keyed by the SHA-256 hash of their source code, which is combined with a fingerprint of the classes used
+ * to lex, parse, analyze and store them. Any change to those classes therefore makes entries written by other versions
+ * unreachable, after which they are eventually evicted. Parsed programs are stored as {@link Image}s, which are mapped
+ * into memory and verified when loaded, and programs found correct by {@link Analyzer} are additionally given an empty
+ * marker file. Corrupt or unreadable images are treated as missing.
+ * <p>
+ * Entries are first written to temporary files, which are then atomically moved into place. Any number of processes
+ * may therefore use the same cache directory, and will never observe partially written entries. Files used are touched,
+ * and whenever an entry is written, the files least recently used are removed until the cache fits within its
+ * capacity. The cache is only an optimization, which is why failing to write or evict entries is silently ignored.
+ */
+public class Cache {
+    /** Default maximum size of cache directory, in bytes. */
+    public static final long DEFAULT_CAPACITY = 256L << 20;
+
+    private static final String VERSION = "plisp cache 1";
+    private static final Class<?>[] CLASSES = {Lexer.class, Token.class, TokenBuffer.class, TokenClass.class,
+            TokenOrigin.class, TokenReader.class, Parser.class, ParserException.class, Rule.class, Analyzer.class,
+            AnalyzerException.class, Prototype.class, Prototypes.class, Image.class, Positions.class};
+    private static final long BLOCK = 4096; // Smallest amount of disk space assumed to be used by any file.
+    private static final byte[] fingerprint = fingerprintOf(CLASSES);
+
+    private final Path directory;
+    private final long capacity;
+
+    /**
+     * Creates cache using given directory, which is created when first written to.
+     *
+     * @param directory Cache directory.
+     * @param capacity  Maximum size of cache directory, in bytes.
+     */
+    public Cache(final Path directory, final long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity must not be negative.");
+        }
+        this.directory = directory;
+        this.capacity = capacity;
+    }
+
+    /** Default cache directory, which is the plisp directory of the user's cache directory. */
+    public static Path defaultDirectory() {
+        final String cache = System.getenv("XDG_CACHE_HOME");
+        return cache != null && !cache.isEmpty()
+                ? Paths.get(cache, "plisp")
+                : Paths.get(System.getProperty("user.home"), ".cache", "plisp");
+    }
+
+    /**
+     * Gets program in given source file, parsing it unless already cached.
+     *
+     * @param source      Program source file.
+     * @param isAnalyzing Whether to also make sure that the program passes analysis, unless already known to.
+     * @throws IOException       If the source file could not be read.
+     * @throws ParserException   If the program could not be parsed.
+     * @throws AnalyzerException If analyzing and the program did not pass analysis.
+     */
+    public SExpr load(final File source, final boolean isAnalyzing) throws IOException, AnalyzerException {
+        final BasicFileAttributes attributes = Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+        final String key = keyOf(source.toPath());
+        final Path image = directory.resolve(key + ".plpi");
+        final Path analyzed = directory.resolve(key + ".analyzed");
+
+        SExpr expr = null;
+        if (Files.isRegularFile(image)) {
+            try {
+                expr = Image.mapVerified(image.toFile());
+                touch(image);
+
+            } catch (final IOException e) {
+                // Evicted, unreadable or corrupt; parse again.
+            }
+        }
+        if (expr == null) {
+            final SExpr parsed = Parser.parse(new TokenBuffer(Lexer.fromFile(source)));
+            if (isUnchanged(source.toPath(), attributes)) {
+                store(image, out -> Image.write(parsed, out));
+            }
+            expr = parsed;
+        }
+
+        if (isAnalyzing) {
+            if (Files.exists(analyzed)) {
+                touch(analyzed);
+
+            } else {
+                Analyzer.checkEnvironmentOf(expr);
+                store(analyzed, out -> {
+                });
+            }
+        }
+        return expr;
+    }
+
+    /** Determines whether file at given path still has given size and modification time, as it had when hashed. */
+    private static boolean isUnchanged(final Path path, final BasicFileAttributes attributes) throws IOException {
+        final BasicFileAttributes current = Files.readAttributes(path, BasicFileAttributes.class);
+        return current.size() == attributes.size()
+                && current.lastModifiedTime().equals(attributes.lastModifiedTime());
+    }
+
+    /** Writes given contents to file at given path, without exposing the file until completely written. */
+    private void store(final Path path, final Contents contents) {
+        try {
+            Files.createDirectories(directory);
+            final Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try {
+                try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                    contents.write(out);
+                }
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            evict();
+
+        } catch (final IOException e) {
+            // Entry not stored.
+        }
+    }
+
+    /** Removes least recently used files until the cache fits within its capacity. */
+    private void evict() throws IOException {
+        final List<Stored> stored = new ArrayList<>();
+        long size = 0;
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path path : (Iterable<Path>) files::iterator) {
+                try {
+                    final Stored s = new Stored(path, Files.readAttributes(path, BasicFileAttributes.class));
+                    stored.add(s);
+                    size += s.size;
+
+                } catch (final IOException e) {
+                    // Removed by some other process.
+                }
+            }
+        }
+        stored.sort(Comparator.comparing(s -> s.used));
+        for (int i = 0; i < stored.size() && size > capacity; ++i) {
+            try {
+                Files.deleteIfExists(stored.get(i).path);
+
+            } catch (final IOException e) {
+                // In use or already removed.
+            }
+            size -= stored.get(i).size;
+        }
+    }
+
+    private static void touch(final Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+
+        } catch (final IOException e) {
+            // Entry is used, but might be evicted early.
+        }
+    }
+
+    /** Hashes program source in file at given path together with the fingerprint of this version of plisp. */
+    private static String keyOf(final Path source) throws IOException {
+        final MessageDigest digest = sha256();
+        digest.update(fingerprint);
+        try (final InputStream in = Files.newInputStream(source)) {
+            final byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            builder.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    /** Hashes cache version and the class files of given classes, ignoring any class files not found. */
+    private static byte[] fingerprintOf(final Class<?>[] classes) {
+        final MessageDigest digest = sha256();
+        digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+        final byte[] buffer = new byte[8192];
+        for (final Class<?> c : classes) {
+            digest.update(c.getName().getBytes(StandardCharsets.UTF_8));
+            try (final InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class")) {
+                if (in == null) {
+                    continue;
+                }
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, length);
+                }
+
+            } catch (final IOException e) {
+                // Class identified by name only.
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM.", e);
+        }
+    }
+
+    /**
+     * Writes the contents of some cache file.
+     */
+    private interface Contents {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * File found in cache directory.
+     */
+    private static final class Stored {
+        private final Path path;
+        private final FileTime used;
+        private final long size;
+
+        private Stored(final Path path, final BasicFileAttributes attributes) {
+            this.path = path;
+            this.used = attributes.lastModifiedTime();
+            this.size = Math.max(BLOCK, (attributes.size() + BLOCK - 1) / BLOCK * BLOCK);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.emanuelpalm.plisp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Client of some {@link Daemon}, and main class of the daemon client command.
+ * <p>
+ * The command sends a program file, or program source read from standard input if the file is given as "-", to a
+ * running daemon, and prints the result, exactly as if the program had been evaluated by {@link Main}.
+ */
+public class Client implements Closeable {
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /** Connects to daemon listening on given loopback port. */
+    public Client(final int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /** Requests evaluation of given program source. */
+    public Reply eval(final String source) throws IOException {
+        final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        out.write(("EVAL " + bytes.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        return receive();
+    }
+
+    /** Requests evaluation of program file at given path, which is resolved relative to the current directory. */
+    public Reply eval(final Path path) throws IOException {
+        out.write(("FILE " + path.toAbsolutePath() + "\n").getBytes(StandardCharsets.UTF_8));
+        return receive();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private Reply receive() throws IOException {
+        out.flush();
+        final String header = Daemon.readLine(in);
+        if (header == null) {
+            throw new IOException("Daemon closed connection.");
+        }
+        final int separator = header.indexOf(' ');
+        final int length = separator < 0 ? -1 : Daemon.lengthOf(header.substring(separator + 1));
+        final String body = length < 0 ? null : Daemon.readBody(in, length);
+        if (body == null) {
+            throw new IOException("Invalid daemon response.");
+        }
+        return new Reply(header.startsWith("OK "), body);
+    }
+
+    public static void main(final String[] args) {
+        if (args.length == 0 || args.length > 2 || args.length == 2 && !args[1].startsWith("--port=")) {
+            System.err.println("Usage: ./plisp-client <file>|- [--port=<port>]");
+            return;
+        }
+        final int port;
+        try {
+            port = args.length == 2 ? Integer.parseInt(args[1].substring(7)) : Daemon.DEFAULT_PORT;
+
+        } catch (final NumberFormatException e) {
+            System.err.println("Usage: ./plisp-client <file>|- [--port=<port>]");
+            return;
+        }
+
+        try (final Client client = new Client(port)) {
+            final Reply reply = args[0].equals("-") ? client.eval(read(System.in)) : client.eval(Paths.get(args[0]));
+            if (reply.isOk()) {
+                System.out.println(reply.body());
+
+            } else {
+                System.err.println(reply.body());
+            }
+
+        } catch (final IOException e) {
+            System.err.println("Daemon error: " + e.getMessage());
+        }
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Daemon reply to some request.
+     */
+    public static final class Reply {
+        private final boolean isOk;
+        private final String body;
+
+        private Reply(final boolean isOk, final String body) {
+            this.isOk = isOk;
+            this.body = body;
+        }
+
+        /** Whether evaluation succeeded. */
+        public boolean isOk() {
+            return isOk;
+        }
+
+        /** Printed result if evaluation succeeded, or error message otherwise. */
+        public String body() {
+            return body;
+        }
+
+        @Override
+        public String toString() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.lexer.Lexer;
+import io.github.emanuelpalm.plisp.lexer.TokenBuffer;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import io.github.emanuelpalm.plisp.parser.ParserException;
+import io.github.emanuelpalm.plisp.runtime.Budget;
+import io.github.emanuelpalm.plisp.runtime.Evaluator;
+import io.github.emanuelpalm.plisp.runtime.Printer;
+import io.github.emanuelpalm.plisp.runtime.Program;
+import io.github.emanuelpalm.plisp.runtime.Resolver;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+import io.github.emanuelpalm.plisp.runtime.SExprException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Evaluation server, keeping one JVM warm across many evaluations.
+ * <p>
+ * The daemon listens on a loopback socket and evaluates programs sent to it by {@link Client}s, avoiding the cost of
+ * starting a new JVM, and letting the JIT compiler optimize the evaluator across requests. Each connection may send
+ * any number of requests, one at a time. Requests are evaluated concurrently on a fixed pool of workers, each using a
+ * fresh budget that is cancelled if the evaluation does not complete within the configured timeout.
+ * <p>
+ * Requests and responses consist of a header line, followed by a body of the amount of bytes given in the header. A
+ * request is either {@code EVAL <length>} followed by program source, or {@code FILE <path>} without any body. The
+ * response is either {@code OK <length>} followed by the printed result, or {@code ERROR <length>} followed by an error
+ * message. All text is UTF-8.
+ * <p>
+ * Files are parsed and resolved once, and are kept in memory until changed or evicted by files requested more
+ * recently. Interned atoms are shared by all requests. As any local user may connect to the daemon, it must not be
+ * given access to files or resources those users should not have.
+ */
+public class Daemon implements Closeable {
+    /** Default port listened to. */
+    public static final int DEFAULT_PORT = 7421;
+
+    /** Default maximum time spent evaluating a request, in milliseconds. */
+    public static final long DEFAULT_TIMEOUT = 10000;
+
+    /** Maximum size of request header lines and bodies, in bytes. */
+    static final int MAX_REQUEST = 1 << 26;
+
+    private static final int FILE_CAPACITY = 256;
+
+    private final ServerSocket socket;
+    private final long timeout;
+    private final Supplier<Budget> budgets;
+    private final Printer printer;
+    private final ExecutorService connections, workers;
+    private final ScheduledExecutorService timer;
+    private final Map<Path, Parsed> files = new LinkedHashMap<Path, Parsed>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Path, Parsed> eldest) {
+            return size() > FILE_CAPACITY;
+        }
+    };
+
+    /**
+     * Creates daemon listening on given loopback port.
+     *
+     * @param port    Port to listen to, or 0 if any free port may be used.
+     * @param threads Amount of requests evaluated concurrently.
+     * @param timeout Maximum time spent evaluating a request, in milliseconds, or 0 if unlimited.
+     * @param budgets Function providing a new budget for each evaluation.
+     * @param printer Printer used to print results.
+     * @throws IOException If the port could not be listened to.
+     */
+    public Daemon(final int port, final int threads, final long timeout, final Supplier<Budget> budgets,
+                  final Printer printer) throws IOException {
+        if (threads < 1 || timeout < 0) {
+            throw new IllegalArgumentException("Daemon threads must be positive and timeout not negative.");
+        }
+        this.socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.timeout = timeout;
+        this.budgets = budgets;
+        this.printer = printer;
+        this.connections = Executors.newCachedThreadPool(daemonThreads("plisp-connection"));
+        this.workers = Executors.newFixedThreadPool(threads, daemonThreads("plisp-worker"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("plisp-timer"));
+    }
+
+    /** Port listened to. */
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    /** Accepts connections until closed. */
+    public void run() throws IOException {
+        while (true) {
+            final Socket connection;
+            try {
+                connection = socket.accept();
+
+            } catch (final SocketException e) {
+                if (socket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            connections.execute(() -> serve(connection));
+        }
+    }
+
+    /** Stops accepting connections, and abandons any requests being evaluated. */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        connections.shutdownNow();
+        workers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /** Reads requests from given connection, writing a response to each, until the connection is closed. */
+    private void serve(final Socket connection) {
+        try (final Socket c = connection;
+             final InputStream in = new BufferedInputStream(c.getInputStream());
+             final OutputStream out = new BufferedOutputStream(c.getOutputStream())) {
+            c.setTcpNoDelay(true);
+            String header;
+            while ((header = readLine(in)) != null) {
+                final Response response;
+                if (header.startsWith("EVAL ")) {
+                    final int length = lengthOf(header.substring(5));
+                    final String source = length < 0 ? null : readBody(in, length);
+                    response = source == null
+                            ? Response.fatal("Request error: Invalid body.")
+                            : submit(() -> respond(() -> Resolver.resolve(Parser.parse(source))));
+
+                } else if (header.startsWith("FILE ")) {
+                    final String path = header.substring(5);
+                    response = submit(() -> respond(() -> programOf(Paths.get(path))));
+
+                } else {
+                    response = Response.fatal("Request error: Unknown request.");
+                }
+                response.write(out);
+                out.flush();
+                if (response.isFatal) {
+                    return;
+                }
+            }
+
+        } catch (final IOException e) {
+            // Connection lost; nothing left to respond to.
+        }
+    }
+
+    /** Evaluates given request on a worker, waiting for its response. */
+    private Response submit(final Callable<Response> request) {
+        try {
+            final Future<Response> response = workers.submit(request);
+            return response.get();
+
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.fatal("Daemon error: Interrupted.");
+
+        } catch (final ExecutionException e) {
+            return Response.error("Daemon error: " + e.getCause());
+
+        } catch (final RejectedExecutionException e) {
+            return Response.fatal("Daemon error: Shutting down.");
+        }
+    }
+
+    /** Evaluates program provided by given function, producing a response with the result or any error. */
+    private Response respond(final ProgramSource source) {
+        final Program program;
+        try {
+            program = source.get();
+
+        } catch (final IOException | InvalidPathException e) {
+            return Response.error("File error: " + e.getMessage());
+
+        } catch (final ParserException e) {
+            return Response.error("Parser error: " + e.getMessage());
+
+        } catch (final StackOverflowError e) {
+            return Response.error("Parser error: Expression nested too deeply.");
+        }
+
+        final Budget budget = budgets.get();
+        final ScheduledFuture<?> alarm = timeout > 0 ? timer.schedule(budget::cancel, timeout, TimeUnit.MILLISECONDS)
+                : null;
+        try {
+            final SExpr result = Evaluator.eval(program, budget);
+            return Response.ok(printer.print(result));
+
+        } catch (final SExprException.BudgetExhausted e) {
+            return Response.error(budget.isCancelled()
+                    ? "Runtime error: Evaluation timed out after " + timeout + " ms."
+                    : "Runtime error: " + e.getMessage());
+
+        } catch (final SExprException e) {
+            return Response.error("Runtime error: " + e.getMessage());
+
+        } catch (final StackOverflowError e) {
+            return Response.error("Runtime error: Evaluation nested too deeply.");
+
+        } finally {
+            if (alarm != null) {
+                alarm.cancel(false);
+            }
+        }
+    }
+
+    /** Gets resolved program of file at given path, parsing it unless already parsed and unchanged. */
+    private Program programOf(final Path path) throws IOException {
+        final Path key = path.toRealPath();
+        final BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        final long modified = attributes.lastModifiedTime().toMillis();
+        synchronized (files) {
+            final Parsed parsed = files.get(key);
+            if (parsed != null && parsed.modified == modified && parsed.size == attributes.size()) {
+                return parsed.program;
+            }
+        }
+        final Program program = Resolver.resolve(Parser.parse(new TokenBuffer(Lexer.fromFile(key.toFile()))));
+        synchronized (files) {
+            files.put(key, new Parsed(modified, attributes.size(), program));
+        }
+        return program;
+    }
+
+    /** Reads line of UTF-8 text terminated by a newline, or returns null if the stream ended before any text. */
+    static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                throw new IOException("Unterminated line.");
+            }
+            if (line.size() == MAX_REQUEST) {
+                throw new IOException("Line too long.");
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Reads given amount of bytes as UTF-8 text, or returns null if the stream ends first. */
+    static String readBody(final InputStream in, final int length) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(Math.min(length, 1 << 16));
+        final byte[] buffer = new byte[8192];
+        int remaining = length;
+        while (remaining > 0) {
+            final int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (read == -1) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Parses given body length, returning -1 if invalid. */
+    static int lengthOf(final String value) {
+        try {
+            final int length = Integer.parseInt(value.trim());
+            return length >= 0 && length <= MAX_REQUEST ? length : -1;
+
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Provides resolved program to evaluate.
+     */
+    private interface ProgramSource {
+        Program get() throws IOException;
+    }
+
+    /**
+     * Parsed file.
+     */
+    private static final class Parsed {
+        private final long modified, size;
+        private final Program program;
+
+        private Parsed(final long modified, final long size, final Program program) {
+            this.modified = modified;
+            this.size = size;
+            this.program = program;
+        }
+    }
+
+    /**
+     * Response to some request.
+     */
+    private static final class Response {
+        private final String status, body;
+        private final boolean isFatal;
+
+        private Response(final String status, final String body, final boolean isFatal) {
+            this.status = status;
+            this.body = body;
+            this.isFatal = isFatal;
+        }
+
+        private static Response ok(final String body) {
+            return new Response("OK", body, false);
+        }
+
+        private static Response error(final String message) {
+            return new Response("ERROR", message, false);
+        }
+
+        /** Error after which the connection is closed. */
+        private static Response fatal(final String message) {
+            return new Response("ERROR", message, true);
+        }
+
+        private void write(final OutputStream out) throws IOException {
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            out.write((status + " " + bytes.length + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+        }
+    }
+}
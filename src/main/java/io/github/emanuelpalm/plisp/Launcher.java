@@ -0,0 +1,57 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.runtime.Evaluator;
+import io.github.emanuelpalm.plisp.runtime.Image;
+import io.github.emanuelpalm.plisp.runtime.Printer;
+import io.github.emanuelpalm.plisp.runtime.Resolver;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+import io.github.emanuelpalm.plisp.runtime.SExprException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Main class of jars produced by {@link Plispc}.
+ * <p>
+ * Loads the program image packaged with the jar, evaluates it, and reports the time passed from JVM start until the
+ * result was available.
+ */
+public class Launcher {
+    /** Name of program image resource, relative to class path root. */
+    static final String PROGRAM = "program.plpi";
+
+    public static void main(final String[] args) {
+        final SExpr expr;
+        try (final InputStream in = Launcher.class.getClassLoader().getResourceAsStream(PROGRAM)) {
+            if (in == null) {
+                System.err.println("File error: No program image packaged.");
+                return;
+            }
+            expr = Image.read(new BufferedInputStream(in));
+
+        } catch (final IOException e) {
+            System.err.println("File error: " + e.getMessage());
+            return;
+        }
+
+        try {
+            final SExpr result = Evaluator.eval(Resolver.resolve(expr));
+            final Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            Printer.FULL.print(result, out);
+            out.write(System.lineSeparator());
+            out.flush();
+            System.err.println("Time to first result: " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+
+        } catch (final SExprException e) {
+            System.err.println("Runtime error: " + e.getMessage());
+
+        } catch (final IOException e) {
+            System.err.println("Output error: " + e.getMessage());
+        }
+    }
+}
@@ -6,56 +6,242 @@ import io.github.emanuelpalm.plisp.lexer.TokenBuffer;
 import io.github.emanuelpalm.plisp.lexer.Lexer;
 import io.github.emanuelpalm.plisp.parser.Parser;
 import io.github.emanuelpalm.plisp.parser.ParserException;
+import io.github.emanuelpalm.plisp.runtime.Budget;
 import io.github.emanuelpalm.plisp.runtime.Evaluator;
+import io.github.emanuelpalm.plisp.runtime.HeapMachine;
+import io.github.emanuelpalm.plisp.runtime.Image;
+import io.github.emanuelpalm.plisp.runtime.Machine;
+import io.github.emanuelpalm.plisp.runtime.Memoizer;
+import io.github.emanuelpalm.plisp.runtime.ParallelEvaluator;
+import io.github.emanuelpalm.plisp.runtime.Printer;
+import io.github.emanuelpalm.plisp.runtime.Profiler;
+import io.github.emanuelpalm.plisp.runtime.Resolver;
 import io.github.emanuelpalm.plisp.runtime.SExpr;
 import io.github.emanuelpalm.plisp.runtime.SExprException;
+import io.github.emanuelpalm.plisp.runtime.TieredEvaluator;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Application main class.
  */
 public class Main {
+    private static final List<String> FLAGS = Arrays.asList("--analyze", "--compile-image", "--cache", "--cache-size",
+            "--no-cache", "--machine", "--heap", "--tiered", "--memo", "--memo-capacity", "--parallel", "--profile",
+            "--profile-output", "--max-steps", "--max-conses", "--max-depth", "--print-depth", "--print-length");
+    private static final List<String> ENGINE_FLAGS = Arrays.asList("--machine", "--heap", "--tiered", "--memo",
+            "--parallel", "--profile"); // Engines not supporting budgets.
+    private static final List<String> SERVE_FLAGS = Arrays.asList("--serve", "--threads", "--timeout", "--max-steps",
+            "--max-conses", "--max-depth", "--print-depth", "--print-length");
+    private static final String USAGE = "Usage: ./plisp <file> [--analyze] [--compile-image[=<file>]] "
+            + "[--cache=<directory>] [--cache-size=<megabytes>] [--no-cache] [--machine] [--heap[=<cells>]] "
+            + "[--tiered[=<threshold>]] [--memo[=<label>,...]] [--memo-capacity=<n>] [--parallel[=<threads>]] "
+            + "[--profile[=<interval>]] [--profile-output=<file>] [--max-steps=<n>] [--max-conses=<n>] "
+            + "[--max-depth=<n>] [--print-depth=<n>] [--print-length=<n>]\n"
+            + "       ./plisp --serve[=<port>] [--threads=<n>] [--timeout=<ms>] [--max-steps=<n>] [--max-conses=<n>] "
+            + "[--max-depth=<n>] [--print-depth=<n>] [--print-length=<n>]";
+
     public static void main(final String[] args) {
-        if (!(args.length == 1 || (args.length == 2 && args[1].equals("--analyze")))) {
-            System.err.println("Usage: ./plisp <file> [--analyze]");
+        final boolean isServing = args.length > 0 && (args[0].equals("--serve") || args[0].startsWith("--serve="));
+        final Map<String, String> flags = new HashMap<>();
+        for (int i = isServing ? 0 : 1; i < args.length; ++i) {
+            final int separator = args[i].indexOf('=');
+            flags.put(separator < 0 ? args[i] : args[i].substring(0, separator),
+                    separator < 0 ? "" : args[i].substring(separator + 1));
+        }
+        if (args.length == 0 || !(isServing ? SERVE_FLAGS : FLAGS).containsAll(flags.keySet())) {
+            System.err.println(USAGE);
             return;
         }
 
-        final TokenBuffer buffer;
-        try {
-            buffer = new TokenBuffer(Lexer.fromFile(new File(args[0])));
+        final int cells = positiveOf(flags.get("--heap"), HeapMachine.DEFAULT_CAPACITY);
+        final int threshold = positiveOf(flags.get("--tiered"), TieredEvaluator.DEFAULT_THRESHOLD);
+        final int capacity = positiveOf(flags.get("--memo-capacity"), Memoizer.DEFAULT_CAPACITY);
+        final int cacheSize = positiveOf(flags.get("--cache-size"), (int) (Cache.DEFAULT_CAPACITY >> 20));
+        final int threads = positiveOf(flags.get("--parallel"), Runtime.getRuntime().availableProcessors());
+        final int interval = positiveOf(flags.get("--profile"), (int) Profiler.DETERMINISTIC);
+        final String collapsed = flags.getOrDefault("--profile-output",
+                new File(args[0]).getName() + ".collapsed");
+        final long maxSteps = limitOf(flags.get("--max-steps"));
+        final long maxConses = limitOf(flags.get("--max-conses"));
+        final long maxDepth = limitOf(flags.get("--max-depth"));
+        final int depth = positiveOf(flags.get("--print-depth"), Integer.MAX_VALUE);
+        final int length = positiveOf(flags.get("--print-length"), Integer.MAX_VALUE);
+        final boolean isSampled = flags.containsKey("--profile") && !flags.get("--profile").isEmpty();
+        final boolean isLimited = maxSteps != Budget.UNLIMITED || maxConses != Budget.UNLIMITED
+                || maxDepth != Budget.UNLIMITED;
+        if (cells < 2 || threshold < 1 || capacity < 1 || cacheSize < 1 || threads < 1
+                || (isSampled && interval < 1) || collapsed.isEmpty()
+                || maxSteps < 1 || maxConses < 1 || maxDepth < 1
+                || depth < 1 || length < 1
+                || (isLimited && ENGINE_FLAGS.stream().anyMatch(flags::containsKey))) {
+            System.err.println(USAGE);
+            return;
+        }
 
-        } catch (final IOException e) {
-            System.err.println("File error: " + e.getMessage());
+        if (isServing) {
+            serve(flags, maxSteps, maxConses, maxDepth, new Printer(depth, length));
             return;
         }
 
+        final File file = new File(args[0]);
+        final boolean isAnalyzing = flags.containsKey("--analyze");
         final SExpr expr;
         try {
-            expr = Parser.parse(buffer);
+            final boolean isImage = Image.isImage(file);
+            if (isImage || flags.containsKey("--no-cache")) {
+                expr = isImage ? Image.mapVerified(file) : Parser.parse(new TokenBuffer(Lexer.fromFile(file)));
+                if (isAnalyzing) {
+                    Analyzer.checkEnvironmentOf(expr);
+                }
+
+            } else {
+                final String directory = flags.getOrDefault("--cache", "");
+                expr = new Cache(directory.isEmpty() ? Cache.defaultDirectory() : Paths.get(directory),
+                        (long) cacheSize << 20).load(file, isAnalyzing);
+            }
+
+        } catch (final IOException | InvalidPathException e) {
+            System.err.println("File error: " + e.getMessage());
+            return;
 
         } catch (final ParserException e) {
             System.err.println("Parser error: " + e.getMessage());
             return;
+
+        } catch (final AnalyzerException e) {
+            System.err.println("Analyzer error: " + e.getMessage());
+            return;
         }
 
-        if (args.length == 2) {
-            try {
-                Analyzer.checkEnvironmentOf(expr);
-                System.out.println("No errors detected.");
+        if (flags.containsKey("--compile-image")) {
+            final String image = flags.get("--compile-image");
+            try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(image.isEmpty()
+                    ? args[0].replaceFirst("(\\.plp)?$", ".plpi")
+                    : image))) {
+                Image.write(expr, out);
 
-            } catch (final AnalyzerException e) {
-                System.err.println("Analyzer error: " + e.getMessage());
+            } catch (final IOException e) {
+                System.err.println("File error: " + e.getMessage());
             }
+
+        } else if (isAnalyzing) {
+            System.out.println("No errors detected.");
+
         } else {
             try {
-                System.out.println(Evaluator.eval(expr));
+                final SExpr result;
+                Object statistics = null;
+                if (flags.containsKey("--machine")) {
+                    result = Machine.eval(expr);
+
+                } else if (flags.containsKey("--heap")) {
+                    final HeapMachine machine = new HeapMachine(expr, cells);
+                    result = machine.eval();
+                    statistics = machine;
+
+                } else if (flags.containsKey("--tiered")) {
+                    result = new TieredEvaluator(Resolver.resolve(expr), threshold, System.err::println).eval();
+
+                } else if (flags.containsKey("--memo")) {
+                    final List<String> labels = Arrays.asList(flags.get("--memo").split(","));
+                    final Memoizer memoizer = new Memoizer(Resolver.resolve(expr), flags.get("--memo").isEmpty()
+                            ? d -> true
+                            : d -> labels.contains(d.name().toString()), capacity);
+                    result = memoizer.eval();
+                    statistics = memoizer;
+
+                } else if (flags.containsKey("--parallel")) {
+                    final ForkJoinPool pool = new ForkJoinPool(threads);
+                    try {
+                        result = new ParallelEvaluator(Resolver.resolve(expr), pool, ParallelEvaluator.DEFAULT_CUTOFF)
+                                .eval();
+                    } finally {
+                        pool.shutdown();
+                    }
+
+                } else if (flags.containsKey("--profile")) {
+                    final Profiler profiler = new Profiler(Resolver.resolve(expr), interval);
+                    result = profiler.eval();
+                    statistics = profiler;
+                    try (final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(collapsed), StandardCharsets.UTF_8))) {
+                        profiler.writeCollapsed(writer);
+                    }
+
+                } else if (isLimited) {
+                    result = Evaluator.eval(expr, new Budget(maxSteps, maxConses, maxDepth));
+
+                } else {
+                    result = Evaluator.eval(expr);
+                }
+                final Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                new Printer(depth, length).print(result, out);
+                out.write(System.lineSeparator());
+                out.flush();
+                if (statistics != null) {
+                    System.err.println(statistics);
+                }
 
             } catch (final SExprException e) {
                 System.err.println("Runtime error: " + e.getMessage());
+
+            } catch (final IOException e) {
+                System.err.println("Output error: " + e.getMessage());
             }
         }
     }
+
+    /** Runs evaluation daemon until terminated. */
+    private static void serve(final Map<String, String> flags, final long maxSteps, final long maxConses,
+                              final long maxDepth, final Printer printer) {
+        final int port = positiveOf(flags.get("--serve"), Daemon.DEFAULT_PORT);
+        final int threads = positiveOf(flags.get("--threads"), Runtime.getRuntime().availableProcessors());
+        final int timeout = positiveOf(flags.get("--timeout"), (int) Daemon.DEFAULT_TIMEOUT);
+        if (port < 1 || threads < 1 || timeout < 1) {
+            System.err.println(USAGE);
+            return;
+        }
+        try (final Daemon daemon = new Daemon(port, threads, timeout, () -> new Budget(maxSteps, maxConses, maxDepth),
+                printer)) {
+            System.err.println("Listening on port " + daemon.port() + ".");
+            daemon.run();
+
+        } catch (final IOException e) {
+            System.err.println("Daemon error: " + e.getMessage());
+        }
+    }
+
+    /** Parses given flag value as a budget limit, returning 0 if invalid, or an unlimited limit if null. */
+    private static long limitOf(final String value) {
+        return value == null ? Budget.UNLIMITED : positiveOf(value, 0);
+    }
+
+    /** Parses given flag value as a positive integer, returning 0 if invalid, or given default if empty or null. */
+    private static int positiveOf(final String value, final int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(Integer.parseInt(value), 0);
+
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
 }
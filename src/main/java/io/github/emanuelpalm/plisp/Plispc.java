@@ -0,0 +1,144 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.anaylzer.Analyzer;
+import io.github.emanuelpalm.plisp.anaylzer.AnalyzerException;
+import io.github.emanuelpalm.plisp.lexer.Lexer;
+import io.github.emanuelpalm.plisp.lexer.TokenBuffer;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import io.github.emanuelpalm.plisp.parser.ParserException;
+import io.github.emanuelpalm.plisp.runtime.Image;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Ahead-of-time compiler main class.
+ * <p>
+ * Lexes, parses and analyzes a program, and then packages it as a binary image inside a runnable jar, together with
+ * the classes required to evaluate it. Running the jar evaluates the program without it having to be lexed, parsed or
+ * analyzed again.
+ *
+ * @see Launcher
+ */
+public class Plispc {
+    public static void main(final String[] args) {
+        if (args.length == 0 || args.length > 2) {
+            System.err.println("Usage: ./plispc <file> [<jar>]");
+            return;
+        }
+
+        final TokenBuffer buffer;
+        try {
+            buffer = new TokenBuffer(Lexer.fromFile(new File(args[0])));
+
+        } catch (final IOException e) {
+            System.err.println("File error: " + e.getMessage());
+            return;
+        }
+
+        final SExpr expr;
+        try {
+            expr = Parser.parse(buffer);
+
+        } catch (final ParserException e) {
+            System.err.println("Parser error: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Analyzer.checkEnvironmentOf(expr);
+
+        } catch (final AnalyzerException e) {
+            System.err.println("Analyzer error: " + e.getMessage());
+            return;
+        }
+
+        final File jar = new File(args.length == 2 ? args[1] : args[0].replaceFirst("(\\.plp)?$", ".jar"));
+        try (final OutputStream out = new FileOutputStream(jar)) {
+            write(expr, out);
+
+        } catch (final IOException e) {
+            System.err.println("File error: " + e.getMessage());
+        }
+    }
+
+    /** Writes runnable jar, evaluating given expression e when run, to given output stream. */
+    static void write(final SExpr e, final OutputStream out) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, Launcher.class.getName());
+
+        final JarOutputStream jar = new JarOutputStream(out, manifest);
+        jar.putNextEntry(new JarEntry(Launcher.PROGRAM));
+        Image.write(e, jar);
+        jar.closeEntry();
+        copyClassesTo(jar);
+        jar.finish();
+    }
+
+    /** Copies all classes of the jar or directory this class was loaded from into given jar. */
+    private static void copyClassesTo(final JarOutputStream jar) throws IOException {
+        final Path source;
+        try {
+            source = Paths.get(Plispc.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        } catch (final URISyntaxException e) {
+            throw new IOException(e);
+        }
+
+        if (Files.isDirectory(source)) {
+            final List<Path> classes;
+            try (final Stream<Path> paths = Files.walk(source)) {
+                classes = paths
+                        .filter(path -> path.toString().endsWith(".class"))
+                        .collect(Collectors.toList());
+            }
+            for (final Path path : classes) {
+                final StringBuilder name = new StringBuilder();
+                for (final Path part : source.relativize(path)) {
+                    name.append(name.length() == 0 ? "" : "/").append(part);
+                }
+                jar.putNextEntry(new JarEntry(name.toString()));
+                Files.copy(path, jar);
+                jar.closeEntry();
+            }
+            return;
+        }
+
+        try (final JarFile library = new JarFile(source.toFile())) {
+            final Enumeration<JarEntry> entries = library.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                jar.putNextEntry(new JarEntry(entry.getName()));
+                try (final InputStream in = library.getInputStream(entry)) {
+                    final byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        jar.write(buffer, 0, n);
+                    }
+                }
+                jar.closeEntry();
+            }
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package io.github.emanuelpalm.plisp.anaylzer;
 
+import io.github.emanuelpalm.plisp.runtime.Positions;
+import io.github.emanuelpalm.plisp.runtime.Printer;
 import io.github.emanuelpalm.plisp.runtime.SExpr;
 
 /**
  * Carries information about some anomaly discovered by an {@link Analyzer}.
  */
 public class AnalyzerException extends Exception {
-    /** Creates new s-expression exception, containing given message and offending expression. */
+    private final transient SExpr e;
+
+    /**
+     * Creates new s-expression exception, containing given message and offending expression. The message is prefixed
+     * with the source code position of the expression, which is only looked up when the message is requested.
+     */
     public AnalyzerException(final String message, final SExpr e) {
-        super((e.token().isPresent() ? e.token().get().origin().toString() + " " : "") + message);
+        super(message);
+        this.e = e;
+    }
+
+    @Override
+    public String getMessage() {
+        return e != null ? Positions.prefixOf(e) + super.getMessage() : super.getMessage();
     }
 
     public static class NotDefined extends AnalyzerException {
@@ -21,14 +34,14 @@ public class AnalyzerException extends Exception {
     public static class PrototypeMismatch extends AnalyzerException {
         /** Creates new s-expression exception, containing given expression and prototype. */
         public PrototypeMismatch(final SExpr e, final Prototype p) {
-            super("'" + e + "' doesn't match its prototype " + p, e);
+            super("'" + Printer.BRIEF.print(e) + "' doesn't match its prototype " + p, e);
         }
     }
 
     public static class LambdaMisuse extends AnalyzerException {
         /** Creates new s-expression exception, containing given offending expression. */
         public LambdaMisuse(final SExpr e) {
-            super("Lambda '" + e + "' definition and argument mismatch.", e);
+            super("Lambda '" + Printer.BRIEF.print(e) + "' definition and argument mismatch.", e);
         }
     }
 }
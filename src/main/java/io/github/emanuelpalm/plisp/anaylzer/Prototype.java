@@ -1,7 +1,7 @@
 package io.github.emanuelpalm.plisp.anaylzer;
 
-import io.github.emanuelpalm.plisp.lexer.Token;
 import io.github.emanuelpalm.plisp.runtime.SExpr;
+import io.github.emanuelpalm.plisp.runtime.Symbols;
 
 import java.util.Locale;
 import java.util.Optional;
@@ -23,7 +23,8 @@ public class Prototype implements Comparable<Prototype> {
 
     /** Creates new prototype from expression on the form "(label name expression)". */
     public static Prototype fromLabelExpression(final SExpr e) {
-        if (e.cdr().cdr().car().car().token().orElse(Token.END).lexeme().equals("lambda")) {
+        final SExpr head = e.cdr().cdr().car().car();
+        if (head instanceof SExpr.Atom && ((SExpr.Atom) head).symbol() == Symbols.LAMBDA) {
             return new Prototype(e.cdr().car().toString(), e.cdr().cdr().car().cdr().car().size());
         }
         return new Prototype(e.cdr().car().toString(), 0);
@@ -21,6 +21,8 @@ public class Prototypes {
         map.put("cdr", new Prototype("cdr", 1));
         map.put("cons", new Prototype("cons", 2));
         map.put("cond", new Prototype("cond", null));
+        map.put("future", new Prototype("future", 1));
+        map.put("touch", new Prototype("touch", 1));
         map.put("lambda", LAMBDA);
         map.put("label", LABEL);
         return map;
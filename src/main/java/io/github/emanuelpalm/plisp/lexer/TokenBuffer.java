@@ -11,6 +11,7 @@ import java.util.List;
 public class TokenBuffer {
     private final List<Token> tokens;
     private int offset = 0;
+    private long[] origins;
 
     /** Creates new buffered lexer. */
     public TokenBuffer(final Lexer l) {
@@ -48,6 +49,21 @@ public class TokenBuffer {
                 : Token.END;
     }
 
+    /**
+     * Packed origins of all buffered tokens, as by {@link TokenOrigin#pack()}, indexed by the buffer state before each
+     * token is read. The last element is the origin of the end of the buffer, which is always zero. The array is created
+     * when first requested and then shared with every caller, which must not modify it.
+     */
+    public long[] origins() {
+        if (origins == null) {
+            origins = new long[tokens.size() + 1];
+            for (int i = 0; i < tokens.size(); ++i) {
+                origins[i] = tokens.get(i).origin().pack();
+            }
+        }
+        return origins;
+    }
+
     @Override public String toString() {
         final StringBuilder b = new StringBuilder(tokens.size() * 8);
         b.append("[ ");
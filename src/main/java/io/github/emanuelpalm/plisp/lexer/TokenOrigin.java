@@ -20,6 +20,24 @@ public class TokenOrigin {
         this.column = column;
     }
 
+    /** Row, starting at 1. */
+    public int row() {
+        return row;
+    }
+
+    /** Column, starting at 1. */
+    public int column() {
+        return column;
+    }
+
+    /**
+     * Packs row and column into a single long, as by {@link io.github.emanuelpalm.plisp.runtime.Positions#pack(int,
+     * int)}.
+     */
+    public long pack() {
+        return (long) row << 32 | column & 0xffffffffL;
+    }
+
     /** Adds single row and reset column. */
     public void addRow() {
         row += 1;
@@ -71,7 +71,8 @@ public class Parser {
 
     private static Rule quot() {
         return (buffer) -> allOf(oneOf(TokenClass.QUO), expr())
-                .transform((s) -> new SExpr.Cons(SExpr.Atom.of("quote"), s.cdr()))
+                .transform((s) -> new SExpr.Cons(SExpr.Atom.of("quote"),
+                        new SExpr.Cons(SExpr.Vector.compact(s.cdr().car()), SExpr.NIL)))
                 .apply(buffer);
     }
 
@@ -39,7 +39,7 @@ public interface Rule {
             final int state = buffer.state();
             final Token next = buffer.next();
             if (next.type().equals(c)) {
-                return Optional.of(new SExpr.Atom(next));
+                return Optional.of(new SExpr.Atom(next.lexeme(), buffer.origins(), state));
             }
             buffer.restore(state);
             return Optional.empty();
@@ -52,7 +52,7 @@ public interface Rule {
             final int state = buffer.state();
             final Token next = buffer.next();
             if (next.lexeme().equals(s)) {
-                return Optional.of(new SExpr.Atom(next));
+                return Optional.of(new SExpr.Atom(next.lexeme(), buffer.origins(), state));
             }
             buffer.restore(state);
             return Optional.empty();
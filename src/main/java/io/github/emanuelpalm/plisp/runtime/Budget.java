@@ -0,0 +1,99 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+/**
+ * Limits the resources a single evaluation may use.
+ * <p>
+ * A budget limits the amount of evaluation steps taken, the amount of cons cells allocated, and the maximum depth of
+ * nested evaluations, which is the depth of the continuation of the evaluation. Each evaluated expression is one step
+ * and one level of depth. Cons cells are counted when created by CONS, or when lists of evaluated lambda arguments are
+ * created. When any limit is exceeded, the evaluation is stopped by throwing a {@link SExprException.BudgetExhausted}.
+ * <p>
+ * Budgets keep track of the resources used so far, and are therefore used by one evaluation at a time. A budget may
+ * only be used by the thread evaluating it, which is why futures are evaluated eagerly when evaluating with a budget.
+ * Budgets may, however, be cancelled by any thread, which stops the evaluation using it at its next step.
+ */
+public final class Budget {
+    /** Limit that is never reached. */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long maxSteps, maxConses, maxDepth;
+    private long steps, conses, depth, peakDepth;
+    private volatile boolean isCancelled;
+
+    /**
+     * Creates new budget.
+     *
+     * @param maxSteps  Maximum amount of evaluation steps.
+     * @param maxConses Maximum amount of cons cells allocated.
+     * @param maxDepth  Maximum depth of nested evaluations.
+     */
+    public Budget(final long maxSteps, final long maxConses, final long maxDepth) {
+        if (maxSteps < 0 || maxConses < 0 || maxDepth < 0) {
+            throw new IllegalArgumentException("Budget limits must not be negative.");
+        }
+        this.maxSteps = maxSteps;
+        this.maxConses = maxConses;
+        this.maxDepth = maxDepth;
+    }
+
+    /** Amount of evaluation steps taken. */
+    public long steps() {
+        return steps;
+    }
+
+    /** Amount of cons cells allocated. */
+    public long conses() {
+        return conses;
+    }
+
+    /** Greatest depth of nested evaluations reached. */
+    public long depth() {
+        return peakDepth;
+    }
+
+    /** Whether budget has been cancelled. */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /** Cancels budget, making any evaluation using it stop as if exhausted. May be called by any thread. */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /** Records evaluation of given expression e, nested one level deeper than the evaluation before it. */
+    void enter(final SExpr e) {
+        if (steps == maxSteps || depth == maxDepth || isCancelled) {
+            throw new SExprException.BudgetExhausted(this, e);
+        }
+        steps += 1;
+        depth += 1;
+        if (depth > peakDepth) {
+            peakDepth = depth;
+        }
+    }
+
+    /** Records that the evaluation most recently entered has completed. */
+    void leave() {
+        depth -= 1;
+    }
+
+    /** Records allocation of given amount of cons cells while evaluating given expression e. */
+    void allocate(final int amount, final SExpr e) {
+        if (maxConses - conses < amount) {
+            throw new SExprException.BudgetExhausted(this, e);
+        }
+        conses += amount;
+    }
+
+    @Override
+    public String toString() {
+        return "Used " + steps + " of " + limitOf(maxSteps) + " steps, " + conses + " of " + limitOf(maxConses)
+                + " conses and " + peakDepth + " of " + limitOf(maxDepth) + " depth."
+                + (isCancelled ? " Cancelled." : "");
+    }
+
+    private static String limitOf(final long limit) {
+        return limit == UNLIMITED ? "unlimited" : Long.toString(limit);
+    }
+}
@@ -0,0 +1,293 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles minimal JVM class files.
+ * <p>
+ * Produced classes are public and final, have public static fields and methods only, and use class file version 49.
+ * That version predates stack map frames, which means that the JVM infers the types of all locals and stack entries
+ * when verifying the class.
+ */
+final class Bytecode {
+    static final int SIPUSH = 0x11;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int IFEQ = 0x99;
+    static final int IF_ACMPNE = 0xa6;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int GETSTATIC = 0xb2;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ATHROW = 0xbf;
+    static final int INSTANCEOF = 0xc1;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolSize = 1;
+
+    private final int thisClass;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Method> methods = new ArrayList<>();
+
+    /** Creates class file with given internal class name. */
+    Bytecode(final String className) {
+        thisClass = classRef(className);
+    }
+
+    /** Adds public static field with given name and descriptor. */
+    void field(final String name, final String descriptor) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(0x0009);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /** Adds public static method with given name, descriptor and amount of local variables. */
+    Method method(final String name, final String descriptor, final int maxLocals) {
+        final Method m = new Method(utf8(name), utf8(descriptor), maxLocals);
+        methods.add(m);
+        return m;
+    }
+
+    /** Produces class file. */
+    byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            final int objectClass = classRef("java/lang/Object");
+            final int codeName = utf8("Code");
+            poolOut.flush();
+
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(0x0031);
+            out.writeShort(thisClass);
+            out.writeShort(objectClass);
+            out.writeShort(0);
+            out.writeShort(fields.size());
+            for (final byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (final Method m : methods) {
+                m.writeTo(out, codeName);
+            }
+            out.writeShort(0);
+
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    int utf8(final String s) {
+        return entry("U" + s, out -> {
+            out.writeByte(1);
+            out.writeUTF(s);
+        });
+    }
+
+    int classRef(final String internalName) {
+        final int name = utf8(internalName);
+        return entry("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int fieldRef(final String owner, final String name, final String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(final String owner, final String name, final String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(final String owner, final String name, final String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(final int tag, final String owner, final String name, final String descriptor) {
+        final int ownerIndex = classRef(owner);
+        final int nameIndex = utf8(name);
+        final int descriptorIndex = utf8(descriptor);
+        final int nameAndType = entry("N" + name + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int entry(final String key, final EntryWriter writer) {
+        final Integer index = poolIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            writer.write(poolOut);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndices.put(key, poolSize);
+        return poolSize++;
+    }
+
+    private interface EntryWriter {
+        void write(final DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Method body, assembled one instruction at a time.
+     * <p>
+     * The method keeps track of its operand stack height, which must be adjusted by the caller for every instruction
+     * emitted.
+     */
+    static final class Method {
+        private final int name, descriptor, maxLocals;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int stack = 0, maxStack = 0;
+
+        private Method(final int name, final int descriptor, final int maxLocals) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+        }
+
+        /** Emits instruction without operands, changing stack height by given delta. */
+        void op(final int opcode, final int delta) {
+            code.write(opcode);
+            adjust(delta);
+        }
+
+        /** Emits instruction with unsigned 16-bit operand, changing stack height by given delta. */
+        void op(final int opcode, final int operand, final int delta) {
+            code.write(opcode);
+            code.write(operand >>> 8);
+            code.write(operand);
+            adjust(delta);
+        }
+
+        /** Emits local variable load instruction. */
+        void load(final int opcode, final int local) {
+            code.write(opcode);
+            code.write(local);
+            adjust(1);
+        }
+
+        /** Emits interface method invocation with given argument count, changing stack height by given delta. */
+        void invokeInterface(final int method, final int count, final int delta) {
+            code.write(INVOKEINTERFACE);
+            code.write(method >>> 8);
+            code.write(method);
+            code.write(count);
+            code.write(0);
+            adjust(delta);
+        }
+
+        /** Emits branch instruction to given label, changing stack height by given delta. */
+        void jump(final int opcode, final Label target, final int delta) {
+            final int at = code.size();
+            code.write(opcode);
+            code.write(0);
+            code.write(0);
+            adjust(delta);
+            target.stack = stack;
+            target.jumps.add(at);
+        }
+
+        /** Binds label to current position. Resumes stack height recorded at jumps to label, if any. */
+        void mark(final Label label) {
+            label.position = code.size();
+            labels.add(label);
+            if (label.stack >= 0) {
+                stack = label.stack;
+            }
+        }
+
+        /** Current stack height. */
+        int height() {
+            return stack;
+        }
+
+        /** Sets current stack height, such as after an unconditional jump. */
+        void reset(final int height) {
+            stack = height;
+        }
+
+        /** Current length of method code, in bytes. */
+        int length() {
+            return code.size();
+        }
+
+        private void adjust(final int delta) {
+            stack += delta;
+            if (stack > maxStack) {
+                maxStack = stack;
+            }
+        }
+
+        private void writeTo(final DataOutputStream out, final int codeName) throws IOException {
+            final byte[] bytes = code.toByteArray();
+            for (final Label label : labels) {
+                for (final int at : label.jumps) {
+                    final int offset = label.position - at;
+                    bytes[at + 1] = (byte) (offset >>> 8);
+                    bytes[at + 2] = (byte) offset;
+                }
+            }
+            out.writeShort(0x0009);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+
+    /**
+     * Branch target.
+     */
+    static final class Label {
+        private final List<Integer> jumps = new ArrayList<>();
+        private int position = -1;
+        private int stack = -1;
+    }
+}
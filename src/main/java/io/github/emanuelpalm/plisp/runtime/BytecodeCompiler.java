@@ -0,0 +1,303 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Compiles the labels of s-expression programs into JVM methods.
+ * <p>
+ * Every label with a lambda value is compiled into a static method of a class generated for its program, as long as
+ * its body only uses its own parameters, quoted expressions, elementary s-functions and calls to other compiled labels.
+ * Calls between compiled labels become {@code invokestatic} instructions, which allows the JIT compiler to treat
+ * self-recursive labels as any other recursive Java method. Labels that cannot be compiled, as well as the parts of the
+ * program outside any compiled label, are compiled by the {@link ClosureCompiler}, which calls compiled labels via
+ * method handles.
+ * <p>
+ * Each program gets its own class loader, which means that generated classes can be unloaded as soon as the compiled
+ * program is no longer referenced.
+ */
+public class BytecodeCompiler {
+    private static final String SEXPR = "io/github/emanuelpalm/plisp/runtime/SExpr";
+    private static final String SEXPR_DESCRIPTOR = "L" + SEXPR + ";";
+    private static final String CONS = "io/github/emanuelpalm/plisp/runtime/SExpr$Cons";
+    private static final String FUTURE = "io/github/emanuelpalm/plisp/runtime/SExpr$Future";
+    private static final String NIL_DESCRIPTOR = "Lio/github/emanuelpalm/plisp/runtime/SExpr$Nil;";
+    private static final String EVALUATOR = "io/github/emanuelpalm/plisp/runtime/Evaluator";
+    private static final String COND_EXHAUSTED = "io/github/emanuelpalm/plisp/runtime/SExprException$CondExhausted";
+    private static final String CONSTANTS = "K";
+    private static final int MAX_METHOD_LENGTH = 32767;
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    private final String className;
+    private final Bytecode bytecode;
+    private final Set<Resolved.Definition> compilable;
+    private final List<SExpr> constants = new ArrayList<>();
+
+    private BytecodeCompiler(final Set<Resolved.Definition> compilable) {
+        this.className = "io/github/emanuelpalm/plisp/runtime/Compiled$" + classCounter.incrementAndGet();
+        this.bytecode = new Bytecode(className);
+        this.compilable = compilable;
+    }
+
+    /** Compiles given expression e into function evaluating it using some provided environment. */
+    public static Function<Environment, SExpr> compile(final SExpr e) {
+        return compile(Resolver.resolve(e));
+    }
+
+    /** Compiles given program p into function evaluating it using some provided environment. */
+    public static Function<Environment, SExpr> compile(final Program p) {
+        final Map<Resolved.Definition, ClosureCompiler.Code> codes = compileLabelsOf(p);
+        return ClosureCompiler.compile(p, codes::get);
+    }
+
+    /** Compiles and evaluates given expression e. */
+    public static SExpr eval(final SExpr e) {
+        return compile(e).apply(Environment.EMPTY);
+    }
+
+    /**
+     * Convenience function for compiling and evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Determines what labels of given program can be compiled into JVM methods. */
+    static Set<Resolved.Definition> compilableLabelsOf(final Program p) {
+        return Resolver.closedLabelsOf(p, d -> d.parameters.length <= 255);
+    }
+
+    /**
+     * Compiles all compilable labels of given program into a new class, returning code calling each compiled label.
+     * <p>
+     * If no labels can be compiled, or if the resulting methods would be too large, an empty map is returned.
+     */
+    static Map<Resolved.Definition, ClosureCompiler.Code> compileLabelsOf(final Program p) {
+        final Set<Resolved.Definition> compilable = compilableLabelsOf(p);
+        if (compilable.isEmpty()) {
+            return new HashMap<>();
+        }
+        final BytecodeCompiler compiler = new BytecodeCompiler(compilable);
+        try {
+            return compiler.assemble();
+
+        } catch (final MethodTooLarge e) {
+            return new HashMap<>();
+        }
+    }
+
+    private Map<Resolved.Definition, ClosureCompiler.Code> assemble() {
+        bytecode.field(CONSTANTS, "[" + SEXPR_DESCRIPTOR);
+        for (final Resolved.Definition d : compilable) {
+            final Bytecode.Method m = bytecode.method(methodNameOf(d), descriptorOf(d.parameters.length), d.parameters.length);
+            emit(m, d.body);
+            m.op(Bytecode.ARETURN, -1);
+            if (m.length() > MAX_METHOD_LENGTH) {
+                throw new MethodTooLarge();
+            }
+        }
+        final byte[] bytes = bytecode.toByteArray();
+
+        try {
+            final Class<?> c = new Loader().define(className.replace('/', '.'), bytes);
+            c.getField(CONSTANTS).set(null, constants.toArray(new SExpr[constants.size()]));
+
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            final Map<Resolved.Definition, ClosureCompiler.Code> codes = new HashMap<>();
+            for (final Resolved.Definition d : compilable) {
+                final int size = d.parameters.length;
+                final Class<?>[] parameterTypes = new Class<?>[size];
+                Arrays.fill(parameterTypes, SExpr.class);
+                final MethodHandle handle = lookup
+                        .findStatic(c, methodNameOf(d), MethodType.methodType(SExpr.class, parameterTypes))
+                        .asSpreader(SExpr[].class, size);
+
+                codes.put(d, a -> {
+                    final SExpr[] arguments = new SExpr[size];
+                    for (int i = 0; i < size; ++i) {
+                        arguments[i] = a.get(0, i);
+                    }
+                    try {
+                        return (SExpr) handle.invokeExact(arguments);
+
+                    } catch (final RuntimeException | Error e) {
+                        throw e;
+
+                    } catch (final Throwable e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            return codes;
+
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void emit(final Bytecode.Method m, final Resolved r) {
+        switch (r.tag) {
+            case Resolved.QUOTE:
+                emitConstant(m, r.source.cdr().car());
+                break;
+
+            case Resolved.LABEL:
+                emitConstant(m, r.definition.value);
+                break;
+
+            case Resolved.SLOT:
+                m.load(Bytecode.ALOAD, r.slot);
+                break;
+
+            case Resolved.ATOM: {
+                final Bytecode.Label isAtom = new Bytecode.Label(), end = new Bytecode.Label();
+                emit(m, r.operands[0]);
+                m.op(Bytecode.INVOKESTATIC, bytecode.methodRef(FUTURE, "touch", "(" + SEXPR_DESCRIPTOR + ")" + SEXPR_DESCRIPTOR), 0);
+                m.op(Bytecode.INSTANCEOF, bytecode.classRef(CONS), 0);
+                m.jump(Bytecode.IFEQ, isAtom, -1);
+                emitFalse(m);
+                m.jump(Bytecode.GOTO, end, 0);
+                m.mark(isAtom);
+                emitTrue(m);
+                m.mark(end);
+                break;
+            }
+            case Resolved.EQ: {
+                final Bytecode.Label isFalse = new Bytecode.Label(), end = new Bytecode.Label();
+                emit(m, r.operands[0]);
+                emit(m, r.operands[1]);
+                m.op(Bytecode.INVOKESTATIC, bytecode.methodRef(FUTURE, "equal", "(" + SEXPR_DESCRIPTOR + SEXPR_DESCRIPTOR
+                        + ")Z"), -1);
+                m.jump(Bytecode.IFEQ, isFalse, -1);
+                emitTrue(m);
+                m.jump(Bytecode.GOTO, end, 0);
+                m.mark(isFalse);
+                emitFalse(m);
+                m.mark(end);
+                break;
+            }
+            case Resolved.CAR:
+                emit(m, r.operands[0]);
+                m.invokeInterface(bytecode.interfaceMethodRef(SEXPR, "car", "()" + SEXPR_DESCRIPTOR), 1, 0);
+                break;
+
+            case Resolved.CDR:
+                emit(m, r.operands[0]);
+                m.invokeInterface(bytecode.interfaceMethodRef(SEXPR, "cdr", "()" + SEXPR_DESCRIPTOR), 1, 0);
+                break;
+
+            case Resolved.CONS:
+                m.op(Bytecode.NEW, bytecode.classRef(CONS), 1);
+                m.op(Bytecode.DUP, 1);
+                emit(m, r.operands[0]);
+                emit(m, r.operands[1]);
+                m.op(Bytecode.INVOKESPECIAL, bytecode.methodRef(CONS, "<init>", "(" + SEXPR_DESCRIPTOR + SEXPR_DESCRIPTOR + ")V"), -3);
+                break;
+
+            case Resolved.COND: {
+                final Bytecode.Label end = new Bytecode.Label();
+                for (int i = 0; i < r.operands.length; i += 2) {
+                    final Bytecode.Label next = new Bytecode.Label();
+                    emit(m, r.operands[i]);
+                    emitTrue(m);
+                    m.op(Bytecode.INVOKEVIRTUAL, bytecode.methodRef("java/lang/Object", "equals", "(Ljava/lang/Object;)Z"), -1);
+                    m.jump(Bytecode.IFEQ, next, -1);
+                    emit(m, r.operands[i + 1]);
+                    m.jump(Bytecode.GOTO, end, 0);
+                    m.mark(next);
+                }
+                SExpr s = r.source;
+                while (!(s.cdr() instanceof SExpr.Nil)) {
+                    s = s.cdr();
+                }
+                m.op(Bytecode.NEW, bytecode.classRef(COND_EXHAUSTED), 1);
+                m.op(Bytecode.DUP, 1);
+                emitConstant(m, s);
+                m.op(Bytecode.INVOKESPECIAL, bytecode.methodRef(COND_EXHAUSTED, "<init>", "(" + SEXPR_DESCRIPTOR + ")V"), -2);
+                m.op(Bytecode.ATHROW, -1);
+                m.reset(m.height() + 1);
+                m.mark(end);
+                break;
+            }
+            case Resolved.CALL: {
+                final int size = r.definition.parameters.length;
+                for (int i = 0; i < r.operands.length; ++i) {
+                    emit(m, r.operands[i]);
+                    if (i >= size) {
+                        m.op(Bytecode.POP, -1);
+                    }
+                }
+                for (int i = r.operands.length; i < size; ++i) {
+                    m.op(Bytecode.GETSTATIC, bytecode.fieldRef(SEXPR, "NIL", NIL_DESCRIPTOR), 1);
+                }
+                m.op(Bytecode.INVOKESTATIC, bytecode.methodRef(className, methodNameOf(r.definition), descriptorOf(size)), 1 - size);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Expression not compilable: " + r.source);
+        }
+    }
+
+    private void emitConstant(final Bytecode.Method m, final SExpr value) {
+        final int index = constants.size();
+        if (index > Short.MAX_VALUE) {
+            throw new MethodTooLarge();
+        }
+        constants.add(value);
+        m.op(Bytecode.GETSTATIC, bytecode.fieldRef(className, CONSTANTS, "[" + SEXPR_DESCRIPTOR), 1);
+        m.op(Bytecode.SIPUSH, index, 1);
+        m.op(Bytecode.AALOAD, -1);
+    }
+
+    private void emitTrue(final Bytecode.Method m) {
+        m.op(Bytecode.GETSTATIC, bytecode.fieldRef(EVALUATOR, "T", SEXPR_DESCRIPTOR), 1);
+    }
+
+    private void emitFalse(final Bytecode.Method m) {
+        m.op(Bytecode.GETSTATIC, bytecode.fieldRef(EVALUATOR, "F", SEXPR_DESCRIPTOR), 1);
+    }
+
+    private static String methodNameOf(final Resolved.Definition d) {
+        return d.name.toString().replaceAll("[^A-Za-z0-9_]", "_") + "$" + d.index;
+    }
+
+    private static String descriptorOf(final int size) {
+        final StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < size; ++i) {
+            builder.append(SEXPR_DESCRIPTOR);
+        }
+        return builder.append(')').append(SEXPR_DESCRIPTOR).toString();
+    }
+
+    /**
+     * Loads the classes of one compiled program.
+     */
+    private static class Loader extends ClassLoader {
+        private Loader() {
+            super(BytecodeCompiler.class.getClassLoader());
+        }
+
+        private Class<?> define(final String name, final byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Thrown to indicate that some compiled method or its constants would exceed what a class file can hold.
+     */
+    private static class MethodTooLarge extends RuntimeException {}
+}
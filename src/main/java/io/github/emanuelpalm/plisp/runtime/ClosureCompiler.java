@@ -0,0 +1,223 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Compiles s-expressions into trees of Java closures.
+ * <p>
+ * Compilation resolves the given expression into a {@link Program} and walks it once, turning each resolved expression
+ * into a closure that evaluates it directly. Elementary s-functions become closures applying those functions, and
+ * calls to resolved labels become closures directly invoking the compiled label bodies. The resulting function may be
+ * applied any number of times, from any number of threads, and produces the same results as {@link Evaluator}.
+ *
+ * @see Evaluator#eval(Program)
+ */
+public class ClosureCompiler {
+    private final Body[] bodies;
+
+    private ClosureCompiler(final List<Resolved.Definition> definitions, final Function<Resolved.Definition, Code> precompiled) {
+        bodies = new Body[definitions.size()];
+        for (int i = 0; i < bodies.length; ++i) {
+            bodies[i] = new Body();
+        }
+        for (final Resolved.Definition d : definitions) {
+            if (d.isLambda()) {
+                final Code code = precompiled.apply(d);
+                bodies[d.index].code = code != null ? code : compile(d.body);
+            }
+        }
+    }
+
+    /** Compiles given expression e into function evaluating it using some provided environment. */
+    public static Function<Environment, SExpr> compile(final SExpr e) {
+        return compile(Resolver.resolve(e));
+    }
+
+    /** Compiles given program p into function evaluating it using some provided environment. */
+    public static Function<Environment, SExpr> compile(final Program p) {
+        return compile(p, d -> null);
+    }
+
+    /**
+     * Compiles given program p, using the label bodies provided by given function rather than compiling them, unless
+     * the function returns null.
+     */
+    static Function<Environment, SExpr> compile(final Program p, final Function<Resolved.Definition, Code> precompiled) {
+        final Code code = new ClosureCompiler(p.definitions(), precompiled).compile(p.root());
+        return a -> SExpr.Future.touchAll(code.run(a));
+    }
+
+    /**
+     * Compiles the bodies of all labels in given program p with lambda values, using the bodies provided by given
+     * function rather than compiling them, unless the function returns null. The resulting array is indexed by
+     * definition index, and holds null for labels without lambda values.
+     */
+    static Code[] compileBodies(final Program p, final Function<Resolved.Definition, Code> precompiled) {
+        final Body[] bodies = new ClosureCompiler(p.definitions(), precompiled).bodies;
+        final Code[] codes = new Code[bodies.length];
+        for (int i = 0; i < codes.length; ++i) {
+            codes[i] = bodies[i].code;
+        }
+        return codes;
+    }
+
+    /** Compiles and evaluates given expression e. */
+    public static SExpr eval(final SExpr e) {
+        return compile(e).apply(Environment.EMPTY);
+    }
+
+    /**
+     * Convenience function for compiling and evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    private Code compile(final Resolved r) {
+        switch (r.tag) {
+            case Resolved.QUOTE: {
+                final SExpr value = r.source.cdr().car();
+                return a -> value;
+            }
+            case Resolved.SLOT: {
+                final int depth = r.depth, slot = r.slot;
+                if (depth == 0) {
+                    return a -> a.get(0, slot);
+                }
+                return a -> a.get(depth, slot);
+            }
+            case Resolved.LABEL: {
+                final SExpr value = r.definition.value;
+                return a -> value;
+            }
+            case Resolved.DYNAMIC: {
+                final SExpr.Atom atom = (SExpr.Atom) r.source;
+                return a -> a.lookup(atom);
+            }
+            case Resolved.ATOM: {
+                final Code c0 = compile(r.operands[0]);
+                return a -> SExpr.Future.touch(c0.run(a)) instanceof SExpr.Cons ? Evaluator.F : Evaluator.T;
+            }
+            case Resolved.EQ: {
+                final Code c0 = compile(r.operands[0]);
+                final Code c1 = compile(r.operands[1]);
+                return a -> {
+                    final SExpr e0 = c0.run(a);
+                    final SExpr e1 = c1.run(a);
+                    return SExpr.Future.equal(e0, e1) ? Evaluator.T : Evaluator.F;
+                };
+            }
+            case Resolved.CAR: {
+                final Code c0 = compile(r.operands[0]);
+                return a -> c0.run(a).car();
+            }
+            case Resolved.CDR: {
+                final Code c0 = compile(r.operands[0]);
+                return a -> c0.run(a).cdr();
+            }
+            case Resolved.CONS: {
+                final Code c0 = compile(r.operands[0]);
+                final Code c1 = compile(r.operands[1]);
+                return a -> {
+                    final SExpr e0 = c0.run(a);
+                    final SExpr e1 = c1.run(a);
+                    return new SExpr.Cons(e0, e1);
+                };
+            }
+            case Resolved.COND: {
+                final Code[] cs = compileEach(r.operands, 0);
+                final SExpr source = r.source;
+                return a -> {
+                    for (int i = 0; i < cs.length; i += 2) {
+                        if (cs[i].run(a).equals(Evaluator.T)) {
+                            return cs[i + 1].run(a);
+                        }
+                    }
+                    SExpr s = source;
+                    while (!(s.cdr() instanceof SExpr.Nil)) {
+                        s = s.cdr();
+                    }
+                    throw new SExprException.CondExhausted(s);
+                };
+            }
+            case Resolved.CALL: {
+                final Body body = bodies[r.definition.index];
+                final Symbol[] names = r.definition.parameters;
+                final Code[] cs = compileEach(r.operands, 0);
+                return a -> body.code.run(a.bind(names, evlis(cs, names.length, a)));
+            }
+            case Resolved.INVOKE: {
+                final Code c0 = compile(r.operands[0]);
+                final SExpr arguments = r.source.cdr();
+                return a -> Evaluator.eval(new SExpr.Cons(SExpr.Future.touch(c0.run(a)), arguments), a);
+            }
+            case Resolved.APPLY: {
+                final Code body = compile(r.operands[0]);
+                final Symbol[] names = r.names;
+                final Code[] cs = compileEach(r.operands, 1);
+                return a -> body.run(a.bind(names, evlis(cs, names.length, a)));
+            }
+            case Resolved.BIND: {
+                final Code body = compile(r.operands[0]);
+                final SExpr name = r.definition.name, value = r.definition.value;
+                return a -> body.run(a.label(name, value));
+            }
+            case Resolved.FUTURE: {
+                final Code c0 = compile(r.operands[0]);
+                return a -> SExpr.Future.of(() -> c0.run(a));
+            }
+            case Resolved.TOUCH: {
+                final Code c0 = compile(r.operands[0]);
+                return a -> SExpr.Future.touch(c0.run(a));
+            }
+            default: {
+                final SExpr source = r.source;
+                return a -> {
+                    throw new SExprException("Illegal expression '" + Printer.BRIEF.print(source) + "'.", source);
+                };
+            }
+        }
+    }
+
+    private Code[] compileEach(final Resolved[] rs, final int offset) {
+        final Code[] cs = new Code[rs.length - offset];
+        for (int i = 0; i < cs.length; ++i) {
+            cs[i] = compile(rs[offset + i]);
+        }
+        return cs;
+    }
+
+    /** Runs all given code into array of given size. Missing values are nil. */
+    private static SExpr[] evlis(final Code[] cs, final int size, final Environment a) {
+        final SExpr[] values = new SExpr[size];
+        for (int i = 0; i < cs.length; ++i) {
+            final SExpr value = cs[i].run(a);
+            if (i < size) {
+                values[i] = value;
+            }
+        }
+        for (int i = cs.length; i < size; ++i) {
+            values[i] = SExpr.NIL;
+        }
+        return values;
+    }
+
+    /**
+     * Compiled expression.
+     */
+    interface Code {
+        SExpr run(final Environment a);
+    }
+
+    /**
+     * Holds compiled label body, which may not yet be compiled when calls to it are.
+     */
+    private static class Body {
+        private Code code;
+    }
+}
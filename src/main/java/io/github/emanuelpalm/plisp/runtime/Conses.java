@@ -0,0 +1,144 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide table of canonical {@link SExpr.Cons} cells.
+ * <p>
+ * The table holds at most one cons for every pair of canonical car and cdr expressions. Canonical expressions are
+ * either nil, canonical atoms or canonical conses. Two canonical expressions are therefore structurally equal only if
+ * they are the same object, and structurally equal subexpressions share memory. Canonical conses keep the hashes they
+ * were given when created, and canonical atoms have no source code origins.
+ * <p>
+ * The table is safe to use from any number of threads. Conses are only weakly held by the table, which means that
+ * canonical conses no longer referred to are eventually evicted. The table never keeps the cars or cdrs of its conses
+ * reachable, which means that whole structures no longer referred to are evicted together.
+ */
+public class Conses {
+    private static final ConcurrentHashMap<Object, Entry> table = new ConcurrentHashMap<>(256);
+    private static final ReferenceQueue<SExpr.Cons> evicted = new ReferenceQueue<>();
+
+    private Conses() {}
+
+    /** Gets canonical cons holding the canonical forms of given car and cdr, creating it if not already present. */
+    public static SExpr.Cons cons(final SExpr car, final SExpr cdr) {
+        return intern(intern(car), intern(cdr));
+    }
+
+    /** Gets canonical form of given expression e. */
+    public static SExpr intern(final SExpr e) {
+        if (e instanceof SExpr.Atom) {
+            return ((SExpr.Atom) e).symbol().atom();
+        }
+        if (!(e instanceof SExpr.Cons) || ((SExpr.Cons) e).isCanonical()) {
+            return e;
+        }
+        final List<SExpr> spine = new ArrayList<>();
+        SExpr s = e;
+        while (s instanceof SExpr.Cons && !((SExpr.Cons) s).isCanonical()) {
+            spine.add(s);
+            s = s.cdr();
+        }
+        SExpr tail = intern(s);
+        for (int i = spine.size(); i-- != 0; ) {
+            tail = intern(intern(spine.get(i).car()), tail);
+        }
+        return tail;
+    }
+
+    /** Amount of canonical conses currently in table, including conses about to be evicted. */
+    public static int size() {
+        expunge();
+        return table.size();
+    }
+
+    private static SExpr.Cons intern(final SExpr car, final SExpr cdr) {
+        expunge();
+
+        final Key key = new Key(car, cdr);
+        while (true) {
+            final Entry entry = table.get(key);
+            if (entry != null) {
+                final SExpr.Cons cons = entry.get();
+                if (cons != null) {
+                    return cons;
+                }
+                table.remove(entry, entry);
+                continue;
+            }
+            final SExpr.Cons cons = new SExpr.Cons(car, cdr, key.hash);
+            final Entry candidate = new Entry(cons, key.hash, evicted);
+            if (table.putIfAbsent(candidate, candidate) == null) {
+                return cons;
+            }
+            candidate.clear();
+        }
+    }
+
+    private static void expunge() {
+        Entry entry;
+        while ((entry = (Entry) evicted.poll()) != null) {
+            table.remove(entry, entry);
+        }
+    }
+
+    /**
+     * Pair of canonical expressions, used to look up the entry of the canonical cons holding them, if any.
+     */
+    private static final class Key {
+        private final SExpr car, cdr;
+        private final int hash;
+
+        private Key(final SExpr car, final SExpr cdr) {
+            this.car = car;
+            this.cdr = cdr;
+            this.hash = SExpr.Cons.hashOf(car.hashCode(), cdr.hashCode());
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            final SExpr.Cons c = o instanceof Entry ? ((Entry) o).get() : null;
+            return c != null && c.car() == car && c.cdr() == cdr;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Table entry, serving as both key and value. Only the hash of the cons is held strongly, which means that the car
+     * and cdr of the cons are not kept reachable by the table. Live entries are equal if their conses hold the same car
+     * and cdr, while cleared entries are only equal to themselves.
+     */
+    private static final class Entry extends WeakReference<SExpr.Cons> {
+        private final int hash;
+
+        private Entry(final SExpr.Cons c, final int hash, final ReferenceQueue<SExpr.Cons> q) {
+            super(c, q);
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof Key) {
+                return o.equals(this);
+            }
+            final SExpr.Cons c0 = get(), c1 = o instanceof Entry ? ((Entry) o).get() : null;
+            return c0 != null && c1 != null && c0.car() == c1.car() && c0.cdr() == c1.cdr();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Immutable evaluation environment, associating atoms with s-expressions.
+ * <p>
+ * An environment is a chain of frames. Each lambda call pushes an array-backed frame holding the call arguments, while
+ * each label pushes a frame that also indexes all bindings visible at the point of the label. Indices are persistent
+ * tries sharing structure with the indices of the label frames below them, which means that labeling only copies the
+ * trie nodes it updates. Lambda frames carry the exact set of symbols bound by them and any lambda frames below them,
+ * down to the nearest indexed frame, which is shared with the frame below whenever no new symbols are bound. Looking
+ * up an atom not bound by any of those lambda frames therefore skips directly to the indexed frame, making label
+ * lookups independent of recursion depth. Frame values may also be addressed directly by their depth and slot, as is
+ * done when evaluating {@link Program}s.
+ * <p>
+ * Bindings are resolved dynamically, which means that the most recently bound entry with a given name is the one
+ * found.
+ */
+public class Environment {
+    /** Environment without any bindings. */
+    public static final Environment EMPTY = new Environment(new Symbol[0], new SExpr[0], null, Index.EMPTY);
+
+    private final Symbol[] names;
+    private final SExpr[] values;
+    private final Environment parent;
+    private final Environment base;
+    private final IdSet bound;
+    private final Index index;
+
+    private Environment(final Symbol[] names, final SExpr[] values, final Environment parent, final IdSet below) {
+        IdSet bound = below;
+        for (final Symbol name : names) {
+            if (name != null) {
+                bound = bound.with(name.id());
+            }
+        }
+        this.names = names;
+        this.values = values;
+        this.parent = parent;
+        this.base = parent.base;
+        this.bound = bound;
+        this.index = null;
+    }
+
+    private Environment(final Symbol[] names, final SExpr[] values, final Environment parent, final Index index) {
+        this.names = names;
+        this.values = values;
+        this.parent = parent;
+        this.base = this;
+        this.bound = IdSet.EMPTY;
+        this.index = index;
+    }
+
+    /**
+     * Creates new environment where given parameter atoms are bound to given arguments.
+     * <p>
+     * Parameters and arguments are paired up the same way as by {@link SExpr#zip(SExpr)}.
+     */
+    public Environment bind(final SExpr parameters, final SExpr arguments) {
+        if (arguments instanceof SExpr.Vector && ((SExpr.Vector) arguments).tail() instanceof SExpr.Nil) {
+            return bind(parameters, ((SExpr.Vector) arguments).toArray());
+        }
+        final int size = parameters.size();
+        final Symbol[] names = new Symbol[size];
+        final SExpr[] values = new SExpr[size];
+
+        SExpr p = parameters, a = arguments;
+        for (int i = 0; i < size; ++i) {
+            names[i] = symbolOf(p.car());
+            values[i] = a.car();
+            p = p.cdr();
+            a = a.cdr();
+        }
+        return bind(names, values);
+    }
+
+    /**
+     * Creates new environment where given parameter atoms are bound to the arguments at the same positions.
+     * <p>
+     * Parameters without arguments are bound to nil, while arguments without parameters are ignored.
+     */
+    public Environment bind(final SExpr parameters, final SExpr[] arguments) {
+        return bind(Resolver.namesOf(parameters), fit(arguments, parameters.size()));
+    }
+
+    /**
+     * Creates new environment where given parameter atoms are bound to the arguments at the same positions, discarding
+     * the most recent frame of this environment if all its bindings would be shadowed by the new frame.
+     * <p>
+     * The resulting environment resolves atoms by name exactly as if {@link #bind(SExpr, SExpr[])} had been used, but
+     * does not retain frames no longer reachable by name lookups. Self-recursive calls therefore do not grow the
+     * environment. Frames may no longer be addressed by depth in environments created this way.
+     */
+    public Environment rebind(final SExpr parameters, final SExpr[] arguments) {
+        final Symbol[] names = Resolver.namesOf(parameters);
+        final SExpr[] values = fit(arguments, names.length);
+        if (index == null && isShadowedBy(names)) {
+            // The symbols bound by this frame are a subset of the names, making the union of its set and the names
+            // equal to the union of the set of the parent and the names.
+            return new Environment(names, values, parent, bound);
+        }
+        return bind(names, values);
+    }
+
+    private boolean isShadowedBy(final Symbol[] shadowing) {
+        outer:
+        for (final Symbol name : names) {
+            if (name == null) {
+                continue;
+            }
+            for (final Symbol s : shadowing) {
+                if (s == name) {
+                    continue outer;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static SExpr[] fit(final SExpr[] arguments, final int size) {
+        if (arguments.length == size) {
+            return arguments;
+        }
+        final SExpr[] values = new SExpr[size];
+        for (int i = 0; i < size; ++i) {
+            values[i] = i < arguments.length ? arguments[i] : SExpr.NIL;
+        }
+        return values;
+    }
+
+    /** Creates new environment where given symbols are bound to the values at the same array positions. */
+    public Environment bind(final Symbol[] names, final SExpr[] values) {
+        return new Environment(names, values, this, bound);
+    }
+
+    /** Creates new environment where given label atom is bound to given value. */
+    public Environment label(final SExpr name, final SExpr value) {
+        final Symbol symbol = symbolOf(name);
+        Index index = base.index;
+
+        final Deque<Environment> frames = new ArrayDeque<>();
+        for (Environment env = this; env != base; env = env.parent) {
+            frames.push(env);
+        }
+        for (final Environment frame : frames) {
+            for (int i = 0; i < frame.names.length; ++i) {
+                if (frame.names[i] != null) {
+                    index = index.put(frame.names[i], frame.values[i]);
+                }
+            }
+        }
+        if (symbol != null) {
+            index = index.put(symbol, value);
+        }
+        return new Environment(new Symbol[]{symbol}, new SExpr[]{value}, this, index);
+    }
+
+    /** Gets value in given slot of the frame at given depth, where the most recently pushed frame is at depth 0. */
+    public SExpr get(final int depth, final int slot) {
+        Environment env = this;
+        for (int d = depth; d != 0; --d) {
+            env = env.parent;
+        }
+        return env.values[slot];
+    }
+
+    /** Gets expression associated with given atom. */
+    public SExpr lookup(final SExpr.Atom e) {
+        final Symbol symbol = e.symbol();
+        final int id = symbol.id();
+
+        Environment env = this;
+        while (env.index == null) {
+            if (!env.bound.contains(id)) {
+                env = env.base;
+                break;
+            }
+            for (int i = 0; i < env.names.length; ++i) {
+                if (env.names[i] == symbol) {
+                    return env.values[i];
+                }
+            }
+            env = env.parent;
+        }
+        final SExpr value = env.index.get(symbol);
+        if (value == null) {
+            throw new SExprException.AtomNotFound(e);
+        }
+        return value;
+    }
+
+    private static Symbol symbolOf(final SExpr e) {
+        return e instanceof SExpr.Atom
+                ? ((SExpr.Atom) e).symbol()
+                : null;
+    }
+
+    /**
+     * Persistent map from symbols to expressions.
+     * <p>
+     * The map is a trie with nodes of {@link #WIDTH} slots, each level of which is indexed by a few bits of symbol
+     * identifiers, most significant bits first. Putting a binding copies the nodes along the path of its identifier,
+     * sharing all other nodes with the original map. The trie only has the levels needed to hold its largest
+     * identifier, which are few as identifiers are allocated densely.
+     */
+    private static final class Index {
+        private static final int BITS = 4;
+        private static final int WIDTH = 1 << BITS;
+        private static final int MASK = WIDTH - 1;
+        private static final Index EMPTY = new Index(new Object[WIDTH], 0);
+
+        private final Object[] root;
+        private final int shift;
+
+        private Index(final Object[] root, final int shift) {
+            this.root = root;
+            this.shift = shift;
+        }
+
+        /** Gets expression bound to given symbol, or null if not bound. */
+        private SExpr get(final Symbol symbol) {
+            final int id = symbol.id();
+            if (id >>> shift >= WIDTH) {
+                return null;
+            }
+            Object[] node = root;
+            for (int s = shift; s != 0; s -= BITS) {
+                node = (Object[]) node[id >>> s & MASK];
+                if (node == null) {
+                    return null;
+                }
+            }
+            final Binding binding = (Binding) node[id & MASK];
+            return binding != null && binding.symbol == symbol ? binding.value : null;
+        }
+
+        /** Creates map where given symbol is bound to given value, in addition to all other bindings of this map. */
+        private Index put(final Symbol symbol, final SExpr value) {
+            final int id = symbol.id();
+            Object[] root = this.root;
+            int shift = this.shift;
+            while (id >>> shift >= WIDTH) {
+                final Object[] node = new Object[WIDTH];
+                node[0] = root;
+                root = node;
+                shift += BITS;
+            }
+            return new Index(put(root, shift, id, new Binding(symbol, value)), shift);
+        }
+
+        private static Object[] put(final Object[] node, final int shift, final int id, final Binding binding) {
+            final Object[] copy = node != null ? node.clone() : new Object[WIDTH];
+            if (shift == 0) {
+                copy[id & MASK] = binding;
+
+            } else {
+                final int i = id >>> shift & MASK;
+                copy[i] = put((Object[]) copy[i], shift - BITS, id, binding);
+            }
+            return copy;
+        }
+
+        private static final class Binding {
+            private final Symbol symbol;
+            private final SExpr value;
+
+            private Binding(final Symbol symbol, final SExpr value) {
+                this.symbol = symbol;
+                this.value = value;
+            }
+        }
+    }
+}
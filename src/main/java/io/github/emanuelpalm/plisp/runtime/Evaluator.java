@@ -7,7 +7,7 @@ import io.github.emanuelpalm.plisp.parser.Parser;
  */
 public class Evaluator {
     /** Truth. */
-    public static final SExpr T = SExpr.Atom.of("t");
+    public static final SExpr T = Symbols.T.atom();
 
     /** Falsity, which also happens to be the empty list. */
     public static final SExpr F = SExpr.NIL;
@@ -29,12 +29,17 @@ public class Evaluator {
      * COND[s]      - Returns CDR of first cons element in s whose CAR evaluates to t.
      * LAMBDA[x;e]* - Defines function which takes a list of arguments x and an expression body e.
      * LABEL[n;l]*  - Adds entry to environment containing name n and lambda (or constant) l.
+     * FUTURE[e]    - Starts evaluating e in parallel, immediately returning a future of its value.
+     * TOUCH[e]     - Waits for the value of e, if a future.
      * </pre>
      * * LAMBDA and LABEL are meant to be used to effect the environment. Because of this, they are treated rather
      * differently than other functions. If the first argument of an evaluated list is a LAMBDA or LABEL call, that
      * argument is evaluated first, contrary to normal procedure, allowing it to change the environment before the
      * second argument is evaluated.
      * <p>
+     * Futures are touched implicitly when inspected by ATOM, EQ, CAR, CDR or COND, when used as functions, and before
+     * being returned as part of the result of the evaluation.
+     * <p>
      * Example:
      * <pre>
      * (
@@ -46,7 +51,19 @@ public class Evaluator {
      * @see <a href="http://www.paulgraham.com/rootsoflisp.html">The Roots of Lisp - Paul Graham, January 2002</a>
      */
     public static SExpr eval(final SExpr e) {
-        return eval(e, SExpr.NIL);
+        return SExpr.Future.touchAll(eval(e, Environment.EMPTY));
+    }
+
+    /**
+     * Evaluates given expression e, stopping if exceeding any limit of given budget.
+     * <p>
+     * Any futures are evaluated eagerly, by the evaluating thread.
+     *
+     * @see #eval(SExpr)
+     * @see Budget
+     */
+    public static SExpr eval(final SExpr e, final Budget budget) {
+        return SExpr.Future.touchAll(eval(e, Environment.EMPTY, budget));
     }
 
     /**
@@ -59,70 +76,228 @@ public class Evaluator {
     }
 
     /**
-     * Evaluates expression e using environment a.
-     * <p>
-     * The environment has to be a list, with atom/lambda pairs as elements.
+     * Evaluates given resolved program.
      * <p>
-     * Example:
-     * <pre>
-     * (
-     *     ('caar . (lambda (x) (car (car x))))
-     *     ('cadr . (lambda (x) (car (cdr x))))
-     * )
-     * </pre>
+     * Produces the same results as evaluating the expression the program was resolved from, but without looking up
+     * elementary s-functions or any resolved atom references by name.
+     *
+     * @see #eval(SExpr)
+     * @see Resolver
+     */
+    public static SExpr eval(final Program p) {
+        return SExpr.Future.touchAll(eval(p.root(), Environment.EMPTY, null, null));
+    }
+
+    /**
+     * Evaluates given resolved program, stopping if exceeding any limit of given budget.
+     *
+     * @see #eval(SExpr, Budget)
+     * @see #eval(Program)
+     */
+    public static SExpr eval(final Program p, final Budget budget) {
+        return SExpr.Future.touchAll(eval(p.root(), Environment.EMPTY, null, budget));
+    }
+
+    /** Evaluates given resolved program, making all label calls via given calls c, unless null. */
+    static SExpr eval(final Program p, final Calls c) {
+        return SExpr.Future.touchAll(eval(p.root(), Environment.EMPTY, c, null));
+    }
+
+    /** Evaluates body of label with given definition d using environment b, making label calls via given calls c. */
+    static SExpr evalBody(final Resolved.Definition d, final Environment b, final Calls c) {
+        return eval(d.body, b, c, null);
+    }
+
+    /**
+     * Evaluates resolved expression r using environment a, making label calls via given calls c, unless null, and
+     * accounting for the evaluation in given budget q, unless null.
      */
-    private static SExpr eval(final SExpr e, final SExpr a) {
+    private static SExpr eval(final Resolved r, final Environment a, final Calls c, final Budget q) {
+        if (q == null) {
+            return step(r, a, c, null);
+        }
+        q.enter(r.source);
+        try {
+            return step(r, a, c, q);
+
+        } finally {
+            q.leave();
+        }
+    }
+
+    /** Evaluates resolved expression r, as by {@link #eval(Resolved, Environment, Calls, Budget)}. */
+    private static SExpr step(final Resolved r, final Environment a, final Calls c, final Budget q) {
+        final Resolved[] os = r.operands;
+        switch (r.tag) {
+            case Resolved.QUOTE:
+                return r.source.cdr().car();
+
+            case Resolved.SLOT:
+                return a.get(r.depth, r.slot);
+
+            case Resolved.LABEL:
+                return r.definition.value;
+
+            case Resolved.DYNAMIC:
+                return a.lookup((SExpr.Atom) r.source);
+
+            case Resolved.ATOM:
+                return SExpr.Future.touch(eval(os[0], a, c, q)) instanceof SExpr.Cons ? F : T;
+
+            case Resolved.EQ: {
+                final SExpr e0 = eval(os[0], a, c, q);
+                final SExpr e1 = eval(os[1], a, c, q);
+                return SExpr.Future.equal(e0, e1) ? T : F;
+            }
+            case Resolved.CAR:
+                return eval(os[0], a, c, q).car();
+
+            case Resolved.CDR:
+                return eval(os[0], a, c, q).cdr();
+
+            case Resolved.CONS: {
+                final SExpr e0 = eval(os[0], a, c, q);
+                final SExpr e1 = eval(os[1], a, c, q);
+                if (q != null) {
+                    q.allocate(1, r.source);
+                }
+                if (c != null) {
+                    c.allocate(1);
+                }
+                return new SExpr.Cons(e0, e1);
+            }
+            case Resolved.COND:
+                for (int i = 0; i < os.length; i += 2) {
+                    if (eval(os[i], a, c, q).equals(T)) {
+                        return eval(os[i + 1], a, c, q);
+                    }
+                }
+                throw new SExprException.CondExhausted(lastOf(r.source));
+
+            case Resolved.CALL: {
+                final Resolved.Definition d = r.definition;
+                if (q != null) {
+                    q.allocate(d.parameters.length, r.source);
+                }
+                final SExpr[] arguments = evlis(os, 0, d.parameters.length, a, c, q);
+                final Environment b = a.bind(d.parameters, arguments);
+                return c != null ? c.call(d, arguments, b) : eval(d.body, b, null, q);
+            }
+            case Resolved.INVOKE:
+                return eval(new SExpr.Cons(SExpr.Future.touch(eval(os[0], a, c, q)), r.source.cdr()), a, q);
+
+            case Resolved.APPLY:
+                if (q != null) {
+                    q.allocate(r.names.length, r.source);
+                }
+                return eval(os[0], a.bind(r.names, evlis(os, 1, r.names.length, a, c, q)), c, q);
+
+            case Resolved.BIND:
+                return eval(os[0], a.label(r.definition.name, r.definition.value), c, q);
+
+            case Resolved.FUTURE:
+                return q != null ? eval(os[0], a, c, q) : SExpr.Future.of(() -> eval(os[0], a, c, null));
+
+            case Resolved.TOUCH:
+                return SExpr.Future.touch(eval(os[0], a, c, q));
+
+            default:
+                throw new SExprException("Illegal expression '" + Printer.BRIEF.print(r.source) + "'.", r.source);
+        }
+    }
+
+    /** Evaluates resolved expressions in os, starting at offset, into array of given size. Missing values are nil. */
+    private static SExpr[] evlis(final Resolved[] os, final int offset, final int size, final Environment a,
+                                 final Calls c, final Budget q) {
+        final SExpr[] values = new SExpr[size];
+        for (int i = offset; i < os.length; ++i) {
+            final SExpr value = eval(os[i], a, c, q);
+            if (i - offset < size) {
+                values[i - offset] = value;
+            }
+        }
+        for (int i = Math.max(os.length - offset, 0); i < size; ++i) {
+            values[i] = SExpr.NIL;
+        }
+        return values;
+    }
+
+    /** Gets last element of list e for which cdr is nil. */
+    private static SExpr lastOf(final SExpr e) {
+        SExpr s = e;
+        while (!(s.cdr() instanceof SExpr.Nil)) {
+            s = s.cdr();
+        }
+        return s;
+    }
+
+    /** Evaluates expression e using environment a. */
+    static SExpr eval(final SExpr e, final Environment a) {
+        return eval(e, a, null);
+    }
+
+    /** Evaluates expression e using environment a, accounting for the evaluation in given budget q, unless null. */
+    private static SExpr eval(final SExpr e, final Environment a, final Budget q) {
+        if (q == null) {
+            return step(e, a, null);
+        }
+        q.enter(e);
+        try {
+            return step(e, a, q);
+
+        } finally {
+            q.leave();
+        }
+    }
+
+    /** Evaluates expression e, as by {@link #eval(SExpr, Environment, Budget)}. */
+    private static SExpr step(final SExpr e, final Environment a, final Budget q) {
         if (e instanceof SExpr.Atom) {
-            return assoc(e, a);
+            return a.lookup((SExpr.Atom) e);
         }
         if (e.car() instanceof SExpr.Atom) {
-            switch (((SExpr.Atom) e.car()).name()) {
-                case "quote":
+            switch (((SExpr.Atom) e.car()).symbol().id()) {
+                case Symbols.QUOTE_ID:
                     return quote(e);
 
-                case "atom":
-                    return atom(e, a);
+                case Symbols.ATOM_ID:
+                    return atom(e, a, q);
+
+                case Symbols.EQ_ID:
+                    return eq(e, a, q);
 
-                case "eq":
-                    return eq(e, a);
+                case Symbols.CAR_ID:
+                    return car(e, a, q);
 
-                case "car":
-                    return car(e, a);
+                case Symbols.CDR_ID:
+                    return cdr(e, a, q);
 
-                case "cdr":
-                    return cdr(e, a);
+                case Symbols.CONS_ID:
+                    return cons(e, a, q);
 
-                case "cons":
-                    return cons(e, a);
+                case Symbols.COND_ID:
+                    return cond(e, a, q);
 
-                case "cond":
-                    return cond(e, a);
+                case Symbols.FUTURE_ID:
+                    return future(e, a, q);
+
+                case Symbols.TOUCH_ID:
+                    return touch(e, a, q);
 
                 default:
-                    return eval(new SExpr.Cons(assoc(e.car(), a), e.cdr()), a);
+                    return eval(new SExpr.Cons(SExpr.Future.touch(a.lookup((SExpr.Atom) e.car())), e.cdr()), a, q);
             }
         }
         if (e.car().car() instanceof SExpr.Atom) {
-            switch (((SExpr.Atom) e.car().car()).name()) {
-                case "lambda":
-                    return lambda(e, a);
+            switch (((SExpr.Atom) e.car().car()).symbol().id()) {
+                case Symbols.LAMBDA_ID:
+                    return lambda(e, a, q);
 
-                case "label":
-                    return label(e, a);
+                case Symbols.LABEL_ID:
+                    return label(e, a, q);
             }
         }
-        throw new SExprException("Illegal expression '" + e + "'.", e);
-    }
-
-    /** Gets expression associated with atom e in environment a. */
-    private static SExpr assoc(final SExpr e, final SExpr a) {
-        if (a instanceof SExpr.Nil) {
-            throw new SExprException.AtomNotFound(e);
-        }
-        if (a.car().car().equals(e)) {
-            return a.car().cdr();
-        }
-        return assoc(e, a.cdr());
+        throw new SExprException("Illegal expression '" + Printer.BRIEF.print(e) + "'.", e);
     }
 
     /** Evaluates some quote expression e. */
@@ -131,68 +306,102 @@ public class Evaluator {
     }
 
     /** Evaluates some atom verification expression e using environment a. */
-    private static SExpr atom(final SExpr e, final SExpr a) {
-        return eval(e.cdr().car(), a) instanceof SExpr.Cons ? F : T;
+    private static SExpr atom(final SExpr e, final Environment a, final Budget q) {
+        return SExpr.Future.touch(eval(e.cdr().car(), a, q)) instanceof SExpr.Cons ? F : T;
     }
 
     /** Evaluates some equality expression e using environment a. */
-    private static SExpr eq(final SExpr e, final SExpr a) {
-        final SExpr e0 = eval(e.cdr().car(), a);
-        final SExpr e1 = eval(e.cdr().cdr().car(), a);
-        return e0.equals(e1) ? T : F;
+    private static SExpr eq(final SExpr e, final Environment a, final Budget q) {
+        final SExpr e0 = eval(e.cdr().car(), a, q);
+        final SExpr e1 = eval(e.cdr().cdr().car(), a, q);
+        return SExpr.Future.equal(e0, e1) ? T : F;
     }
 
     /** Evaluates some car (Contents of Address Register) expression e using environment a. */
-    private static SExpr car(final SExpr e, final SExpr a) {
-        return eval(e.cdr().car(), a).car();
+    private static SExpr car(final SExpr e, final Environment a, final Budget q) {
+        return eval(e.cdr().car(), a, q).car();
     }
 
     /** Evaluates some cdr (Contents of Decrement Register) expression e using environment a. */
-    private static SExpr cdr(final SExpr e, final SExpr a) {
-        return eval(e.cdr().car(), a).cdr();
+    private static SExpr cdr(final SExpr e, final Environment a, final Budget q) {
+        return eval(e.cdr().car(), a, q).cdr();
     }
 
     /** Evaluates some cons expression e using environment a. */
-    private static SExpr cons(final SExpr e, final SExpr a) {
-        final SExpr e0 = eval(e.cdr().car(), a);
-        final SExpr e1 = eval(e.cdr().cdr().car(), a);
+    private static SExpr cons(final SExpr e, final Environment a, final Budget q) {
+        final SExpr e0 = eval(e.cdr().car(), a, q);
+        final SExpr e1 = eval(e.cdr().cdr().car(), a, q);
+        if (q != null) {
+            q.allocate(1, e);
+        }
         return new SExpr.Cons(e0, e1);
     }
 
     /** Evaluates some condition expression e using environment a. */
-    private static SExpr cond(final SExpr e, final SExpr a) {
+    private static SExpr cond(final SExpr e, final Environment a, final Budget q) {
         if (e.cdr() instanceof SExpr.Nil) {
             throw new SExprException.CondExhausted(e);
         }
-        if (eval(e.cdr().car().car(), a).equals(T)) {
-            return eval(e.cdr().car().cdr().car(), a);
+        if (eval(e.cdr().car().car(), a, q).equals(T)) {
+            return eval(e.cdr().car().cdr().car(), a, q);
         }
-        return cond(e.cdr(), a);
+        return cond(e.cdr(), a, q);
+    }
+
+    /** Evaluates some future expression e using environment a. */
+    private static SExpr future(final SExpr e, final Environment a, final Budget q) {
+        final SExpr body = e.cdr().car();
+        return q != null ? eval(body, a, q) : SExpr.Future.of(() -> eval(body, a, null));
+    }
+
+    /** Evaluates some touch expression e using environment a. */
+    private static SExpr touch(final SExpr e, final Environment a, final Budget q) {
+        return SExpr.Future.touch(eval(e.cdr().car(), a, q));
     }
 
     /** Evaluates some label expression e using environment a. */
-    private static SExpr label(final SExpr e, final SExpr a) {
+    private static SExpr label(final SExpr e, final Environment a, final Budget q) {
         final SExpr name = e.car().cdr().car();
         final SExpr value = e.car().cdr().cdr().car();
-        return eval(
-                e.cdr().car(),
-                new SExpr.Cons(new SExpr.Cons(name, value), a)
-        );
+        return eval(e.cdr().car(), a.label(name, value), q);
     }
 
     /** Evaluates some lambda expression e using environment a. */
-    private static SExpr lambda(final SExpr e, final SExpr a) {
+    private static SExpr lambda(final SExpr e, final Environment a, final Budget q) {
         return eval(
                 e.car().cdr().cdr().car(),
-                e.car().cdr().car().zip(evlis(e.cdr(), a)).concat(a)
+                a.bind(e.car().cdr().car(), evlis(e.cdr(), a, q)),
+                q
         );
     }
 
-    /** Evaluates some list of expressions e using environment a. */
-    private static SExpr evlis(final SExpr e, final SExpr a) {
-        if (e instanceof SExpr.Nil) {
-            return e;
+    /** Evaluates some list of expressions e using environment a, producing a list of their values. */
+    private static SExpr evlis(final SExpr e, final Environment a, final Budget q) {
+        final SExpr[] values = new SExpr[e.size()];
+        if (q != null) {
+            q.allocate(values.length, e);
+        }
+        SExpr s = e;
+        for (int i = 0; i < values.length; ++i, s = s.cdr()) {
+            values[i] = eval(s.car(), a, q);
         }
-        return new SExpr.Cons(eval(e.car(), a), evlis(e.cdr(), a));
+        return SExpr.Vector.wrap(values, SExpr.NIL);
+    }
+
+    /**
+     * Makes calls to resolved labels on behalf of the evaluator.
+     */
+    interface Calls {
+        /** Notified when given amount of cons cells have been allocated by CONS. Does nothing by default. */
+        default void allocate(final int amount) {
+        }
+
+        /**
+         * Calls label with given definition d and evaluated arguments, which are bound by environment b.
+         * <p>
+         * Unless the call is handled in some other way, it should be made by evaluating the label body using
+         * {@link Evaluator#evalBody(Resolved.Definition, Environment, Calls)}.
+         */
+        SExpr call(final Resolved.Definition d, final SExpr[] arguments, final Environment b);
     }
 }
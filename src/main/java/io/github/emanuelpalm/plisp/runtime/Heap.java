@@ -0,0 +1,368 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cons cell heap kept in primitive arrays, as used by {@link HeapMachine}.
+ * <p>
+ * Cells are not objects, but indices into two parallel arrays holding the cars and cdrs of all cells. Cars and cdrs
+ * are references, which are ints tagged by their lowest bit. Even references are cell indices shifted one bit left,
+ * with zero being nil, and odd references are indices into a table of atoms, also shifted one bit left. Atoms keep
+ * their identities, which means that atoms with source code positions keep reporting them. As the arrays hold no
+ * object references, the JVM garbage collector never has to trace individual cells, no matter how many there are.
+ * <p>
+ * Cells are allocated by bumping a pointer. When no free cells remain, live cells are copied into a second pair of
+ * arrays by a copying collector, which is given its roots by the owner of the heap, and the arrays are then swapped.
+ * Collections therefore take time proportional only to the amount of live cells. If more than half of the cells are
+ * still live after a collection, the heap grows to twice its size. Expressions are only converted to and from cells
+ * when entering or leaving the heap, by {@link #put(SExpr)} and {@link #get(int)}.
+ * <p>
+ * Heaps are not safe to use from multiple threads.
+ */
+public final class Heap {
+    /** Reference to nil. */
+    static final int NIL = 0;
+
+    /** Reference to nothing, used to signal absent values. Never refers to any cell or atom. */
+    static final int NONE = -1;
+
+    /** Reference to the canonical atom t. */
+    static final int T = 1;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int FORWARDED = -1;
+
+    private final Roots roots;
+    private int[] cars, cdrs, spareCars, spareCdrs;
+    private int free = 1;
+
+    private SExpr.Atom[] atoms = new SExpr.Atom[64];
+    private int[] symbols = new int[atoms.length];
+    private int atomCount = 0;
+    private final Map<SExpr.Atom, Integer> atomIndexes = new IdentityHashMap<>();
+
+    private int protectedCar, protectedCdr;
+    private int[] pending = new int[32];
+    private long allocated = 0, collections = 0, collectionNanos = 0, maxCollectionNanos = 0, live = 0;
+
+    /**
+     * Creates heap.
+     *
+     * @param capacity Initial amount of cells.
+     * @param roots    Function forwarding all references held by the owner of the heap, when collecting.
+     */
+    Heap(final int capacity, final Roots roots) {
+        if (capacity < 2 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Heap capacity must be between 2 and " + MAX_CAPACITY + ".");
+        }
+        this.roots = roots;
+        this.cars = new int[capacity];
+        this.cdrs = new int[capacity];
+        this.spareCars = new int[capacity];
+        this.spareCdrs = new int[capacity];
+        atomOf(Symbols.T.atom());
+    }
+
+    /** Determines whether given reference refers to a cell. */
+    static boolean isCell(final int reference) {
+        return (reference & 1) == 0 && reference != NIL;
+    }
+
+    /** Determines whether given reference refers to an atom. */
+    static boolean isAtom(final int reference) {
+        return (reference & 1) != 0;
+    }
+
+    /** Car of referenced cell, the atom itself if an atom, or nil if nil. */
+    int car(final int reference) {
+        return isCell(reference) ? cars[reference >>> 1] : reference;
+    }
+
+    /** Cdr of referenced cell, or nil if an atom or nil. */
+    int cdr(final int reference) {
+        return isCell(reference) ? cdrs[reference >>> 1] : NIL;
+    }
+
+    /** Symbol identifier of referenced atom. */
+    int symbolOf(final int atom) {
+        return symbols[atom >>> 1];
+    }
+
+    /** Amount of elements in referenced list, counting a terminating atom as one element, like {@link SExpr#size()}. */
+    int size(final int reference) {
+        int size = 0;
+        int s = reference;
+        while (isCell(s)) {
+            size += 1;
+            s = cdrs[s >>> 1];
+        }
+        return isAtom(s) ? size + 1 : size;
+    }
+
+    /**
+     * Allocates new cell holding given car and cdr. Collects garbage if the heap is full, which invalidates all
+     * references not forwarded by the roots of the heap, except the ones given.
+     */
+    int cons(final int car, final int cdr) {
+        if (free == cars.length) {
+            protectedCar = car;
+            protectedCdr = cdr;
+            collect(1);
+            final int c0 = protectedCar, c1 = protectedCdr;
+            protectedCar = NIL;
+            protectedCdr = NIL;
+            return cons(c0, c1);
+        }
+        cars[free] = car;
+        cdrs[free] = cdr;
+        allocated += 1;
+        return free++ << 1;
+    }
+
+    /**
+     * Determines whether referenced expressions are structurally equal, as by {@link SExpr#equals(Object)}. Pairs of
+     * cdrs still to compare are kept in a stack reused by all comparisons.
+     */
+    boolean equal(final int a, final int b) {
+        if (a == b) {
+            return true;
+        }
+        if (isAtom(a) && isAtom(b)) {
+            return symbolOf(a) == symbolOf(b);
+        }
+        int depth = 0;
+        int x = a, y = b;
+        while (true) {
+            while (x != y) {
+                if (isCell(x) && isCell(y)) {
+                    if (depth == pending.length) {
+                        pending = Arrays.copyOf(pending, depth * 2);
+                    }
+                    pending[depth++] = cdrs[x >>> 1];
+                    pending[depth++] = cdrs[y >>> 1];
+                    x = cars[x >>> 1];
+                    y = cars[y >>> 1];
+                    continue;
+                }
+                if (!(isAtom(x) && isAtom(y) && symbolOf(x) == symbolOf(y))) {
+                    return false;
+                }
+                break;
+            }
+            if (depth == 0) {
+                return true;
+            }
+            y = pending[--depth];
+            x = pending[--depth];
+        }
+    }
+
+    /**
+     * Copies given expression e into the heap, preserving any substructure shared within it. Garbage is collected
+     * before copying if there is not enough room, which invalidates references as by {@link #cons(int, int)}.
+     *
+     * @return Reference to copied expression.
+     */
+    int put(final SExpr e) {
+        final Map<SExpr, Integer> indexes = new IdentityHashMap<>();
+        final List<SExpr> conses = new ArrayList<>();
+        final Deque<SExpr> stack = new ArrayDeque<>();
+        stack.push(e);
+        while (!stack.isEmpty()) {
+            final SExpr s = SExpr.Future.touch(stack.pop());
+            if (s instanceof SExpr.Cons && indexes.putIfAbsent(s, conses.size()) == null) {
+                conses.add(s);
+                stack.push(s.cdr());
+                stack.push(s.car());
+            }
+        }
+        reserve(conses.size());
+        final int base = free;
+        free += conses.size();
+        allocated += conses.size();
+        for (int i = 0; i < conses.size(); ++i) {
+            final SExpr s = conses.get(i);
+            cars[base + i] = referenceTo(s.car(), base, indexes);
+            cdrs[base + i] = referenceTo(s.cdr(), base, indexes);
+        }
+        return referenceTo(e, base, indexes);
+    }
+
+    private int referenceTo(final SExpr e, final int base, final Map<SExpr, Integer> indexes) {
+        final SExpr s = SExpr.Future.touch(e);
+        if (s instanceof SExpr.Cons) {
+            return base + indexes.get(s) << 1;
+        }
+        if (s instanceof SExpr.Atom) {
+            return atomOf((SExpr.Atom) s);
+        }
+        return NIL;
+    }
+
+    /** Gets reference to given atom, adding it to the atom table if not already present. */
+    private int atomOf(final SExpr.Atom atom) {
+        final Integer index = atomIndexes.get(atom);
+        if (index != null) {
+            return index << 1 | 1;
+        }
+        if (atomCount == atoms.length) {
+            atoms = Arrays.copyOf(atoms, atomCount * 2);
+            symbols = Arrays.copyOf(symbols, atomCount * 2);
+        }
+        atoms[atomCount] = atom;
+        symbols[atomCount] = atom.symbol().id();
+        atomIndexes.put(atom, atomCount);
+        return atomCount++ << 1 | 1;
+    }
+
+    /** Creates expression equal to referenced one, sharing substructure exactly as the referenced cells. */
+    SExpr get(final int reference) {
+        if (!isCell(reference)) {
+            return isAtom(reference) ? atoms[reference >>> 1] : SExpr.NIL;
+        }
+        final Map<Integer, SExpr> created = new HashMap<>();
+        final Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(reference);
+        while (!stack.isEmpty()) {
+            final int r = stack.peek();
+            if (created.containsKey(r)) {
+                stack.pop();
+                continue;
+            }
+            final int car = cars[r >>> 1], cdr = cdrs[r >>> 1];
+            final boolean isCarReady = !isCell(car) || created.containsKey(car);
+            final boolean isCdrReady = !isCell(cdr) || created.containsKey(cdr);
+            if (isCarReady && isCdrReady) {
+                stack.pop();
+                created.put(r, new SExpr.Cons(isCell(car) ? created.get(car) : get(car),
+                        isCell(cdr) ? created.get(cdr) : get(cdr)));
+                continue;
+            }
+            if (!isCdrReady) {
+                stack.push(cdr);
+            }
+            if (!isCarReady) {
+                stack.push(car);
+            }
+        }
+        return created.get(reference);
+    }
+
+    /** Makes sure that at least given amount of cells can be allocated without collecting garbage. */
+    private void reserve(final int amount) {
+        if ((long) free + amount > cars.length) {
+            collect(amount);
+        }
+    }
+
+    /** Collects garbage, growing the heap until at least given amount of cells are free. */
+    private void collect(final int amount) {
+        final long start = System.nanoTime();
+        final int[] fromCars = cars, fromCdrs = cdrs;
+        cars = spareCars;
+        cdrs = spareCdrs;
+        spareCars = fromCars;
+        spareCdrs = fromCdrs;
+        free = 1;
+
+        protectedCar = forward(protectedCar);
+        protectedCdr = forward(protectedCdr);
+        roots.forward(this);
+        for (int scan = 1; scan < free; ++scan) {
+            cars[scan] = forward(cars[scan]);
+            cdrs[scan] = forward(cdrs[scan]);
+        }
+        live = free - 1;
+
+        long capacity = cars.length;
+        while (free + (long) amount > capacity / 2 + 1 && capacity < MAX_CAPACITY) {
+            capacity *= 2;
+        }
+        if (free + (long) amount > capacity) {
+            throw new SExprException("Heap exhausted after collecting garbage, with " + live + " cells live.",
+                    SExpr.NIL);
+        }
+        if (capacity != cars.length) {
+            cars = Arrays.copyOf(cars, (int) capacity);
+            cdrs = Arrays.copyOf(cdrs, (int) capacity);
+            spareCars = new int[(int) capacity];
+            spareCdrs = new int[(int) capacity];
+        }
+
+        final long nanos = System.nanoTime() - start;
+        collections += 1;
+        collectionNanos += nanos;
+        maxCollectionNanos = Math.max(maxCollectionNanos, nanos);
+    }
+
+    /**
+     * Copies referenced cell into the cells being collected into, unless already copied, and returns the reference to
+     * its copy. Atom and nil references are returned as they are. May only be called while collecting.
+     */
+    int forward(final int reference) {
+        if (!isCell(reference)) {
+            return reference;
+        }
+        final int index = reference >>> 1;
+        if (spareCars[index] == FORWARDED) {
+            return spareCdrs[index];
+        }
+        cars[free] = spareCars[index];
+        cdrs[free] = spareCdrs[index];
+        spareCars[index] = FORWARDED;
+        spareCdrs[index] = free << 1;
+        return free++ << 1;
+    }
+
+    /** Amount of cells in heap. */
+    public int capacity() {
+        return cars.length;
+    }
+
+    /** Amount of cells allocated since heap was created. */
+    public long allocated() {
+        return allocated;
+    }
+
+    /** Amount of garbage collections made. */
+    public long collections() {
+        return collections;
+    }
+
+    /** Total time spent collecting garbage, in nanoseconds. */
+    public long collectionNanos() {
+        return collectionNanos;
+    }
+
+    /** Longest time spent in a single garbage collection, in nanoseconds. */
+    public long maxCollectionNanos() {
+        return maxCollectionNanos;
+    }
+
+    /** Amount of cells found live by the latest garbage collection. */
+    public long live() {
+        return live;
+    }
+
+    @Override
+    public String toString() {
+        return "Heap of " + capacity() + " cells: " + allocated + " allocated, " + collections + " collections, "
+                + live + " live after latest, " + collectionNanos / 1000000 + " ms collecting, "
+                + maxCollectionNanos / 1000000 + " ms longest pause.";
+    }
+
+    /**
+     * Provides the references held by the owner of some heap.
+     */
+    interface Roots {
+        /** Replaces every reference held with the one returned by {@link Heap#forward(int)} for the same reference. */
+        void forward(Heap heap);
+    }
+}
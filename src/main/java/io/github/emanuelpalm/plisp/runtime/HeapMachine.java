@@ -0,0 +1,636 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates s-expressions using an explicit continuation stack, keeping all cons cells in a {@link Heap}.
+ * <p>
+ * The machine evaluates the same language as {@link Machine}, in the same way, but its program, the values it
+ * produces and the values bound by its environments are all references to heap cells rather than expression objects.
+ * Programs that build millions of cons cells therefore put next to no pressure on the JVM garbage collector, and the
+ * size of the heap only depends on how many cells are live. Garbage is collected by copying the cells reachable from
+ * the program, the machine registers, its continuations and its environments. Futures are evaluated eagerly.
+ * <p>
+ * Continuations and environment frames are not objects either, but records in two growable int arrays owned by the
+ * machine, which means that evaluation itself allocates no JVM objects once the arrays are large enough. Frames are
+ * organized like those of {@link Environment}, including the exact symbol sets and label index tries, and are
+ * allocated in a stack. Applying a continuation discards every frame created after it was pushed, as none of those
+ * frames can be reached any longer, and a frame discarded by a tail call is overwritten by the frame replacing it.
+ * <p>
+ * The program is copied into the heap when the machine is created. Results are converted into expressions when
+ * returned, as are the offending expressions of any errors, which therefore report the same source code positions as
+ * they would if reported by {@link Machine}.
+ *
+ * @see Machine
+ */
+public class HeapMachine {
+    /** Default initial amount of heap cells. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int ATOM = 0;
+    private static final int EQ0 = 1;
+    private static final int EQ1 = 2;
+    private static final int CAR = 3;
+    private static final int CDR = 4;
+    private static final int CONS0 = 5;
+    private static final int CONS1 = 6;
+    private static final int COND = 7;
+    private static final int EVLIS = 8;
+
+    // Index tries of label frames, with nodes of WIDTH slots.
+    private static final int BITS = 4;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    // Continuation record fields, counted from the top of each record.
+    private static final int KIND = 1;
+    private static final int MARK = 2;
+    private static final int ENV = 3;
+    private static final int EXPR = 4;
+    private static final int HEADER = 4; // Fields common to all records.
+    private static final int VALUE = 5;
+    private static final int SIZE = 5;
+    private static final int INDEX = 6;
+    private static final int REST = 7;
+
+    // Frame record types, and fields counted from the start of each record.
+    private static final int LAMBDA = 0;
+    private static final int LABEL = 1;
+    private static final int SET = 2;
+    private static final int NODE = 3;
+    private static final int LEAF = 4;
+    private static final int PARENT = 1;
+    private static final int BASE = 2;
+    private static final int BOUND = 3;
+    private static final int NAMES = 4;
+    private static final int ROOT = 2;
+    private static final int SHIFT = 3;
+    private static final int NAME = 4;
+    private static final int BINDING = 5;
+
+    private static final int UNNAMED = -1;
+    private static final int EMPTY_SET = 0;
+
+    private final Heap heap;
+    private int program;
+
+    // Registers, kept in fields so that they can be found by the garbage collector.
+    private int control, value, env;
+
+    // Continuation records, ending with their kinds, and the records of all frames and their indices.
+    private int[] stack = new int[256];
+    private int sp = 0;
+    private int[] frames = new int[256];
+    private int fp = 0;
+    private int[] scratch = new int[16];
+
+    /**
+     * Creates machine evaluating given expression e.
+     *
+     * @param e        Expression to evaluate.
+     * @param capacity Initial amount of heap cells.
+     */
+    public HeapMachine(final SExpr e, final int capacity) {
+        heap = new Heap(capacity, this::forward);
+        program = heap.put(e);
+    }
+
+    /** Evaluates given expression e. */
+    public static SExpr eval(final SExpr e) {
+        return new HeapMachine(e, DEFAULT_CAPACITY).eval();
+    }
+
+    /**
+     * Convenience function for evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Evaluates program of machine. */
+    public SExpr eval() {
+        control = program;
+        value = Heap.NIL;
+        sp = 0;
+        fp = 0;
+        allocate(SET, 1);
+        env = allocate(LABEL, BINDING + 1);
+        frames[env + PARENT] = -1;
+        frames[env + ROOT] = -1;
+        frames[env + SHIFT] = 0;
+        frames[env + NAME] = UNNAMED;
+        frames[env + BINDING] = Heap.NIL;
+        try {
+            return heap.get(run());
+
+        } finally {
+            value = Heap.NIL;
+            sp = 0;
+            fp = 0;
+        }
+    }
+
+    /** Heap holding the cells of the machine. */
+    public Heap heap() {
+        return heap;
+    }
+
+    @Override
+    public String toString() {
+        return heap.toString();
+    }
+
+    /** Runs machine until its control expression has been evaluated. */
+    private int run() {
+        while (true) {
+            final int c = control;
+
+            // Evaluate control expression c, either producing a value or pushing a continuation.
+            if (Heap.isAtom(c)) {
+                value = lookup(c);
+
+            } else if (Heap.isAtom(heap.car(c))) {
+                switch (heap.symbolOf(heap.car(c))) {
+                    case Symbols.QUOTE_ID:
+                        value = heap.car(heap.cdr(c));
+                        break;
+
+                    case Symbols.ATOM_ID:
+                        push(ATOM, c, 0);
+                        control = heap.car(heap.cdr(c));
+                        continue;
+
+                    case Symbols.EQ_ID:
+                        push(EQ0, c, 0);
+                        control = heap.car(heap.cdr(c));
+                        continue;
+
+                    case Symbols.CAR_ID:
+                        push(CAR, c, 0);
+                        control = heap.car(heap.cdr(c));
+                        continue;
+
+                    case Symbols.CDR_ID:
+                        push(CDR, c, 0);
+                        control = heap.car(heap.cdr(c));
+                        continue;
+
+                    case Symbols.CONS_ID:
+                        push(CONS0, c, 0);
+                        control = heap.car(heap.cdr(c));
+                        continue;
+
+                    case Symbols.COND_ID:
+                        if (heap.cdr(c) == Heap.NIL) {
+                            throw new SExprException.CondExhausted(heap.get(c));
+                        }
+                        push(COND, c, 0);
+                        control = heap.car(heap.car(heap.cdr(c)));
+                        continue;
+
+                    case Symbols.FUTURE_ID:
+                    case Symbols.TOUCH_ID:
+                        control = heap.car(heap.cdr(c));
+                        continue;
+
+                    default:
+                        control = heap.cons(lookup(heap.car(c)), heap.cdr(c));
+                        continue;
+                }
+            } else if (Heap.isAtom(heap.car(heap.car(c)))) {
+                final int operator = heap.car(c);
+                switch (heap.symbolOf(heap.car(operator))) {
+                    case Symbols.LAMBDA_ID:
+                        final int size = heap.size(heap.cdr(c));
+                        if (size == 0) {
+                            rebind(heap.car(heap.cdr(operator)), sp, 0);
+                            control = heap.car(heap.cdr(heap.cdr(operator)));
+                            continue;
+                        }
+                        push(EVLIS, c, size);
+                        control = heap.car(heap.cdr(c));
+                        continue;
+
+                    case Symbols.LABEL_ID:
+                        final int name = heap.car(heap.cdr(operator));
+                        label(Heap.isAtom(name) ? heap.symbolOf(name) : UNNAMED,
+                                heap.car(heap.cdr(heap.cdr(operator))));
+                        control = heap.car(heap.cdr(c));
+                        continue;
+                }
+                throw illegal(c);
+
+            } else {
+                throw illegal(c);
+            }
+
+            // Apply continuations to value until one of them provides a new control expression. Frames created after a
+            // continuation was pushed can no longer be reached when it is applied, and are therefore discarded.
+            while (true) {
+                if (sp == 0) {
+                    return value;
+                }
+                final int kind = stack[sp - KIND];
+                final int expr = stack[sp - EXPR];
+                env = stack[sp - ENV];
+                fp = stack[sp - MARK];
+                sp -= HEADER;
+
+                switch (kind) {
+                    case ATOM:
+                        value = Heap.isCell(value) ? Heap.NIL : Heap.T;
+                        continue;
+
+                    case EQ0:
+                        push(EQ1, expr, value);
+                        control = heap.car(heap.cdr(heap.cdr(expr)));
+                        break;
+
+                    case EQ1:
+                        value = heap.equal(stack[--sp], value) ? Heap.T : Heap.NIL;
+                        continue;
+
+                    case CAR:
+                        value = heap.car(value);
+                        continue;
+
+                    case CDR:
+                        value = heap.cdr(value);
+                        continue;
+
+                    case CONS0:
+                        push(CONS1, expr, value);
+                        control = heap.car(heap.cdr(heap.cdr(expr)));
+                        break;
+
+                    case CONS1:
+                        value = heap.cons(stack[--sp], value);
+                        continue;
+
+                    case COND:
+                        if (Heap.isAtom(value) && heap.symbolOf(value) == Symbols.T_ID) {
+                            control = heap.car(heap.cdr(heap.car(heap.cdr(expr))));
+                            break;
+                        }
+                        final int next = heap.cdr(expr);
+                        if (heap.cdr(next) == Heap.NIL) {
+                            throw new SExprException.CondExhausted(heap.get(next));
+                        }
+                        push(COND, next, 0);
+                        control = heap.car(heap.car(heap.cdr(next)));
+                        break;
+
+                    case EVLIS:
+                        final int size = stack[sp - SIZE + HEADER];
+                        final int arguments = sp - REST + HEADER - size;
+                        final int index = stack[sp - INDEX + HEADER];
+                        final int rest = heap.cdr(stack[sp - REST + HEADER]);
+                        stack[arguments + index] = value;
+                        if (index + 1 < size) {
+                            stack[sp - INDEX + HEADER] = index + 1;
+                            stack[sp - REST + HEADER] = rest;
+                            sp += HEADER;
+                            control = heap.car(rest);
+                            break;
+                        }
+                        sp = arguments;
+                        final int operator = heap.car(expr);
+                        rebind(heap.car(heap.cdr(operator)), arguments, size);
+                        control = heap.car(heap.cdr(heap.cdr(operator)));
+                        break;
+
+                    default:
+                        throw new IllegalStateException();
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Pushes continuation record of given kind, remembering given control expression and the current environment.
+     * Continuations of kinds {@link #EQ1} and {@link #CONS1} also remember given value, while {@link #EVLIS}
+     * continuations reserve room for given amount of evaluated arguments.
+     */
+    private void push(final int kind, final int expr, final int value) {
+        final int payload = kind == EVLIS ? value + 3 : kind == EQ1 || kind == CONS1 ? 1 : 0;
+        if (sp + payload + HEADER > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + payload + HEADER));
+        }
+        if (kind == EVLIS) {
+            Arrays.fill(stack, sp, sp + value, Heap.NIL);
+            sp += value;
+            stack[sp++] = heap.cdr(expr);
+            stack[sp++] = 0;
+            stack[sp++] = value;
+
+        } else if (payload != 0) {
+            stack[sp++] = value;
+        }
+        stack[sp++] = expr;
+        stack[sp++] = env;
+        stack[sp++] = fp;
+        stack[sp++] = kind;
+    }
+
+    /** Looks up value of referenced atom in current environment. */
+    private int lookup(final int atom) {
+        final int name = heap.symbolOf(atom);
+        int f = env;
+        while (typeOf(f) == LAMBDA) {
+            if (!contains(frames[f + BOUND], name)) {
+                f = frames[f + BASE];
+                break;
+            }
+            final int n = sizeOf(f);
+            for (int i = 0; i < n; ++i) {
+                if (frames[f + NAMES + i] == name) {
+                    return frames[f + NAMES + n + i];
+                }
+            }
+            f = frames[f + PARENT];
+        }
+        final int v = find(frames[f + ROOT], frames[f + SHIFT], name);
+        if (v == Heap.NONE) {
+            throw new SExprException.AtomNotFound(heap.get(atom));
+        }
+        return v;
+    }
+
+    /**
+     * Makes current environment bind referenced parameters to given amount of arguments, starting at given index of
+     * the continuation stack, exactly as {@link Environment#rebind(SExpr, SExpr[])}. If the current frame is discarded
+     * and no continuation refers to it, the new frame takes its place.
+     */
+    private void rebind(final int parameters, final int arguments, final int count) {
+        final int n = heap.size(parameters);
+        final int f = env;
+        final boolean isLambda = typeOf(f) == LAMBDA;
+        final boolean isShadowed = isLambda && isShadowedBy(f, parameters, n);
+        final int below = isLambda ? frames[f + BOUND] : EMPTY_SET;
+        final int parent = isShadowed ? frames[f + PARENT] : f;
+        final int base = isLambda ? frames[f + BASE] : f;
+        if (isShadowed && f >= (sp == 0 ? 0 : stack[sp - MARK])) {
+            fp = f;
+        }
+        final int bound = union(below, parameters, n);
+        final int g = allocate(LAMBDA, NAMES + 2 * n);
+        frames[g + PARENT] = parent;
+        frames[g + BASE] = base;
+        frames[g + BOUND] = bound;
+        int p = parameters;
+        for (int i = 0; i < n; ++i, p = heap.cdr(p)) {
+            final int name = heap.car(p);
+            frames[g + NAMES + i] = Heap.isAtom(name) ? heap.symbolOf(name) : UNNAMED;
+            frames[g + NAMES + n + i] = i < count ? stack[arguments + i] : Heap.NIL;
+        }
+        env = g;
+    }
+
+    /** Determines whether all names bound by lambda frame f are among given amount of referenced parameters. */
+    private boolean isShadowedBy(final int f, final int parameters, final int n) {
+        final int size = sizeOf(f);
+        outer:
+        for (int i = 0; i < size; ++i) {
+            final int name = frames[f + NAMES + i];
+            if (name == UNNAMED) {
+                continue;
+            }
+            int p = parameters;
+            for (int j = 0; j < n; ++j, p = heap.cdr(p)) {
+                final int s = heap.car(p);
+                if (Heap.isAtom(s) && heap.symbolOf(s) == name) {
+                    continue outer;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets set of symbols in given set and given amount of referenced parameters. The given set itself is returned if
+     * it already holds all parameters, which makes frames binding the same names share sets.
+     */
+    private int union(final int set, final int parameters, final int n) {
+        int p = parameters;
+        int i = 0;
+        for (; i < n; ++i, p = heap.cdr(p)) {
+            final int name = heap.car(p);
+            if (Heap.isAtom(name) && !contains(set, heap.symbolOf(name))) {
+                break;
+            }
+        }
+        if (i == n) {
+            return set;
+        }
+        final int size = lengthOf(set) - 1;
+        final int u = allocate(SET, 1 + size + n);
+        System.arraycopy(frames, set + 1, frames, u + 1, size);
+        int length = 1 + size;
+        for (; i < n; ++i, p = heap.cdr(p)) {
+            final int name = heap.car(p);
+            if (!Heap.isAtom(name)) {
+                continue;
+            }
+            final int id = heap.symbolOf(name);
+            final int j = Arrays.binarySearch(frames, u + 1, u + length, id);
+            if (j < 0) {
+                final int insertion = -j - 1;
+                System.arraycopy(frames, insertion, frames, insertion + 1, u + length - insertion);
+                frames[insertion] = id;
+                length += 1;
+            }
+        }
+        frames[u] = length << 3 | SET;
+        fp = u + length;
+        return u;
+    }
+
+    private boolean contains(final int set, final int id) {
+        return Arrays.binarySearch(frames, set + 1, set + lengthOf(set), id) >= 0;
+    }
+
+    /**
+     * Makes current environment bind given symbol to referenced value, exactly as {@link Environment#label(SExpr,
+     * SExpr)}. The index of the new label frame is a trie sharing all nodes not updated with the index of the nearest
+     * label frame below it.
+     */
+    private void label(final int name, final int value) {
+        final int f = env;
+        final int base = typeOf(f) == LAMBDA ? frames[f + BASE] : f;
+        int count = 0;
+        for (int g = f; g != base; g = frames[g + PARENT]) {
+            if (count == scratch.length) {
+                scratch = Arrays.copyOf(scratch, count * 2);
+            }
+            scratch[count++] = g;
+        }
+        final int start = fp;
+        int root = frames[base + ROOT], shift = frames[base + SHIFT];
+        for (int i = count; i-- != 0; ) {
+            final int g = scratch[i];
+            final int n = sizeOf(g);
+            for (int j = 0; j < n; ++j) {
+                final int id = frames[g + NAMES + j];
+                if (id == UNNAMED) {
+                    continue;
+                }
+                while (id >>> shift >= WIDTH) {
+                    root = grow(root);
+                    shift += BITS;
+                }
+                root = put(root, shift, id, frames[g + NAMES + n + j], start);
+            }
+        }
+        if (name != UNNAMED) {
+            while (name >>> shift >= WIDTH) {
+                root = grow(root);
+                shift += BITS;
+            }
+            root = put(root, shift, name, value, start);
+        }
+        final int l = allocate(LABEL, BINDING + 1);
+        frames[l + PARENT] = f;
+        frames[l + ROOT] = root;
+        frames[l + SHIFT] = shift;
+        frames[l + NAME] = name;
+        frames[l + BINDING] = value;
+        env = l;
+    }
+
+    /** Creates trie node holding given trie as its first child, or keeps given trie if empty. */
+    private int grow(final int root) {
+        if (root < 0) {
+            return root;
+        }
+        final int node = allocate(NODE, 1 + WIDTH);
+        Arrays.fill(frames, node + 1, node + 1 + WIDTH, -1);
+        frames[node + 1] = root;
+        return node;
+    }
+
+    /**
+     * Binds given symbol identifier to referenced value in given trie, copying the nodes on its path unless created
+     * after given frame arena position, and returns the resulting trie.
+     */
+    private int put(final int root, final int shift, final int id, final int value, final int start) {
+        final int r = copy(root, shift == 0 ? LEAF : NODE, start);
+        int node = r;
+        for (int s = shift; s != 0; s -= BITS) {
+            final int slot = node + 1 + (id >>> s & MASK);
+            final int child = copy(frames[slot], s == BITS ? LEAF : NODE, start);
+            frames[slot] = child;
+            node = child;
+        }
+        frames[node + 1 + (id & MASK)] = value;
+        return r;
+    }
+
+    /** Copies given trie node, or creates an empty node if none, unless created after given arena position. */
+    private int copy(final int node, final int type, final int start) {
+        if (node >= start) {
+            return node;
+        }
+        final int copy = allocate(type, 1 + WIDTH);
+        if (node < 0) {
+            Arrays.fill(frames, copy + 1, copy + 1 + WIDTH, Heap.NONE);
+
+        } else {
+            System.arraycopy(frames, node + 1, frames, copy + 1, WIDTH);
+        }
+        return copy;
+    }
+
+    /** Gets value bound to given symbol identifier in given trie, or {@link Heap#NONE} if not bound. */
+    private int find(final int root, final int shift, final int id) {
+        if (root < 0 || id >>> shift >= WIDTH) {
+            return Heap.NONE;
+        }
+        int node = root;
+        for (int s = shift; s != 0; s -= BITS) {
+            node = frames[node + 1 + (id >>> s & MASK)];
+            if (node < 0) {
+                return Heap.NONE;
+            }
+        }
+        return frames[node + 1 + (id & MASK)];
+    }
+
+    /** Allocates frame arena record of given type and length, including its header. */
+    private int allocate(final int type, final int length) {
+        if (fp + length > frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(frames.length * 2, fp + length));
+        }
+        final int r = fp;
+        frames[r] = length << 3 | type;
+        fp += length;
+        return r;
+    }
+
+    private int typeOf(final int record) {
+        return frames[record] & 7;
+    }
+
+    private int lengthOf(final int record) {
+        return frames[record] >>> 3;
+    }
+
+    /** Amount of names bound by given lambda frame. */
+    private int sizeOf(final int frame) {
+        return (lengthOf(frame) - NAMES) / 2;
+    }
+
+    private SExprException illegal(final int c) {
+        final SExpr e = heap.get(c);
+        return new SExprException("Illegal expression '" + Printer.BRIEF.print(e) + "'.", e);
+    }
+
+    /** Forwards all references held by the machine, when its heap is collecting garbage. */
+    private void forward(final Heap heap) {
+        program = heap.forward(program);
+        control = heap.forward(control);
+        value = heap.forward(value);
+        for (int r = sp; r > 0; ) {
+            final int kind = stack[r - KIND];
+            stack[r - EXPR] = heap.forward(stack[r - EXPR]);
+            int length = HEADER;
+            if (kind == EQ1 || kind == CONS1) {
+                stack[r - VALUE] = heap.forward(stack[r - VALUE]);
+                length += 1;
+
+            } else if (kind == EVLIS) {
+                final int size = stack[r - SIZE];
+                length = REST + size;
+                for (int i = r - length; i <= r - REST; ++i) {
+                    stack[i] = heap.forward(stack[i]);
+                }
+            }
+            r -= length;
+        }
+        for (int r = 0; r < fp; r += lengthOf(r)) {
+            switch (typeOf(r)) {
+                case LAMBDA:
+                    final int n = sizeOf(r);
+                    for (int i = r + NAMES + n; i < r + NAMES + 2 * n; ++i) {
+                        frames[i] = heap.forward(frames[i]);
+                    }
+                    break;
+
+                case LABEL:
+                    frames[r + BINDING] = heap.forward(frames[r + BINDING]);
+                    break;
+
+                case LEAF:
+                    for (int i = r + 1; i < r + 1 + WIDTH; ++i) {
+                        frames[i] = heap.forward(frames[i]);
+                    }
+                    break;
+            }
+        }
+    }
+}
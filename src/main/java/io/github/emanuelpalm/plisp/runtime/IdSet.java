@@ -0,0 +1,39 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of symbol identifiers.
+ * <p>
+ * Identifiers are kept in a sorted array, as sets are expected to be small. Adding identifiers already in a set yields
+ * the same set, allowing sets to be shared freely by environment frames binding the same names.
+ */
+final class IdSet {
+    /** Set without any identifiers. */
+    static final IdSet EMPTY = new IdSet(new int[0]);
+
+    private final int[] ids;
+
+    private IdSet(final int[] ids) {
+        this.ids = ids;
+    }
+
+    /** Determines whether given identifier is in set. */
+    boolean contains(final int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /** Creates set containing given identifier and all identifiers of this set. Negative identifiers are ignored. */
+    IdSet with(final int id) {
+        final int i = Arrays.binarySearch(ids, id);
+        if (id < 0 || i >= 0) {
+            return this;
+        }
+        final int insertion = -i - 1;
+        final int[] grown = new int[ids.length + 1];
+        System.arraycopy(ids, 0, grown, 0, insertion);
+        grown[insertion] = id;
+        System.arraycopy(ids, insertion, grown, insertion + 1, ids.length - insertion);
+        return new IdSet(grown);
+    }
+}
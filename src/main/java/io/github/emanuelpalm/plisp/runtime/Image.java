@@ -0,0 +1,471 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary s-expression serialization.
+ * <p>
+ * An image consists of a header, a table of all atom names used, an array of fixed-size cons nodes, each holding
+ * references to its car and cdr, and a table of atom occurrences with source code positions. A reference is either
+ * nil, the index of an atom name, the index of an atom occurrence, or the index of a node. Conses reachable through more
+ * than one reference are stored once, and are flagged as shared by every reference to them.
+ * <p>
+ * Images are loaded without being decoded. Conses are created from their nodes when first reached, by calling
+ * {@link SExpr#car()} or {@link SExpr#cdr()} on the cons referring to them, and atoms are interned when first reached.
+ * Atom occurrences become new atoms referring to a table of all occurrence positions, copied from the image when the
+ * first occurrence is reached, making loaded expressions report errors exactly as the expressions written.
+ * Shared conses are created only once, which means that loaded expressions share substructure exactly as the
+ * expressions written. Loading an image therefore takes the same time regardless of its size, and only the parts of an
+ * expression actually used are ever decoded. As with source files read by {@link
+ * io.github.emanuelpalm.plisp.lexer.TokenReader}, mapped image files must not be modified while in use.
+ */
+public class Image {
+    private static final int MAGIC = 0x504c5350;
+    private static final int VERSION = 3;
+    private static final int HEADER = 32;
+    private static final int MAX_NODES = (Integer.MAX_VALUE - HEADER) / 8;
+
+    private static final int NIL = 0;
+    private static final int ATOM = 1;
+    private static final int CONS = 2;
+    private static final int SHARED = 3;
+
+    /**
+     * Writes given expression e to given output stream as an image.
+     *
+     * @throws IOException If writing fails, or if the expression is too large to fit in one image.
+     */
+    public static void write(final SExpr e, final OutputStream out) throws IOException {
+        final Encoder encoder = new Encoder();
+        encoder.add(e);
+
+        final byte[][] names = new byte[encoder.atoms.size()][];
+        for (final Map.Entry<Symbol, Integer> entry : encoder.atoms.entrySet()) {
+            names[entry.getValue()] = entry.getKey().name().getBytes(StandardCharsets.UTF_8);
+        }
+        final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        final int[] offsets = new int[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            offsets[i] = strings.size();
+            strings.write(names[i]);
+        }
+        final int occurrences = encoder.positions.length;
+        if ((long) HEADER + 4L * names.length + strings.size() + 8L * encoder.conses.size() + 12L * occurrences
+                > Integer.MAX_VALUE) {
+            throw new IOException("Expression too large for plisp image.");
+        }
+
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeShort(0);
+        data.writeInt(names.length);
+        data.writeInt(occurrences);
+        data.writeInt(encoder.conses.size());
+        data.writeInt(strings.size());
+        data.writeInt(encoder.referenceTo(e));
+        data.writeInt(0);
+        for (final int offset : offsets) {
+            data.writeInt(offset);
+        }
+        strings.writeTo(data);
+        for (final SExpr s : encoder.conses) {
+            data.writeInt(encoder.referenceTo(s.car()));
+            data.writeInt(encoder.referenceTo(s.cdr()));
+        }
+        for (int i = 0; i < occurrences; ++i) {
+            data.writeInt(encoder.occurrenceAtoms[i]);
+            data.writeLong(encoder.positions[i]);
+        }
+        data.flush();
+    }
+
+    /** Reads expression from image provided by given input stream, keeping the image in memory. */
+    public static SExpr read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        return load(ByteBuffer.wrap(out.toByteArray()), false);
+    }
+
+    /** Maps image file into memory, and gets the expression it contains. */
+    public static SExpr map(final File f) throws IOException {
+        return map(f, false);
+    }
+
+    /**
+     * Maps image file into memory, and gets the expression it contains, after making sure that every reference in the
+     * image is valid and that no cons refers to itself. Unlike {@link #map(File)}, this takes time proportional to the
+     * size of the image, but decoding the expression can then never fail due to the image being corrupt.
+     */
+    public static SExpr mapVerified(final File f) throws IOException {
+        return map(f, true);
+    }
+
+    private static SExpr map(final File f, final boolean isVerifying) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(f, "r");
+             final FileChannel fc = raf.getChannel()) {
+            if (fc.size() > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt plisp image.");
+            }
+            return load(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()), isVerifying);
+        }
+    }
+
+    /** Determines whether given file starts like an image of a supported version. */
+    public static boolean isImage(final File f) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return raf.length() >= HEADER && raf.readInt() == MAGIC && raf.readUnsignedShort() == VERSION;
+        }
+    }
+
+    /** Gets expression of image held by given buffer, optionally verifying all its references first. */
+    private static SExpr load(final ByteBuffer b, final boolean isVerifying) throws IOException {
+        if (b.limit() < HEADER || b.getInt(0) != MAGIC) {
+            throw new IOException("Not a plisp image.");
+        }
+        final int version = b.getShort(4) & 0xffff;
+        if (version != VERSION) {
+            throw new IOException("Unsupported plisp image version " + version + ".");
+        }
+        final int atoms = b.getInt(8), occurrences = b.getInt(12), nodes = b.getInt(16), strings = b.getInt(20);
+        if (atoms < 0 || occurrences < 0 || nodes < 0 || strings < 0
+                || (long) HEADER + 4L * atoms + strings + 8L * nodes + 12L * occurrences != b.limit()) {
+            throw new IOException("Corrupt plisp image.");
+        }
+        final Loaded loaded = new Loaded(b, atoms, occurrences, nodes, strings);
+        if (isVerifying && !loaded.isValid()) {
+            throw new IOException("Corrupt plisp image.");
+        }
+        return loaded.expressionOf(b.getInt(24));
+    }
+
+    /**
+     * Atoms, conses and atom occurrences of some expression being written.
+     * <p>
+     * Every reference to an atom with a source code position becomes a separate occurrence, numbered in the order the
+     * references are encoded. Occurrences are counted when the expression is added, which visits the same references.
+     */
+    private static final class Encoder {
+        private final Map<Symbol, Integer> atoms = new HashMap<>();
+        private final Map<SExpr, Integer> nodes = new IdentityHashMap<>();
+        private final List<SExpr> conses = new ArrayList<>();
+        private final BitSet shared = new BitSet();
+        private int[] occurrenceAtoms;
+        private long[] positions;
+        private int occurrences = 0;
+
+        /** Numbers the atom names and conses of given expression e, and counts its atom occurrences. */
+        private void add(final SExpr e) throws IOException {
+            int count = 0;
+            final Deque<SExpr> stack = new ArrayDeque<>();
+            stack.push(e);
+            while (!stack.isEmpty()) {
+                final SExpr s = stack.pop();
+                if (s instanceof SExpr.Cons) {
+                    final Integer index = nodes.putIfAbsent(s, conses.size());
+                    if (index != null) {
+                        shared.set(index);
+                        continue;
+                    }
+                    if (conses.size() == MAX_NODES) {
+                        throw new IOException("Expression too large for plisp image.");
+                    }
+                    conses.add(s);
+                    stack.push(s.cdr());
+                    stack.push(s.car());
+
+                } else if (s instanceof SExpr.Atom) {
+                    atoms.putIfAbsent(((SExpr.Atom) s).symbol(), atoms.size());
+                    if (Positions.get(s) != Positions.NONE) {
+                        count += 1;
+                    }
+                }
+            }
+            occurrenceAtoms = new int[count];
+            positions = new long[count];
+        }
+
+        /** Encodes reference to given expression e. Atom occurrences are indexed as if following the atom names. */
+        private int referenceTo(final SExpr e) {
+            if (e instanceof SExpr.Cons) {
+                final int index = nodes.get(e);
+                return index << 2 | (shared.get(index) ? SHARED : CONS);
+            }
+            if (e instanceof SExpr.Atom) {
+                final int atom = atoms.get(((SExpr.Atom) e).symbol());
+                final long position = Positions.get(e);
+                if (position == Positions.NONE) {
+                    return atom << 2 | ATOM;
+                }
+                occurrenceAtoms[occurrences] = atom;
+                positions[occurrences] = position;
+                return (atoms.size() + occurrences++) << 2 | ATOM;
+            }
+            return NIL;
+        }
+    }
+
+    /**
+     * Image held by some buffer, possibly mapped from a file, and the atoms and shared conses decoded from it so far.
+     */
+    private static final class Loaded {
+        private final ByteBuffer buffer;
+        private final SExpr.Atom[] atoms;
+        private final int occurrences, nodes, strings, occurrencesStart, stringsStart, nodesStart;
+        private final Map<Integer, Node> shared = new ConcurrentHashMap<>();
+        private volatile long[] positions;
+
+        private Loaded(final ByteBuffer buffer, final int atoms, final int occurrences, final int nodes,
+                       final int strings) {
+            this.buffer = buffer;
+            this.atoms = new SExpr.Atom[atoms];
+            this.occurrences = occurrences;
+            this.nodes = nodes;
+            this.strings = strings;
+            this.stringsStart = HEADER + 4 * atoms;
+            this.nodesStart = stringsStart + strings;
+            this.occurrencesStart = nodesStart + 8 * nodes;
+        }
+
+        /** Gets expression referred to by given reference, creating it if necessary. */
+        private SExpr expressionOf(final int reference) {
+            final int index = reference >>> 2;
+            switch (reference & 3) {
+                case NIL:
+                    if (index == 0) {
+                        return SExpr.NIL;
+                    }
+                    break;
+
+                case ATOM:
+                    if (index < atoms.length) {
+                        final SExpr.Atom atom = atoms[index];
+                        return atom != null ? atom : atomOf(index);
+                    }
+                    if (index - atoms.length < occurrences) {
+                        return occurrenceOf(index - atoms.length);
+                    }
+                    break;
+
+                case CONS:
+                    if (index < nodes) {
+                        return new Node(this, index);
+                    }
+                    break;
+
+                case SHARED:
+                    if (index < nodes) {
+                        return shared.computeIfAbsent(index, i -> new Node(this, i));
+                    }
+                    break;
+            }
+            throw new IllegalStateException("Corrupt plisp image.");
+        }
+
+        /**
+         * Determines whether all atom names, node and occurrence references, and the root reference are valid, and
+         * whether the nodes are free of cycles. Nodes are numbered in preorder, which means that unshared nodes are
+         * always numbered after the nodes referring to them. Shared nodes may also be referred to by nodes numbered
+         * after them, in which case the nodes are searched for cycles.
+         */
+        private boolean isValid() {
+            for (int i = 0; i < atoms.length; ++i) {
+                final int start = buffer.getInt(HEADER + 4 * i);
+                final int end = i + 1 < atoms.length ? buffer.getInt(HEADER + 4 * (i + 1)) : strings;
+                if (start < 0 || end < start || end > strings) {
+                    return false;
+                }
+            }
+            boolean isReferringBack = false;
+            for (int i = 0; i < nodes; ++i) {
+                final int car = carOf(i), cdr = cdrOf(i);
+                if (!isValid(car) || !isValid(cdr) || isBackReference(i, car) || isBackReference(i, cdr)) {
+                    return false;
+                }
+                isReferringBack |= (car & 3) == SHARED && car >>> 2 <= i || (cdr & 3) == SHARED && cdr >>> 2 <= i;
+            }
+            if (isReferringBack && isCyclic()) {
+                return false;
+            }
+            for (int i = 0; i < occurrences; ++i) {
+                final int atom = buffer.getInt(occurrencesStart + 12 * i);
+                if (atom < 0 || atom >= atoms.length) {
+                    return false;
+                }
+            }
+            return isValid(buffer.getInt(24));
+        }
+
+        /** Determines whether given reference could be decoded by {@link #expressionOf(int)}. */
+        private boolean isValid(final int reference) {
+            final int index = reference >>> 2;
+            switch (reference & 3) {
+                case NIL:
+                    return index == 0;
+
+                case ATOM:
+                    return index < (long) atoms.length + occurrences;
+
+                default:
+                    return index < nodes;
+            }
+        }
+
+        /** Determines whether given reference of given node refers to an unshared node not numbered after it. */
+        private static boolean isBackReference(final int node, final int reference) {
+            return (reference & 3) == CONS && reference >>> 2 <= node;
+        }
+
+        /** Determines whether any node refers to itself, directly or through other nodes. */
+        private boolean isCyclic() {
+            final byte[] states = new byte[nodes]; // 0 = unvisited, 1 = on current path, 2 = done.
+            int[] stack = new int[64];
+            for (int i = 0; i < nodes; ++i) {
+                if (states[i] != 0) {
+                    continue;
+                }
+                int depth = 0;
+                stack[depth++] = i;
+                while (depth != 0) {
+                    final int node = stack[--depth];
+                    if (node < 0) {
+                        states[~node] = 2;
+                        continue;
+                    }
+                    if (states[node] != 0) {
+                        continue;
+                    }
+                    states[node] = 1;
+                    if (depth + 3 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[depth++] = ~node;
+                    for (int k = 0; k < 2; ++k) {
+                        final int reference = k == 0 ? carOf(node) : cdrOf(node);
+                        if ((reference & 3) < CONS) {
+                            continue;
+                        }
+                        final int child = reference >>> 2;
+                        if (states[child] == 1) {
+                            return true;
+                        }
+                        if (states[child] == 0) {
+                            stack[depth++] = child;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** Decodes and interns name of atom with given index. Atoms are canonical, making races harmless. */
+        private SExpr.Atom atomOf(final int index) {
+            final int start = buffer.getInt(HEADER + 4 * index);
+            final int end = index + 1 < atoms.length ? buffer.getInt(HEADER + 4 * (index + 1)) : strings;
+            if (start < 0 || end < start || end > strings) {
+                throw new IllegalStateException("Corrupt plisp image.");
+            }
+            final byte[] name = new byte[end - start];
+            final ByteBuffer b = buffer.duplicate();
+            b.position(stringsStart + start);
+            b.get(name);
+            return atoms[index] = SExpr.Atom.of(new String(name, StandardCharsets.UTF_8));
+        }
+
+        /** Creates new atom of atom occurrence with given index, referring to its position. */
+        private SExpr.Atom occurrenceOf(final int index) {
+            final int atom = buffer.getInt(occurrencesStart + 12 * index);
+            if (atom < 0 || atom >= atoms.length) {
+                throw new IllegalStateException("Corrupt plisp image.");
+            }
+            final SExpr.Atom canonical = atoms[atom];
+            return new SExpr.Atom((canonical != null ? canonical : atomOf(atom)).name(), positions(), index);
+        }
+
+        /** Table of the positions of all atom occurrences, copied from the image when first requested. */
+        private long[] positions() {
+            long[] p = positions;
+            if (p == null) {
+                synchronized (this) {
+                    p = positions;
+                    if (p == null) {
+                        p = new long[occurrences];
+                        for (int i = 0; i < occurrences; ++i) {
+                            p[i] = buffer.getLong(occurrencesStart + 12 * i + 4);
+                        }
+                        positions = p;
+                    }
+                }
+            }
+            return p;
+        }
+
+        private int carOf(final int node) {
+            return buffer.getInt(nodesStart + 8 * node);
+        }
+
+        private int cdrOf(final int node) {
+            return buffer.getInt(nodesStart + 8 * node + 4);
+        }
+    }
+
+    /**
+     * Cons decoded from some image node, which decodes its car and cdr when first requested.
+     * <p>
+     * Concurrent requests may decode the same car or cdr more than once, producing equal expressions.
+     */
+    private static final class Node extends SExpr.Cons {
+        private final Loaded image;
+        private final int index;
+        private SExpr car, cdr;
+
+        private Node(final Loaded image, final int index) {
+            super(null);
+            this.image = image;
+            this.index = index;
+        }
+
+        @Override
+        public SExpr car() {
+            SExpr c = car;
+            if (c == null) {
+                c = image.expressionOf(image.carOf(index));
+                car = c;
+            }
+            return c;
+        }
+
+        @Override
+        public SExpr cdr() {
+            SExpr c = cdr;
+            if (c == null) {
+                c = image.expressionOf(image.cdrOf(index));
+                cdr = c;
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Evaluates s-expressions by building and executing self-specializing node trees.
+ * <p>
+ * The interpreter evaluates the same language as {@link Evaluator}, and produces the same results. Rather than
+ * interpreting the s-expression structure over and over again, each expression is turned into a node when first
+ * evaluated. Nodes representing elementary s-functions specialize themselves on the kinds of values they are given,
+ * while call nodes cache the lambda they last called, together with its node tree. As lambdas are called, no new
+ * expressions are allocated and no operator names are dispatched on.
+ * <p>
+ * Interpreters keep their node trees between evaluations, which means that evaluating the same program several times
+ * using the same interpreter will reuse already specialized nodes. Interpreters are not thread-safe.
+ *
+ * @see Evaluator#eval(SExpr)
+ */
+public class Interpreter {
+    private final Node.Root root;
+    private final Map<SExpr, Function> functions = new IdentityHashMap<>();
+
+    /** Creates new interpreter, ready to evaluate given expression e. */
+    public Interpreter(final SExpr e) {
+        root = new Node.Root(new Node.Uninitialized(e, this));
+    }
+
+    /** Evaluates the expression of this interpreter. */
+    public SExpr eval() {
+        return root.execute(Environment.EMPTY);
+    }
+
+    /** Evaluates given expression e using a new interpreter. */
+    public static SExpr eval(final SExpr e) {
+        return new Interpreter(e).eval();
+    }
+
+    /**
+     * Convenience function for evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Gets function of given lambda expression, creating it if not already available. */
+    Function functionOf(final SExpr lambda) {
+        Function f = functions.get(lambda);
+        if (f == null) {
+            f = new Function(
+                    Resolver.namesOf(lambda.cdr().car()),
+                    new Node.Root(new Node.Uninitialized(lambda.cdr().cdr().car(), this))
+            );
+            functions.put(lambda, f);
+        }
+        return f;
+    }
+
+    /** Determines whether given expression is a lambda expression. */
+    static boolean isLambda(final SExpr e) {
+        return e.car() instanceof SExpr.Atom && ((SExpr.Atom) e.car()).symbol() == Symbols.LAMBDA;
+    }
+
+    /**
+     * Lambda parameters and body node tree.
+     */
+    static final class Function {
+        final Symbol[] names;
+        final Node.Root body;
+
+        private Function(final Symbol[] names, final Node.Root body) {
+            this.names = names;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+/**
+ * Evaluates s-expressions using an explicit continuation stack.
+ * <p>
+ * The machine evaluates the same language as {@link Evaluator}, and produces the same results, but keeps track of what
+ * to do with evaluated values by pushing continuations onto a stack kept on the heap, rather than by recursing. Only
+ * arguments of s-functions and lambda calls push continuations. The bodies of lambda and label expressions, as well
+ * as the selected branches of cond expressions, are evaluated in place of the expressions containing them. Tail calls
+ * therefore do not grow the continuation stack, and evaluation depth is only limited by available heap memory.
+ * <p>
+ * Self-recursive tail calls also do not grow the environment, as frames completely shadowed by newer frames are
+ * discarded.
+ *
+ * @see Evaluator#eval(SExpr)
+ */
+public class Machine {
+    private static final int ATOM = 0;
+    private static final int EQ0 = 1;
+    private static final int EQ1 = 2;
+    private static final int CAR = 3;
+    private static final int CDR = 4;
+    private static final int CONS0 = 5;
+    private static final int CONS1 = 6;
+    private static final int COND = 7;
+    private static final int EVLIS = 8;
+
+    /** Evaluates given expression e. */
+    public static SExpr eval(final SExpr e) {
+        return run(e, Environment.EMPTY);
+    }
+
+    /**
+     * Convenience function for evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Runs machine until expression e has been evaluated using environment a. */
+    private static SExpr run(final SExpr e, final Environment a) {
+        SExpr c = e;
+        Environment env = a;
+        Continuation k = null;
+
+        while (true) {
+            SExpr v;
+
+            // Evaluate control expression c, either producing a value or pushing a continuation.
+            if (c instanceof SExpr.Atom) {
+                v = env.lookup((SExpr.Atom) c);
+
+            } else if (c.car() instanceof SExpr.Atom) {
+                switch (((SExpr.Atom) c.car()).symbol().id()) {
+                    case Symbols.QUOTE_ID:
+                        v = c.cdr().car();
+                        break;
+
+                    case Symbols.ATOM_ID:
+                        k = new Continuation(ATOM, c, env, k);
+                        c = c.cdr().car();
+                        continue;
+
+                    case Symbols.EQ_ID:
+                        k = new Continuation(EQ0, c, env, k);
+                        c = c.cdr().car();
+                        continue;
+
+                    case Symbols.CAR_ID:
+                        k = new Continuation(CAR, c, env, k);
+                        c = c.cdr().car();
+                        continue;
+
+                    case Symbols.CDR_ID:
+                        k = new Continuation(CDR, c, env, k);
+                        c = c.cdr().car();
+                        continue;
+
+                    case Symbols.CONS_ID:
+                        k = new Continuation(CONS0, c, env, k);
+                        c = c.cdr().car();
+                        continue;
+
+                    case Symbols.COND_ID:
+                        if (c.cdr() instanceof SExpr.Nil) {
+                            throw new SExprException.CondExhausted(c);
+                        }
+                        k = new Continuation(COND, c, env, k);
+                        c = c.cdr().car().car();
+                        continue;
+
+                    default:
+                        c = new SExpr.Cons(env.lookup((SExpr.Atom) c.car()), c.cdr());
+                        continue;
+                }
+            } else if (c.car().car() instanceof SExpr.Atom) {
+                switch (((SExpr.Atom) c.car().car()).symbol().id()) {
+                    case Symbols.LAMBDA_ID:
+                        final int size = c.cdr().size();
+                        if (size == 0) {
+                            env = env.rebind(c.car().cdr().car(), new SExpr[0]);
+                            c = c.car().cdr().cdr().car();
+                            continue;
+                        }
+                        k = new Continuation(EVLIS, c, env, k);
+                        k.values = new SExpr[size];
+                        k.rest = c.cdr();
+                        c = c.cdr().car();
+                        continue;
+
+                    case Symbols.LABEL_ID:
+                        env = env.label(c.car().cdr().car(), c.car().cdr().cdr().car());
+                        c = c.cdr().car();
+                        continue;
+                }
+                throw new SExprException("Illegal expression '" + Printer.BRIEF.print(c) + "'.", c);
+
+            } else {
+                throw new SExprException("Illegal expression '" + Printer.BRIEF.print(c) + "'.", c);
+            }
+
+            // Apply continuations to value v until one of them provides a new control expression.
+            while (true) {
+                if (k == null) {
+                    return v;
+                }
+                final Continuation top = k;
+                k = k.next;
+                env = top.env;
+
+                switch (top.kind) {
+                    case ATOM:
+                        v = v instanceof SExpr.Cons ? Evaluator.F : Evaluator.T;
+                        continue;
+
+                    case EQ0:
+                        k = top.push(EQ1, v);
+                        c = top.expr.cdr().cdr().car();
+                        break;
+
+                    case EQ1:
+                        v = top.value == v || top.value.equals(v) ? Evaluator.T : Evaluator.F;
+                        continue;
+
+                    case CAR:
+                        v = v.car();
+                        continue;
+
+                    case CDR:
+                        v = v.cdr();
+                        continue;
+
+                    case CONS0:
+                        k = top.push(CONS1, v);
+                        c = top.expr.cdr().cdr().car();
+                        break;
+
+                    case CONS1:
+                        v = new SExpr.Cons(top.value, v);
+                        continue;
+
+                    case COND:
+                        if (v.equals(Evaluator.T)) {
+                            c = top.expr.cdr().car().cdr().car();
+                            break;
+                        }
+                        final SExpr next = top.expr.cdr();
+                        if (next.cdr() instanceof SExpr.Nil) {
+                            throw new SExprException.CondExhausted(next);
+                        }
+                        k = new Continuation(COND, next, env, k);
+                        c = next.cdr().car().car();
+                        break;
+
+                    case EVLIS:
+                        top.values[top.index++] = v;
+                        top.rest = top.rest.cdr();
+                        if (top.index < top.values.length) {
+                            top.next = k;
+                            k = top;
+                            c = top.rest.car();
+                            break;
+                        }
+                        env = env.rebind(top.expr.car().cdr().car(), top.values);
+                        c = top.expr.car().cdr().cdr().car();
+                        break;
+
+                    default:
+                        throw new IllegalStateException();
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Pending operation, waiting for some value to be evaluated.
+     */
+    private static class Continuation {
+        private final int kind;
+        private final SExpr expr;
+        private final Environment env;
+        private Continuation next;
+
+        private SExpr value;
+        private SExpr[] values;
+        private SExpr rest;
+        private int index;
+
+        private Continuation(final int kind, final SExpr expr, final Environment env, final Continuation next) {
+            this.kind = kind;
+            this.expr = expr;
+            this.env = env;
+            this.next = next;
+        }
+
+        /** Creates continuation of given kind, remembering value v, to replace this continuation. */
+        private Continuation push(final int kind, final SExpr v) {
+            final Continuation k = new Continuation(kind, expr, env, next);
+            k.value = v;
+            return k;
+        }
+    }
+}
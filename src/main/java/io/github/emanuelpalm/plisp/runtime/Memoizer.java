@@ -0,0 +1,203 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates resolved programs, remembering the results of label calls.
+ * <p>
+ * As evaluation has no side effects, calling a label with the same arguments twice produces the same result, as long
+ * as the label body does not depend on its dynamic environment. The memoizer therefore only remembers calls to labels
+ * whose bodies use nothing but their own parameters, quoted expressions, elementary s-functions and calls to other such
+ * labels. Other labels are always evaluated.
+ * <p>
+ * Results are kept in a bounded cache, split into stripes that are locked independently. Each stripe evicts its least
+ * recently used entries when full. Memoizers may be used by any number of threads simultaneously, and keep their cached
+ * results between evaluations.
+ */
+public class Memoizer {
+    /** Default maximum amount of cached results. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int STRIPES = 16;
+
+    private final Program program;
+    private final Set<Resolved.Definition> memoized;
+    private final Stripe[] stripes;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+    private final Evaluator.Calls calls = this::call;
+
+    /**
+     * Creates memoizer for given program p.
+     *
+     * @param p        Program to evaluate.
+     * @param labels   Predicate determining what labels to memoize, if possible.
+     * @param capacity Maximum amount of cached results.
+     */
+    public Memoizer(final Program p, final Predicate<Resolved.Definition> labels, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Memoization capacity must be positive.");
+        }
+        this.program = p;
+        this.memoized = Resolver.closedLabelsOf(p, d -> true);
+        this.memoized.removeIf(labels.negate());
+        this.stripes = new Stripe[Math.min(STRIPES, Integer.highestOneBit(capacity))];
+        for (int i = 0; i < stripes.length; ++i) {
+            stripes[i] = new Stripe(capacity / stripes.length + (i < capacity % stripes.length ? 1 : 0));
+        }
+    }
+
+    /** Evaluates program. */
+    public SExpr eval() {
+        return Evaluator.eval(program, calls);
+    }
+
+    /**
+     * Convenience function for evaluating an expression, memoizing all labels using default capacity.
+     *
+     * @see #eval()
+     */
+    public static SExpr eval(final SExpr e) {
+        return new Memoizer(Resolver.resolve(e), d -> true, DEFAULT_CAPACITY).eval();
+    }
+
+    /**
+     * Convenience function for evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Determines whether calls to label with given definition d are memoized. */
+    public boolean isMemoized(final Resolved.Definition d) {
+        return memoized.contains(d);
+    }
+
+    /** Maximum amount of cached results. */
+    public int capacity() {
+        int capacity = 0;
+        for (final Stripe stripe : stripes) {
+            capacity += stripe.capacity;
+        }
+        return capacity;
+    }
+
+    /** Amount of memoized calls whose results were found in cache. */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /** Amount of memoized calls whose results were not found in cache. */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /** Amount of results evicted from cache. */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Memoized " + memoized + ": " + hits() + " hits, " + misses() + " misses, " + evictions()
+                + " evictions.";
+    }
+
+    private SExpr call(final Resolved.Definition d, final SExpr[] arguments, final Environment b) {
+        if (!memoized.contains(d)) {
+            return Evaluator.evalBody(d, b, calls);
+        }
+        final Key key = new Key(d, arguments);
+        final Stripe stripe = stripes[(key.hash ^ (key.hash >>> 16)) & (stripes.length - 1)];
+        SExpr result;
+        synchronized (stripe) {
+            result = stripe.get(key);
+        }
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        result = Evaluator.evalBody(d, b, calls);
+        synchronized (stripe) {
+            stripe.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Label call cache key.
+     */
+    private static final class Key {
+        private final Resolved.Definition definition;
+        private final SExpr[] arguments;
+        private final int hash;
+
+        private Key(final Resolved.Definition definition, final SExpr[] arguments) {
+            this.definition = definition;
+            this.arguments = arguments;
+
+            int hash = definition.index;
+            for (final SExpr argument : arguments) {
+                hash = 31 * hash + argument.hashCode();
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            if (key.hash != hash || key.definition != definition) {
+                return false;
+            }
+            for (int i = 0; i < arguments.length; ++i) {
+                if (key.arguments[i] != arguments[i] && !key.arguments[i].equals(arguments[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return definition + Arrays.toString(arguments);
+        }
+    }
+
+    /**
+     * Bounded cache stripe, evicting its least recently used entry when full.
+     */
+    private final class Stripe extends LinkedHashMap<Key, SExpr> {
+        private final int capacity;
+
+        private Stripe(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, SExpr> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
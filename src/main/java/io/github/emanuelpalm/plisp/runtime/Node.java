@@ -0,0 +1,491 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+/**
+ * Executable node in a tree built by an {@link Interpreter}.
+ * <p>
+ * Nodes are created uninitialized from some s-expression, and replace themselves with nodes specialized for that
+ * expression when first executed. Some specialized nodes further replace themselves with more general nodes if the
+ * assumptions they were specialized for turn out not to hold.
+ */
+abstract class Node {
+    private Node parent;
+    final Node[] children;
+
+    Node(final Node... children) {
+        this.children = children;
+        for (final Node child : children) {
+            child.parent = this;
+        }
+    }
+
+    /** Executes node using environment a. */
+    abstract SExpr execute(final Environment a);
+
+    /** Replaces this node with given node in the tree, returning the given node. */
+    final Node replace(final Node node) {
+        node.parent = parent;
+        final Node[] siblings = parent.children;
+        for (int i = 0; i < siblings.length; ++i) {
+            if (siblings[i] == this) {
+                siblings[i] = node;
+                break;
+            }
+        }
+        return node;
+    }
+
+    /** Executes all children from given offset, returning an array of given size. Missing values are nil. */
+    final SExpr[] executeChildren(final int offset, final int size, final Environment a) {
+        final SExpr[] values = new SExpr[size];
+        for (int i = offset; i < children.length; ++i) {
+            final SExpr value = children[i].execute(a);
+            if (i - offset < size) {
+                values[i - offset] = value;
+            }
+        }
+        for (int i = Math.max(children.length - offset, 0); i < size; ++i) {
+            values[i] = SExpr.NIL;
+        }
+        return values;
+    }
+
+    /**
+     * Node without any parent, holding the root of some node tree.
+     */
+    static final class Root extends Node {
+        Root(final Node child) {
+            super(child);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return children[0].execute(a);
+        }
+    }
+
+    /**
+     * Node not yet specialized for the expression it represents.
+     */
+    static final class Uninitialized extends Node {
+        private final SExpr e;
+        private final Interpreter interpreter;
+
+        Uninitialized(final SExpr e, final Interpreter interpreter) {
+            this.e = e;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return replace(specialize()).execute(a);
+        }
+
+        private Node specialize() {
+            if (e instanceof SExpr.Atom) {
+                return new Variable((SExpr.Atom) e);
+            }
+            if (e.car() instanceof SExpr.Atom) {
+                switch (((SExpr.Atom) e.car()).symbol().id()) {
+                    case Symbols.QUOTE_ID:
+                        return new Quote(e.cdr().car());
+
+                    case Symbols.ATOM_ID:
+                        return new Atom(child(e.cdr().car()));
+
+                    case Symbols.EQ_ID:
+                        return new Eq(child(e.cdr().car()), child(e.cdr().cdr().car()));
+
+                    case Symbols.CAR_ID:
+                        return new Car(child(e.cdr().car()));
+
+                    case Symbols.CDR_ID:
+                        return new Cdr(child(e.cdr().car()));
+
+                    case Symbols.CONS_ID:
+                        return new Cons(child(e.cdr().car()), child(e.cdr().cdr().car()));
+
+                    case Symbols.COND_ID:
+                        return new Cond(e, interpreter);
+
+                    default:
+                        return new Call(e, interpreter);
+                }
+            }
+            if (e.car().car() instanceof SExpr.Atom) {
+                switch (((SExpr.Atom) e.car().car()).symbol().id()) {
+                    case Symbols.LAMBDA_ID:
+                        return new Apply(e, interpreter);
+
+                    case Symbols.LABEL_ID:
+                        return new Label(e, interpreter);
+                }
+            }
+            return new Illegal(e);
+        }
+
+        private Node child(final SExpr e) {
+            return new Uninitialized(e, interpreter);
+        }
+    }
+
+    /**
+     * Quoted expression.
+     */
+    static final class Quote extends Node {
+        private final SExpr value;
+
+        Quote(final SExpr value) {
+            this.value = value;
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return value;
+        }
+    }
+
+    /**
+     * Atom looked up in environment.
+     */
+    static final class Variable extends Node {
+        private final SExpr.Atom name;
+
+        Variable(final SExpr.Atom name) {
+            this.name = name;
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return a.lookup(name);
+        }
+    }
+
+    /**
+     * Elementary s-function ATOM.
+     */
+    static final class Atom extends Node {
+        Atom(final Node e) {
+            super(e);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return children[0].execute(a) instanceof SExpr.Cons ? Evaluator.F : Evaluator.T;
+        }
+    }
+
+    /**
+     * Elementary s-function EQ, specializing on whether its operands are atoms.
+     */
+    static final class Eq extends Node {
+        Eq(final Node e0, final Node e1) {
+            super(e0, e1);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e0 = children[0].execute(a);
+            final SExpr e1 = children[1].execute(a);
+            final Node node = e0 instanceof SExpr.Atom && e1 instanceof SExpr.Atom
+                    ? new EqAtoms(children[0], children[1])
+                    : new EqGeneric(children[0], children[1]);
+            replace(node);
+            return SExpr.Future.equal(e0, e1) ? Evaluator.T : Evaluator.F;
+        }
+    }
+
+    /**
+     * Elementary s-function EQ, specialized for atoms.
+     */
+    static final class EqAtoms extends Node {
+        EqAtoms(final Node e0, final Node e1) {
+            super(e0, e1);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e0 = children[0].execute(a);
+            final SExpr e1 = children[1].execute(a);
+            if (e0 instanceof SExpr.Atom && e1 instanceof SExpr.Atom) {
+                return ((SExpr.Atom) e0).symbol() == ((SExpr.Atom) e1).symbol() ? Evaluator.T : Evaluator.F;
+            }
+            replace(new EqGeneric(children[0], children[1]));
+            return SExpr.Future.equal(e0, e1) ? Evaluator.T : Evaluator.F;
+        }
+    }
+
+    /**
+     * Elementary s-function EQ, able to compare any expressions.
+     */
+    static final class EqGeneric extends Node {
+        EqGeneric(final Node e0, final Node e1) {
+            super(e0, e1);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e0 = children[0].execute(a);
+            final SExpr e1 = children[1].execute(a);
+            return SExpr.Future.equal(e0, e1) ? Evaluator.T : Evaluator.F;
+        }
+    }
+
+    /**
+     * Elementary s-function CAR, specializing on whether its operand is a cons.
+     */
+    static final class Car extends Node {
+        Car(final Node e) {
+            super(e);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e = children[0].execute(a);
+            replace(e instanceof SExpr.Cons ? new CarCons(children[0]) : new CarGeneric(children[0]));
+            return e.car();
+        }
+    }
+
+    /**
+     * Elementary s-function CAR, specialized for conses.
+     */
+    static final class CarCons extends Node {
+        CarCons(final Node e) {
+            super(e);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e = children[0].execute(a);
+            if (e instanceof SExpr.Cons) {
+                return ((SExpr.Cons) e).car();
+            }
+            replace(new CarGeneric(children[0]));
+            return e.car();
+        }
+    }
+
+    /**
+     * Elementary s-function CAR, able to take any expression.
+     */
+    static final class CarGeneric extends Node {
+        CarGeneric(final Node e) {
+            super(e);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return children[0].execute(a).car();
+        }
+    }
+
+    /**
+     * Elementary s-function CDR, specializing on whether its operand is a cons.
+     */
+    static final class Cdr extends Node {
+        Cdr(final Node e) {
+            super(e);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e = children[0].execute(a);
+            replace(e instanceof SExpr.Cons ? new CdrCons(children[0]) : new CdrGeneric(children[0]));
+            return e.cdr();
+        }
+    }
+
+    /**
+     * Elementary s-function CDR, specialized for conses.
+     */
+    static final class CdrCons extends Node {
+        CdrCons(final Node e) {
+            super(e);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e = children[0].execute(a);
+            if (e instanceof SExpr.Cons) {
+                return ((SExpr.Cons) e).cdr();
+            }
+            replace(new CdrGeneric(children[0]));
+            return e.cdr();
+        }
+    }
+
+    /**
+     * Elementary s-function CDR, able to take any expression.
+     */
+    static final class CdrGeneric extends Node {
+        CdrGeneric(final Node e) {
+            super(e);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return children[0].execute(a).cdr();
+        }
+    }
+
+    /**
+     * Elementary s-function CONS.
+     */
+    static final class Cons extends Node {
+        Cons(final Node e0, final Node e1) {
+            super(e0, e1);
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr e0 = children[0].execute(a);
+            final SExpr e1 = children[1].execute(a);
+            return new SExpr.Cons(e0, e1);
+        }
+    }
+
+    /**
+     * Elementary s-function COND.
+     */
+    static final class Cond extends Node {
+        private final SExpr e;
+
+        Cond(final SExpr e, final Interpreter interpreter) {
+            super(clausesOf(e, interpreter));
+            this.e = e;
+        }
+
+        private static Node[] clausesOf(final SExpr e, final Interpreter interpreter) {
+            final Node[] nodes = new Node[2 * (e.size() - 1)];
+            SExpr s = e;
+            for (int i = 0; i < nodes.length; i += 2, s = s.cdr()) {
+                nodes[i] = new Uninitialized(s.cdr().car().car(), interpreter);
+                nodes[i + 1] = new Uninitialized(s.cdr().car().cdr().car(), interpreter);
+            }
+            return nodes;
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            for (int i = 0; i < children.length; i += 2) {
+                if (children[i].execute(a).equals(Evaluator.T)) {
+                    return children[i + 1].execute(a);
+                }
+            }
+            SExpr s = e;
+            while (!(s.cdr() instanceof SExpr.Nil)) {
+                s = s.cdr();
+            }
+            throw new SExprException.CondExhausted(s);
+        }
+    }
+
+    /**
+     * Call to operator looked up in environment, caching the lambda last called.
+     * <p>
+     * If the operator ever refers to another expression than the cached one, the call node replaces itself with a
+     * node evaluating the call without any caching.
+     */
+    static final class Call extends Node {
+        private final SExpr e;
+        private final Interpreter interpreter;
+        private SExpr cachedLambda;
+        private Interpreter.Function cachedFunction;
+
+        Call(final SExpr e, final Interpreter interpreter) {
+            super(argumentsOf(e.cdr(), interpreter));
+            this.e = e;
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            final SExpr lambda = a.lookup((SExpr.Atom) e.car());
+            if (lambda != cachedLambda) {
+                if (cachedLambda != null || !Interpreter.isLambda(lambda)) {
+                    return replace(new GenericCall(e)).execute(a);
+                }
+                cachedLambda = lambda;
+                cachedFunction = interpreter.functionOf(lambda);
+            }
+            final Interpreter.Function f = cachedFunction;
+            return f.body.execute(a.bind(f.names, executeChildren(0, f.names.length, a)));
+        }
+    }
+
+    /**
+     * Call to operator looked up in environment, evaluated without any caching.
+     */
+    static final class GenericCall extends Node {
+        private final SExpr e;
+
+        GenericCall(final SExpr e) {
+            this.e = e;
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return Evaluator.eval(e, a);
+        }
+    }
+
+    /**
+     * Lambda expression applied to arguments.
+     */
+    static final class Apply extends Node {
+        private final Interpreter.Function function;
+
+        Apply(final SExpr e, final Interpreter interpreter) {
+            super(argumentsOf(e.cdr(), interpreter));
+            function = interpreter.functionOf(e.car());
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return function.body.execute(a.bind(function.names, executeChildren(0, function.names.length, a)));
+        }
+    }
+
+    /**
+     * Label expression scoping some body.
+     */
+    static final class Label extends Node {
+        private final SExpr name, value;
+
+        Label(final SExpr e, final Interpreter interpreter) {
+            super(new Uninitialized(e.cdr().car(), interpreter));
+            name = e.car().cdr().car();
+            value = e.car().cdr().cdr().car();
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            return children[0].execute(a.label(name, value));
+        }
+    }
+
+    /**
+     * Expression that cannot be evaluated.
+     */
+    static final class Illegal extends Node {
+        private final SExpr e;
+
+        Illegal(final SExpr e) {
+            this.e = e;
+        }
+
+        @Override
+        SExpr execute(final Environment a) {
+            throw new SExprException("Illegal expression '" + Printer.BRIEF.print(e) + "'.", e);
+        }
+    }
+
+    private static Node[] argumentsOf(final SExpr es, final Interpreter interpreter) {
+        final Node[] nodes = new Node[es.size()];
+        SExpr s = es;
+        for (int i = 0; i < nodes.length; ++i, s = s.cdr()) {
+            nodes[i] = new Uninitialized(s.car(), interpreter);
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,268 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Evaluates resolved programs in parallel, using a fork/join pool.
+ * <p>
+ * As evaluation has no side effects, the arguments of label and lambda calls, as well as the operands of elementary
+ * s-functions, may be evaluated independently of each other. Operands that may involve calls are forked as separate
+ * tasks, while the last such operand and all operands without calls are evaluated by the current task. Forking stops
+ * when tasks are nested deeper than a given cutoff, or when the current worker already has more queued tasks than other
+ * workers are likely to steal, which keeps small computations sequential.
+ * <p>
+ * Results are identical to those of {@link Evaluator#eval(Program)}. If several operands fail, the exception of the
+ * first of them is thrown, exactly as if evaluation had been sequential.
+ */
+public class ParallelEvaluator {
+    /** Default maximum nesting depth of forked tasks. */
+    public static final int DEFAULT_CUTOFF = 16;
+
+    private static final int SURPLUS = 3;
+
+    private final Program program;
+    private final ForkJoinPool pool;
+    private final int cutoff;
+
+    /**
+     * Creates parallel evaluator for given program p.
+     *
+     * @param p      Program to evaluate.
+     * @param pool   Pool used to evaluate forked operands.
+     * @param cutoff Maximum nesting depth of forked tasks. Ignored if the pool only has a single thread, in which case
+     *               nothing is forked.
+     */
+    public ParallelEvaluator(final Program p, final ForkJoinPool pool, final int cutoff) {
+        if (cutoff < 0) {
+            throw new IllegalArgumentException("Fork cutoff must not be negative.");
+        }
+        this.program = p;
+        this.pool = pool;
+        this.cutoff = pool.getParallelism() > 1 ? cutoff : 0;
+    }
+
+    /** Creates parallel evaluator for given program p, using the common fork/join pool and default cutoff. */
+    public ParallelEvaluator(final Program p) {
+        this(p, ForkJoinPool.commonPool(), DEFAULT_CUTOFF);
+    }
+
+    /** Evaluates program. */
+    public SExpr eval() {
+        return SExpr.Future.touchAll(pool.invoke(new Task(program.root(), Environment.EMPTY, 0)));
+    }
+
+    /**
+     * Convenience function for evaluating an expression using the common fork/join pool.
+     *
+     * @see #eval()
+     */
+    public static SExpr eval(final SExpr e) {
+        return new ParallelEvaluator(Resolver.resolve(e)).eval();
+    }
+
+    /**
+     * Convenience function for evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Evaluates resolved expression r using environment a, within a task nested at given depth. */
+    private SExpr eval(final Resolved r, final Environment a, final int depth) {
+        final Resolved[] os = r.operands;
+        switch (r.tag) {
+            case Resolved.QUOTE:
+                return r.source.cdr().car();
+
+            case Resolved.SLOT:
+                return a.get(r.depth, r.slot);
+
+            case Resolved.LABEL:
+                return r.definition.value;
+
+            case Resolved.DYNAMIC:
+                return a.lookup((SExpr.Atom) r.source);
+
+            case Resolved.ATOM:
+                return SExpr.Future.touch(eval(os[0], a, depth)) instanceof SExpr.Cons ? Evaluator.F : Evaluator.T;
+
+            case Resolved.EQ: {
+                final SExpr e0, e1;
+                if (!isForkable(os, depth)) {
+                    e0 = eval(os[0], a, depth);
+                    e1 = eval(os[1], a, depth);
+
+                } else {
+                    final SExpr[] es = evlis(os, 0, 2, a, depth);
+                    e0 = es[0];
+                    e1 = es[1];
+                }
+                return SExpr.Future.equal(e0, e1) ? Evaluator.T : Evaluator.F;
+            }
+            case Resolved.CAR:
+                return eval(os[0], a, depth).car();
+
+            case Resolved.CDR:
+                return eval(os[0], a, depth).cdr();
+
+            case Resolved.CONS: {
+                if (!isForkable(os, depth)) {
+                    final SExpr e0 = eval(os[0], a, depth);
+                    final SExpr e1 = eval(os[1], a, depth);
+                    return new SExpr.Cons(e0, e1);
+                }
+                final SExpr[] es = evlis(os, 0, 2, a, depth);
+                return new SExpr.Cons(es[0], es[1]);
+            }
+            case Resolved.COND:
+                for (int i = 0; i < os.length; i += 2) {
+                    if (eval(os[i], a, depth).equals(Evaluator.T)) {
+                        return eval(os[i + 1], a, depth);
+                    }
+                }
+                throw new SExprException.CondExhausted(lastOf(r.source));
+
+            case Resolved.CALL: {
+                final Resolved.Definition d = r.definition;
+                return eval(d.body, a.bind(d.parameters, evlis(os, 0, d.parameters.length, a, depth)), depth);
+            }
+            case Resolved.INVOKE:
+                return Evaluator.eval(new SExpr.Cons(SExpr.Future.touch(eval(os[0], a, depth)), r.source.cdr()), a);
+
+            case Resolved.APPLY:
+                return eval(os[0], a.bind(r.names, evlis(os, 1, r.names.length, a, depth)), depth);
+
+            case Resolved.BIND:
+                return eval(os[0], a.label(r.definition.name, r.definition.value), depth);
+
+            case Resolved.FUTURE:
+                return SExpr.Future.of(() -> eval(os[0], a, depth));
+
+            case Resolved.TOUCH:
+                return SExpr.Future.touch(eval(os[0], a, depth));
+
+            default:
+                throw new SExprException("Illegal expression '" + Printer.BRIEF.print(r.source) + "'.", r.source);
+        }
+    }
+
+    /**
+     * Evaluates resolved expressions in os, starting at offset, into array of given size. Missing values are nil.
+     * <p>
+     * Expressions involving calls are forked, except for the last one, which is evaluated together with all other
+     * expressions by the current task. Forked tasks are joined in order, making the first failing expression determine
+     * what exception is thrown.
+     */
+    private SExpr[] evlis(final Resolved[] os, final int offset, final int size, final Environment a,
+                          final int depth) {
+        final int length = os.length - offset;
+        final Task[] tasks = depth < cutoff ? fork(os, offset, a, depth) : null;
+        final SExpr[] values = new SExpr[Math.max(length, size)];
+
+        RuntimeException failure = null;
+        int failed = length;
+        for (int i = 0; i < length; ++i) {
+            if (tasks != null && tasks[i] != null) {
+                continue;
+            }
+            try {
+                values[i] = eval(os[offset + i], a, depth);
+
+            } catch (final RuntimeException e) {
+                failure = e;
+                failed = i;
+                break;
+            }
+        }
+        if (tasks != null) {
+            for (int i = 0; i < length; ++i) {
+                if (tasks[i] == null) {
+                    continue;
+                }
+                if (i > failed) {
+                    tasks[i].cancel(false);
+                    continue;
+                }
+                try {
+                    values[i] = tasks[i].join();
+
+                } catch (final RuntimeException e) {
+                    for (int j = i + 1; j < length; ++j) {
+                        if (tasks[j] != null) {
+                            tasks[j].cancel(false);
+                        }
+                    }
+                    throw e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        for (int i = length; i < size; ++i) {
+            values[i] = SExpr.NIL;
+        }
+        return values.length == size ? values : Arrays.copyOf(values, size);
+    }
+
+    /** Determines whether the first of two operands in os could be forked by a task nested at given depth. */
+    private boolean isForkable(final Resolved[] os, final int depth) {
+        return depth < cutoff && os[0].isCalling && os[1].isCalling;
+    }
+
+    /** Forks all expressions in os, starting at offset, that involve calls, except for the last one. */
+    private Task[] fork(final Resolved[] os, final int offset, final Environment a, final int depth) {
+        int last = os.length - 1;
+        while (last >= offset && !os[last].isCalling) {
+            last -= 1;
+        }
+        Task[] tasks = null;
+        for (int i = offset; i < last; ++i) {
+            if (!os[i].isCalling || ForkJoinTask.getSurplusQueuedTaskCount() > SURPLUS) {
+                continue;
+            }
+            if (tasks == null) {
+                tasks = new Task[os.length - offset];
+            }
+            tasks[i - offset] = new Task(os[i], a, depth + 1);
+            tasks[i - offset].fork();
+        }
+        return tasks;
+    }
+
+    /** Gets last element of list e for which cdr is nil. */
+    private static SExpr lastOf(final SExpr e) {
+        SExpr s = e;
+        while (!(s.cdr() instanceof SExpr.Nil)) {
+            s = s.cdr();
+        }
+        return s;
+    }
+
+    /**
+     * Evaluation of some resolved expression, nested at some depth.
+     */
+    private final class Task extends RecursiveTask<SExpr> {
+        private final Resolved r;
+        private final Environment a;
+        private final int depth;
+
+        private Task(final Resolved r, final Environment a, final int depth) {
+            this.r = r;
+            this.a = a;
+            this.depth = depth;
+        }
+
+        @Override
+        protected SExpr compute() {
+            return eval(r, a, depth);
+        }
+    }
+}
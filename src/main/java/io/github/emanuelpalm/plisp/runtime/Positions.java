@@ -0,0 +1,78 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Looks up s-expression source code positions.
+ * <p>
+ * Positions are packed into longs holding both row and column, and are kept in tables of all positions of some source,
+ * such as the tokens of a parsed program or the atom occurrences of a loaded image. Each atom produced from a source
+ * refers to the table of its source and its index in that table, while atoms and conses created at runtime carry no
+ * positions at all. Tables are therefore never larger than their sources, and are collected together with the atoms
+ * referring to them. The positions of conses are the positions of the first atoms within them having positions, if
+ * any, which are only searched for when actually needed, such as when the message of an exception is rendered.
+ */
+public class Positions {
+    /** Packed position of expressions without source code positions. */
+    public static final long NONE = 0L;
+
+    private Positions() {}
+
+    /** Gets packed position of given expression e, or {@link #NONE} if it has no position of its own. */
+    public static long get(final SExpr e) {
+        return e instanceof SExpr.Atom ? ((SExpr.Atom) e).position() : NONE;
+    }
+
+    /**
+     * Gets packed position of given expression e, or of the first expression within it having a position. Returns
+     * {@link #NONE} if no such position exists.
+     */
+    public static long find(final SExpr e) {
+        final SExpr atom = atomOf(e);
+        return atom != null ? get(atom) : NONE;
+    }
+
+    /** Gets first atom in given expression e, in prefix order, having a position, or null if there is no such atom. */
+    static SExpr atomOf(final SExpr e) {
+        final Deque<SExpr> stack = new ArrayDeque<>();
+        stack.push(e);
+        while (!stack.isEmpty()) {
+            final SExpr s = stack.pop();
+            if (s instanceof SExpr.Cons) {
+                stack.push(s.cdr());
+                stack.push(s.car());
+
+            } else if (get(s) != NONE) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    /** Packs given row and column into a position. */
+    public static long pack(final int row, final int column) {
+        return (long) row << 32 | column & 0xffffffffL;
+    }
+
+    /** Row of given packed position. */
+    public static int rowOf(final long position) {
+        return (int) (position >>> 32);
+    }
+
+    /** Column of given packed position. */
+    public static int columnOf(final long position) {
+        return (int) position;
+    }
+
+    /**
+     * Formats position of given expression e, as found by {@link #find(SExpr)}, followed by a space, as a prefix to
+     * some message. Returns an empty string if there is no position.
+     */
+    public static String prefixOf(final SExpr e) {
+        final long position = find(e);
+        return position != NONE
+                ? rowOf(position) + ":" + columnOf(position) + " "
+                : "";
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Prints s-expressions.
+ * <p>
+ * Expressions are written directly to some {@link Appendable} without building any intermediary strings, in time
+ * linear to the amount of printed cells. Nested lists are tracked using an explicit stack rather than recursion,
+ * allowing arbitrarily deep lists to be printed. Any futures encountered are touched.
+ * <p>
+ * Printed output may optionally be truncated. Lists nested deeper than the maximum depth are printed as "...", and
+ * lists with more elements than the maximum length have their remaining elements replaced by "...".
+ */
+public class Printer {
+    /** Printer never truncating its output. */
+    public static final Printer FULL = new Printer(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    /** Printer used to format expressions in exception messages. */
+    public static final Printer BRIEF = new Printer(8, 32);
+
+    private static final String ELLIPSIS = "...";
+
+    private final int maxDepth, maxLength;
+
+    /**
+     * Creates new printer.
+     *
+     * @param maxDepth  Maximum amount of nested lists to print.
+     * @param maxLength Maximum amount of elements to print per list.
+     */
+    public Printer(final int maxDepth, final int maxLength) {
+        if (maxDepth < 0 || maxLength < 0) {
+            throw new IllegalArgumentException("Printer depth and length must not be negative.");
+        }
+        this.maxDepth = maxDepth;
+        this.maxLength = maxLength;
+    }
+
+    /** Prints given expression e to given output. */
+    public void print(final SExpr e, final Appendable out) throws IOException {
+        final SExpr root = SExpr.Future.touch(e);
+        if (!(root instanceof SExpr.Cons)) {
+            out.append(root.toString());
+            return;
+        }
+
+        SExpr[] rests = new SExpr[16];
+        int[] counts = new int[16];
+        int top = -1;
+
+        if (maxDepth == 0) {
+            out.append(ELLIPSIS);
+            return;
+        }
+        out.append('(');
+        rests[++top] = root;
+
+        while (top >= 0) {
+            final SExpr rest = SExpr.Future.touch(rests[top]);
+            if (rest instanceof SExpr.Nil) {
+                out.append(')');
+                top -= 1;
+                continue;
+            }
+            if (!(rest instanceof SExpr.Cons)) {
+                out.append(" . ").append(rest.toString()).append(')');
+                top -= 1;
+                continue;
+            }
+            if (counts[top] > 0) {
+                out.append(' ');
+            }
+            if (counts[top] == maxLength) {
+                out.append(ELLIPSIS).append(')');
+                top -= 1;
+                continue;
+            }
+            rests[top] = rest.cdr();
+            counts[top] += 1;
+
+            final SExpr element = SExpr.Future.touch(rest.car());
+            if (!(element instanceof SExpr.Cons)) {
+                out.append(element.toString());
+
+            } else if (top + 1 == maxDepth) {
+                out.append(ELLIPSIS);
+
+            } else {
+                if (++top == rests.length) {
+                    rests = Arrays.copyOf(rests, top * 2);
+                    counts = Arrays.copyOf(counts, top * 2);
+                }
+                rests[top] = element;
+                counts[top] = 0;
+                out.append('(');
+            }
+        }
+    }
+
+    /** Prints given expression e to a string. */
+    public String print(final SExpr e) {
+        final StringBuilder builder = new StringBuilder();
+        try {
+            print(e, builder);
+
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,469 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Evaluates resolved programs, measuring where evaluation time is spent.
+ * <p>
+ * Every label call is recorded in a calling context tree, in which each node represents a unique chain of calls from
+ * the program root. Recursive calls are folded into the node of the nearest call to the same label already in the
+ * chain, which means that no label occurs twice in any chain, and that the size of the tree only depends on the labels
+ * of the program rather than on how deeply they recurse. Each node counts its calls and the cons cells allocated by
+ * CONS while it was the innermost call. Time is measured in one of two ways. Deterministic profilers read the clock
+ * before and after every call, which gives exact times at the cost of some overhead per call. Sampling profilers
+ * instead let a background thread periodically note what call is currently innermost, making each call cost no more
+ * than a few field updates, while times are estimated from the amount of samples taken.
+ * <p>
+ * Recorded calls may be summarized per label, where the inclusive time of a label includes the time of its nested
+ * calls, while its exclusive time does not. Recursive calls are only included once. The calling context tree may also
+ * be written as collapsed stacks, which most flame graph tools are able to read.
+ * <p>
+ * Only calls resolved by the {@link Resolver} are recorded, and only those made by the thread evaluating the program.
+ * Calls made while evaluating futures are not recorded. Profilers may only be used by one thread at a time, and keep
+ * their recordings between evaluations.
+ */
+public class Profiler {
+    /** Sample interval causing every call to be timed deterministically. */
+    public static final long DETERMINISTIC = 0;
+
+    /** Default sample interval, in microseconds. */
+    public static final long DEFAULT_INTERVAL = 1000;
+
+    /** Name of the root node of the calling context tree. */
+    public static final String ROOT = "program";
+
+    private static final int IDLE_SAMPLES = 100;
+    private static final AtomicReferenceFieldUpdater<Profiler, Node> CURRENT =
+            AtomicReferenceFieldUpdater.newUpdater(Profiler.class, Node.class, "current");
+
+    private final Program program;
+    private final long interval;
+    private final Node root = new Node(null, null);
+    private final Evaluator.Calls calls = new Evaluator.Calls() {
+        @Override
+        public void allocate(final int amount) {
+            if (Thread.currentThread() == owner) {
+                current.conses += amount;
+            }
+        }
+
+        @Override
+        public SExpr call(final Resolved.Definition d, final SExpr[] arguments, final Environment b) {
+            return Profiler.this.call(d, b);
+        }
+    };
+
+    private volatile Node current;
+    private Thread owner, sampler;
+
+    /**
+     * Creates profiler for given program p.
+     *
+     * @param p        Program to evaluate.
+     * @param interval Microseconds between samples, or {@link #DETERMINISTIC} if to time every call.
+     */
+    public Profiler(final Program p, final long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Sample interval must not be negative.");
+        }
+        this.program = p;
+        this.interval = interval;
+    }
+
+    /** Evaluates program. */
+    public SExpr eval() {
+        owner = Thread.currentThread();
+        current = root;
+        root.calls += 1;
+        if (interval != DETERMINISTIC) {
+            startSampler();
+        }
+        final long start = System.nanoTime();
+        try {
+            return Evaluator.eval(program, calls);
+
+        } finally {
+            root.nanos += System.nanoTime() - start;
+            current = null;
+            owner = null;
+        }
+    }
+
+    /**
+     * Convenience function for evaluating an expression using a deterministic profiler.
+     *
+     * @see #eval()
+     */
+    public static SExpr eval(final SExpr e) {
+        return new Profiler(Resolver.resolve(e), DETERMINISTIC).eval();
+    }
+
+    /**
+     * Convenience function for evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Determines whether times are estimated from samples rather than measured deterministically. */
+    public boolean isSampled() {
+        return interval != DETERMINISTIC;
+    }
+
+    /** Time spent evaluating programs, in nanoseconds. */
+    public long nanos() {
+        return root.nanos;
+    }
+
+    /** Recorded calls summarized per label, ordered by descending exclusive time. Uncalled labels are left out. */
+    public List<Entry> entries() {
+        final int size = program.definitions().size();
+        final long[] calls = new long[size], conses = new long[size], inclusive = new long[size],
+                exclusive = new long[size];
+        final int[] active = new int[size];
+
+        final Node[] nodes = nodesOf(root);
+        final long[] totals = totalsOf(nodes);
+        Node[] stack = new Node[16];
+        int[] next = new int[16];
+        int top = 0;
+        stack[0] = root;
+        next[0] = 0;
+        while (top >= 0) {
+            final Node node = stack[top];
+            if (next[top] == node.size) {
+                if (node.definition != null) {
+                    active[node.definition.index] -= 1;
+                }
+                top -= 1;
+                continue;
+            }
+            final Node child = node.children[next[top]++];
+            final int index = child.definition.index;
+            calls[index] += child.calls;
+            conses[index] += child.conses;
+            exclusive[index] += valueOf(child);
+            if (active[index]++ == 0) {
+                inclusive[index] += totals[child.id];
+            }
+            if (++top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+                next = Arrays.copyOf(next, top * 2);
+            }
+            stack[top] = child;
+            next[top] = 0;
+        }
+
+        final List<Entry> entries = new ArrayList<>();
+        for (final Resolved.Definition d : program.definitions()) {
+            if (calls[d.index] > 0) {
+                entries.add(new Entry(d, calls[d.index], conses[d.index], timeOf(inclusive[d.index]),
+                        timeOf(exclusive[d.index])));
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.exclusive, a.exclusive));
+        return entries;
+    }
+
+    /**
+     * Writes recorded calls to given output as collapsed stacks.
+     * <p>
+     * Each line holds the names of the labels of one chain of calls, separated by semicolons and starting with
+     * {@link #ROOT}, followed by a space and the exclusive time of the last call in the chain. Times are written as
+     * nanoseconds if deterministic, or as amounts of samples otherwise. Chains without time are left out.
+     */
+    public void writeCollapsed(final Appendable out) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        Node[] stack = new Node[16];
+        int[] next = new int[16], lengths = new int[16];
+        int top = 0;
+        stack[0] = root;
+        builder.append(ROOT);
+        lengths[0] = builder.length();
+        while (top >= 0) {
+            final Node node = stack[top];
+            if (next[top] == 0) {
+                final long value = valueOf(node);
+                if (value > 0) {
+                    builder.setLength(lengths[top]);
+                    out.append(builder).append(' ').append(Long.toString(value)).append('\n');
+                }
+            }
+            if (next[top] == node.size) {
+                top -= 1;
+                continue;
+            }
+            final Node child = node.children[next[top]++];
+            builder.setLength(lengths[top]);
+            builder.append(';').append(child.definition.name);
+            if (++top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+                next = Arrays.copyOf(next, top * 2);
+                lengths = Arrays.copyOf(lengths, top * 2);
+            }
+            stack[top] = child;
+            next[top] = 0;
+            lengths[top] = builder.length();
+        }
+    }
+
+    /** Writes summary of recorded calls to given output, with one line per label. */
+    public void writeSummary(final Appendable out) throws IOException {
+        out.append(String.format(Locale.ROOT, "%12s %12s %12s %12s  %s%n", "calls", "inclusive", "exclusive",
+                "conses", "label"));
+        for (final Entry entry : entries()) {
+            out.append(String.format(Locale.ROOT, "%12d %9.3f ms %9.3f ms %12d  %s%n", entry.calls,
+                    entry.inclusive / 1e6, entry.exclusive / 1e6, entry.conses, entry.definition));
+        }
+        out.append(String.format(Locale.ROOT, "Profiled %.3f ms%s.%n", nanos() / 1e6, isSampled()
+                ? " using " + root.samplesOfTree() + " samples" : ""));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        try {
+            writeSummary(builder);
+
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return builder.toString();
+    }
+
+    /** Records call to label with given definition d, evaluating its body using environment b. */
+    private SExpr call(final Resolved.Definition d, final Environment b) {
+        if (Thread.currentThread() != owner) {
+            return Evaluator.evalBody(d, b, calls);
+        }
+        final Node parent = current;
+        final Node child = parent.childIf(d);
+        final Node ancestor = child == null ? parent.ancestorOf(d) : null;
+        final boolean isRecursive = ancestor != null;
+        final Node node = child != null ? child : isRecursive ? ancestor : parent.addChild(d);
+        node.calls += 1;
+        CURRENT.lazySet(this, node);
+        if (interval != DETERMINISTIC) {
+            try {
+                return Evaluator.evalBody(d, b, calls);
+
+            } finally {
+                CURRENT.lazySet(this, parent);
+            }
+        }
+        final long start = System.nanoTime();
+        try {
+            return Evaluator.evalBody(d, b, calls);
+
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            if (isRecursive) {
+                node.recursiveNanos += elapsed;
+
+            } else {
+                node.nanos += elapsed;
+            }
+            parent.childNanos += elapsed;
+            CURRENT.lazySet(this, parent);
+        }
+    }
+
+    /**
+     * Starts sampler thread, unless already running. The thread is kept between evaluations, but stops by itself after
+     * having taken {@link #IDLE_SAMPLES} samples in a row while no evaluation was running.
+     */
+    private synchronized void startSampler() {
+        if (sampler != null) {
+            return;
+        }
+        final long nanos = TimeUnit.MICROSECONDS.toNanos(interval);
+        sampler = new Thread(() -> {
+            int idle = 0;
+            while (true) {
+                LockSupport.parkNanos(nanos);
+                final Node node = current;
+                if (node != null) {
+                    node.samples += 1;
+                    idle = 0;
+                    continue;
+                }
+                if (++idle >= IDLE_SAMPLES) {
+                    synchronized (this) {
+                        if (current == null) {
+                            sampler = null;
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "plisp-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /** Exclusive time of given node, in nanoseconds if deterministic or in samples otherwise. */
+    private long valueOf(final Node node) {
+        return interval == DETERMINISTIC ? node.nanos + node.recursiveNanos - node.childNanos : node.samples;
+    }
+
+    /** Converts given value, as produced by {@link #valueOf(Node)}, into nanoseconds. */
+    private long timeOf(final long value) {
+        return interval == DETERMINISTIC ? value : value * TimeUnit.MICROSECONDS.toNanos(interval);
+    }
+
+    /** Collects all nodes of the tree with given root in preorder, assigning each node its index as identifier. */
+    private static Node[] nodesOf(final Node root) {
+        final List<Node> nodes = new ArrayList<>();
+        final List<Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            node.id = nodes.size();
+            nodes.add(node);
+            for (int i = node.size; i-- > 0; ) {
+                stack.add(node.children[i]);
+            }
+        }
+        return nodes.toArray(new Node[nodes.size()]);
+    }
+
+    /** Determines inclusive value of each node in given preorder, indexed by node identifier. */
+    private long[] totalsOf(final Node[] nodes) {
+        final long[] totals = new long[nodes.length];
+        for (int i = nodes.length; i-- > 0; ) {
+            final Node node = nodes[i];
+            if (interval == DETERMINISTIC) {
+                totals[i] = node.nanos;
+                continue;
+            }
+            totals[i] += node.samples;
+            if (node.parent != null) {
+                totals[node.parent.id] += totals[i];
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Per-label summary of recorded calls.
+     */
+    public static final class Entry {
+        private final Resolved.Definition definition;
+        private final long calls, conses, inclusive, exclusive;
+
+        private Entry(final Resolved.Definition definition, final long calls, final long conses, final long inclusive,
+                      final long exclusive) {
+            this.definition = definition;
+            this.calls = calls;
+            this.conses = conses;
+            this.inclusive = inclusive;
+            this.exclusive = exclusive;
+        }
+
+        /** Definition of label. */
+        public Resolved.Definition definition() {
+            return definition;
+        }
+
+        /** Amount of times label was called. */
+        public long calls() {
+            return calls;
+        }
+
+        /** Amount of cons cells allocated by CONS in label bodies, not counting nested calls. */
+        public long conses() {
+            return conses;
+        }
+
+        /** Time spent in label, including nested calls, in nanoseconds. */
+        public long inclusive() {
+            return inclusive;
+        }
+
+        /** Time spent in label, excluding nested calls, in nanoseconds. */
+        public long exclusive() {
+            return exclusive;
+        }
+
+        @Override
+        public String toString() {
+            return "Label '" + definition + "' called " + calls + " times, allocating " + conses + " conses in "
+                    + String.format(Locale.ROOT, "%.3f ms (%.3f ms inclusive)", exclusive / 1e6, inclusive / 1e6)
+                    + ".";
+        }
+    }
+
+    /**
+     * Calling context tree node, representing one chain of calls.
+     * <p>
+     * The time of recursive calls folded into a node is kept apart from the time of the outermost calls represented by
+     * the node, as the former is already part of the latter.
+     */
+    private static final class Node {
+        private final Node parent;
+        private final Resolved.Definition definition;
+        private Node[] children;
+        private int size, id;
+        private long calls, conses, nanos, recursiveNanos, childNanos;
+        private volatile long samples;
+
+        private Node(final Node parent, final Resolved.Definition definition) {
+            this.parent = parent;
+            this.definition = definition;
+        }
+
+        /** Gets child node representing call to label with given definition d, or null if not existing. */
+        private Node childIf(final Resolved.Definition d) {
+            for (int i = 0; i < size; ++i) {
+                if (children[i].definition == d) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /** Gets this node or its nearest ancestor representing call to label with given definition d, if any. */
+        private Node ancestorOf(final Resolved.Definition d) {
+            for (Node node = this; node != null; node = node.parent) {
+                if (node.definition == d) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        /** Adds child node representing call to label with given definition d. */
+        private Node addChild(final Resolved.Definition d) {
+            if (children == null) {
+                children = new Node[2];
+
+            } else if (size == children.length) {
+                children = Arrays.copyOf(children, size * 2);
+            }
+            final Node child = new Node(this, d);
+            children[size++] = child;
+            return child;
+        }
+
+        /** Sums samples of this node and all of its descendants. */
+        private long samplesOfTree() {
+            long sum = 0;
+            for (final Node node : nodesOf(this)) {
+                sum += node.samples;
+            }
+            return sum;
+        }
+    }
+}
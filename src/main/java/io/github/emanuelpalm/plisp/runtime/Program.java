@@ -0,0 +1,37 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolved s-expression program, ready to be evaluated any number of times.
+ *
+ * @see Resolver
+ * @see Evaluator#eval(Program)
+ */
+public final class Program {
+    private final SExpr source;
+    private final Resolved root;
+    private final List<Resolved.Definition> definitions;
+
+    Program(final SExpr source, final Resolved root, final List<Resolved.Definition> definitions) {
+        this.source = source;
+        this.root = root;
+        this.definitions = Collections.unmodifiableList(definitions);
+    }
+
+    /** Expression program was resolved from. */
+    public SExpr source() {
+        return source;
+    }
+
+    /** Resolved program expression. */
+    public Resolved root() {
+        return root;
+    }
+
+    /** All label definitions in program, ordered by label slot. */
+    public List<Resolved.Definition> definitions() {
+        return definitions;
+    }
+}
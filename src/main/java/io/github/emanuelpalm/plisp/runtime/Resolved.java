@@ -0,0 +1,154 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+/**
+ * S-expression with all atom references resolved, as produced by {@link Resolver}.
+ * <p>
+ * Each resolved expression is tagged with what kind of expression it is. Atom references are tagged as either frame
+ * slots, label slots or, if the reference can only be determined at runtime, dynamic references.
+ */
+public final class Resolved {
+    /** Quoted expression. */
+    public static final int QUOTE = 0;
+
+    /** Reference to a value in an environment frame, identified by depth and slot. */
+    public static final int SLOT = 1;
+
+    /** Reference to a label definition. */
+    public static final int LABEL = 2;
+
+    /** Reference to an atom that must be looked up in the environment at runtime. */
+    public static final int DYNAMIC = 3;
+
+    /** Elementary s-function ATOM. */
+    public static final int ATOM = 4;
+
+    /** Elementary s-function EQ. */
+    public static final int EQ = 5;
+
+    /** Elementary s-function CAR. */
+    public static final int CAR = 6;
+
+    /** Elementary s-function CDR. */
+    public static final int CDR = 7;
+
+    /** Elementary s-function CONS. */
+    public static final int CONS = 8;
+
+    /** Elementary s-function COND. */
+    public static final int COND = 9;
+
+    /** Call to label definition with lambda value. */
+    public static final int CALL = 10;
+
+    /** Call to some operator only known at runtime. */
+    public static final int INVOKE = 11;
+
+    /** Lambda expression applied to arguments. */
+    public static final int APPLY = 12;
+
+    /** Label expression scoping some body. */
+    public static final int BIND = 13;
+
+    /** Expression evaluated in parallel, producing a future. */
+    public static final int FUTURE = 14;
+
+    /** Expression whose value is waited for, if a future. */
+    public static final int TOUCH = 15;
+
+    /** Expression that cannot be evaluated. */
+    public static final int ILLEGAL = 16;
+
+    final int tag;
+    final SExpr source;
+    final Resolved[] operands;
+    final int depth, slot;
+    final Symbol[] names;
+    final Definition definition;
+    final boolean isCalling;
+
+    Resolved(final int tag, final SExpr source, final Resolved[] operands, final int depth, final int slot,
+             final Symbol[] names, final Definition definition) {
+        this.tag = tag;
+        this.source = source;
+        this.operands = operands;
+        this.depth = depth;
+        this.slot = slot;
+        this.names = names;
+        this.definition = definition;
+        this.isCalling = isCalling(tag, operands);
+    }
+
+    /** Determines whether evaluating some expression with given tag and operands may involve calls of any kind. */
+    private static boolean isCalling(final int tag, final Resolved[] operands) {
+        if (tag == CALL || tag == INVOKE || tag == APPLY || tag == BIND || tag == FUTURE) {
+            return true;
+        }
+        if (operands != null) {
+            for (final Resolved operand : operands) {
+                if (operand.isCalling) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Expression tag. */
+    public int tag() {
+        return tag;
+    }
+
+    /** Expression resolved. */
+    public SExpr source() {
+        return source;
+    }
+
+    /** Label definition referred to or introduced by expression, if any. */
+    public Definition definition() {
+        return definition;
+    }
+
+    /**
+     * Definition of some label.
+     * <p>
+     * If the label value is a lambda expression, the definition also holds its resolved parameters and body.
+     */
+    public static final class Definition {
+        final int index;
+        final SExpr name;
+        final SExpr value;
+        Symbol[] parameters;
+        Resolved body;
+
+        Definition(final int index, final SExpr name, final SExpr value) {
+            this.index = index;
+            this.name = name;
+            this.value = value;
+        }
+
+        /** Label slot, unique within its {@link Program}. */
+        public int index() {
+            return index;
+        }
+
+        /** Label name. */
+        public SExpr name() {
+            return name;
+        }
+
+        /** Unevaluated label value. */
+        public SExpr value() {
+            return value;
+        }
+
+        /** Whether label value is a lambda expression. */
+        public boolean isLambda() {
+            return parameters != null;
+        }
+
+        @Override
+        public String toString() {
+            return name.toString();
+        }
+    }
+}
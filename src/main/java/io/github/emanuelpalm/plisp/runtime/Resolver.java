@@ -0,0 +1,341 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Resolves the atom references of some {@link SExpr}, producing a {@link Program}.
+ * <p>
+ * The resolver walks expressions the same way as the analyzer, keeping track of what lambda parameters and labels are
+ * lexically in scope. Elementary s-functions are tagged as such. Atoms bound within the same lambda body, or at the
+ * top level, are tagged with the depth and slot of the frame they will be found in at runtime. Atoms referring to
+ * labels are tagged with label slots, but only if the lexical reference is certain to also be the dynamic one. That is
+ * the case either if the label is bound within the same lambda body, or if the label name is defined only once and is
+ * never used as a lambda parameter anywhere in the program. Remaining atoms are left to be looked up at runtime.
+ * <p>
+ * If the atoms {@code lambda} or {@code label} occur anywhere but at the head of lambda or label expressions, the
+ * program could assemble and run new lambda or label expressions at runtime. In that case, labels are only resolved
+ * within the lambda bodies they are bound in.
+ */
+public class Resolver {
+    private final Map<Symbol, Integer> labelCounts = new HashMap<>();
+    private final Set<Symbol> parameters = new HashSet<>();
+    private final List<Resolved.Definition> definitions = new ArrayList<>();
+    private int keywordOccurrences = 0;
+    private boolean isCodeAssembled = false;
+
+    private Resolver() {}
+
+    /** Resolves given s-expression into a program. */
+    public static Program resolve(final SExpr e) {
+        final Resolver resolver = new Resolver();
+        resolver.scan(e);
+        resolver.isCodeAssembled = countKeywordsIn(e) != resolver.keywordOccurrences;
+        return new Program(e, resolver.resolve(e, null), resolver.definitions);
+    }
+
+    // Scanning, collecting label names and lambda parameters.
+
+    private void scan(final SExpr e) {
+        if (e instanceof SExpr.Atom || e instanceof SExpr.Nil) {
+            return;
+        }
+        if (e.car() instanceof SExpr.Atom) {
+            switch (((SExpr.Atom) e.car()).symbol().id()) {
+                case Symbols.QUOTE_ID:
+                    return;
+
+                case Symbols.COND_ID:
+                    for (SExpr s = e; !(s.cdr() instanceof SExpr.Nil); s = s.cdr()) {
+                        scan(s.cdr().car().car());
+                        scan(s.cdr().car().cdr().car());
+                    }
+                    return;
+
+                default:
+                    scanEach(e.cdr());
+                    return;
+            }
+        }
+        if (e.car().car() instanceof SExpr.Atom) {
+            switch (((SExpr.Atom) e.car().car()).symbol().id()) {
+                case Symbols.LAMBDA_ID:
+                    scanLambda(e.car());
+                    scanEach(e.cdr());
+                    return;
+
+                case Symbols.LABEL_ID:
+                    keywordOccurrences += 1;
+                    final SExpr name = e.car().cdr().car();
+                    if (name instanceof SExpr.Atom) {
+                        labelCounts.merge(((SExpr.Atom) name).symbol(), 1, Integer::sum);
+                    }
+                    if (isLambda(e.car().cdr().cdr().car())) {
+                        scanLambda(e.car().cdr().cdr().car());
+                    }
+                    scan(e.cdr().car());
+            }
+        }
+    }
+
+    private void scanEach(final SExpr es) {
+        SExpr s = es;
+        for (int i = es.size(); i-- != 0; s = s.cdr()) {
+            scan(s.car());
+        }
+    }
+
+    private void scanLambda(final SExpr lambda) {
+        keywordOccurrences += 1;
+        for (final Symbol name : namesOf(lambda.cdr().car())) {
+            if (name != null) {
+                parameters.add(name);
+            }
+        }
+        scan(lambda.cdr().cdr().car());
+    }
+
+    private static int countKeywordsIn(final SExpr e) {
+        int count = 0;
+        SExpr s = e;
+        while (s instanceof SExpr.Cons) {
+            count += countKeywordsIn(s.car());
+            s = s.cdr();
+        }
+        if (s instanceof SExpr.Atom) {
+            final int id = ((SExpr.Atom) s).symbol().id();
+            if (id == Symbols.LAMBDA_ID || id == Symbols.LABEL_ID) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    // Resolution.
+
+    private Resolved resolve(final SExpr e, final Scope scope) {
+        if (e instanceof SExpr.Atom) {
+            return reference((SExpr.Atom) e, scope);
+        }
+        if (e.car() instanceof SExpr.Atom) {
+            switch (((SExpr.Atom) e.car()).symbol().id()) {
+                case Symbols.QUOTE_ID:
+                    return node(Resolved.QUOTE, e);
+
+                case Symbols.ATOM_ID:
+                    return node(Resolved.ATOM, e, resolve(e.cdr().car(), scope));
+
+                case Symbols.EQ_ID:
+                    return node(Resolved.EQ, e, resolve(e.cdr().car(), scope), resolve(e.cdr().cdr().car(), scope));
+
+                case Symbols.CAR_ID:
+                    return node(Resolved.CAR, e, resolve(e.cdr().car(), scope));
+
+                case Symbols.CDR_ID:
+                    return node(Resolved.CDR, e, resolve(e.cdr().car(), scope));
+
+                case Symbols.CONS_ID:
+                    return node(Resolved.CONS, e, resolve(e.cdr().car(), scope), resolve(e.cdr().cdr().car(), scope));
+
+                case Symbols.COND_ID:
+                    return cond(e, scope);
+
+                case Symbols.FUTURE_ID:
+                    return node(Resolved.FUTURE, e, resolve(e.cdr().car(), scope));
+
+                case Symbols.TOUCH_ID:
+                    return node(Resolved.TOUCH, e, resolve(e.cdr().car(), scope));
+
+                default:
+                    return call(e, scope);
+            }
+        }
+        if (e.car().car() instanceof SExpr.Atom) {
+            switch (((SExpr.Atom) e.car().car()).symbol().id()) {
+                case Symbols.LAMBDA_ID:
+                    return apply(e, scope);
+
+                case Symbols.LABEL_ID:
+                    return bind(e, scope);
+            }
+        }
+        return node(Resolved.ILLEGAL, e);
+    }
+
+    private Resolved reference(final SExpr.Atom e, final Scope scope) {
+        final Symbol symbol = e.symbol();
+        boolean isBeyondBoundary = false;
+        int depth = 0;
+        for (Scope s = scope; s != null; s = s.parent, ++depth) {
+            for (int slot = 0; slot < s.names.length; ++slot) {
+                if (s.names[slot] != symbol) {
+                    continue;
+                }
+                if (s.definition != null && (!isBeyondBoundary || isStable(symbol))) {
+                    return new Resolved(Resolved.LABEL, e, null, 0, 0, null, s.definition);
+                }
+                if (!isBeyondBoundary) {
+                    return new Resolved(Resolved.SLOT, e, null, depth, slot, null, null);
+                }
+                return node(Resolved.DYNAMIC, e);
+            }
+            isBeyondBoundary = isBeyondBoundary || s.isBoundary;
+        }
+        return node(Resolved.DYNAMIC, e);
+    }
+
+    private boolean isStable(final Symbol label) {
+        return !isCodeAssembled
+                && labelCounts.getOrDefault(label, 0) == 1
+                && !parameters.contains(label);
+    }
+
+    private Resolved cond(final SExpr e, final Scope scope) {
+        final List<Resolved> operands = new ArrayList<>();
+        for (SExpr s = e; !(s.cdr() instanceof SExpr.Nil); s = s.cdr()) {
+            operands.add(resolve(s.cdr().car().car(), scope));
+            operands.add(resolve(s.cdr().car().cdr().car(), scope));
+        }
+        return node(Resolved.COND, e, operands.toArray(new Resolved[operands.size()]));
+    }
+
+    private Resolved call(final SExpr e, final Scope scope) {
+        final Resolved operator = reference((SExpr.Atom) e.car(), scope);
+        if (operator.tag == Resolved.LABEL && operator.definition.parameters != null) {
+            return new Resolved(Resolved.CALL, e, resolveEach(e.cdr(), scope, 0), 0, 0, null, operator.definition);
+        }
+        return node(Resolved.INVOKE, e, operator);
+    }
+
+    private Resolved apply(final SExpr e, final Scope scope) {
+        final Symbol[] names = namesOf(e.car().cdr().car());
+        final Resolved[] operands = resolveEach(e.cdr(), scope, 1);
+        operands[0] = resolve(e.car().cdr().cdr().car(), new Scope(names, null, false, scope));
+        return new Resolved(Resolved.APPLY, e, operands, 0, 0, names, null);
+    }
+
+    private Resolved bind(final SExpr e, final Scope scope) {
+        final SExpr name = e.car().cdr().car();
+        final SExpr value = e.car().cdr().cdr().car();
+        final Resolved.Definition definition = new Resolved.Definition(definitions.size(), name, value);
+        definitions.add(definition);
+
+        final Scope labelScope = new Scope(new Symbol[]{symbolOf(name)}, definition, false, scope);
+        if (isLambda(value)) {
+            definition.parameters = namesOf(value.cdr().car());
+            definition.body = resolve(
+                    value.cdr().cdr().car(),
+                    new Scope(definition.parameters, null, true, labelScope)
+            );
+        }
+        final Resolved body = resolve(e.cdr().car(), labelScope);
+        return new Resolved(Resolved.BIND, e, new Resolved[]{body}, 0, 0, null, definition);
+    }
+
+    private Resolved[] resolveEach(final SExpr es, final Scope scope, final int offset) {
+        final Resolved[] rs = new Resolved[offset + es.size()];
+        SExpr s = es;
+        for (int i = offset; i < rs.length; ++i, s = s.cdr()) {
+            rs[i] = resolve(s.car(), scope);
+        }
+        return rs;
+    }
+
+    private static Resolved node(final int tag, final SExpr e, final Resolved... operands) {
+        return new Resolved(tag, e, operands, 0, 0, null, null);
+    }
+
+    private static boolean isLambda(final SExpr e) {
+        return e.car() instanceof SExpr.Atom && ((SExpr.Atom) e.car()).symbol() == Symbols.LAMBDA;
+    }
+
+    /**
+     * Determines what labels of given program p are closed, only considering labels accepted by given filter.
+     * <p>
+     * A label is closed if it has a lambda value whose body only uses its own parameters, quoted expressions, elementary
+     * s-functions, label references and calls to other closed labels. The result of calling a closed label depends on
+     * nothing but its arguments.
+     */
+    static Set<Resolved.Definition> closedLabelsOf(final Program p, final Predicate<Resolved.Definition> filter) {
+        final Set<Resolved.Definition> set = new LinkedHashSet<>();
+        for (final Resolved.Definition d : p.definitions()) {
+            if (d.isLambda() && filter.test(d)) {
+                set.add(d);
+            }
+        }
+        boolean isChanged = true;
+        while (isChanged) {
+            isChanged = set.removeIf(d -> !isClosed(d.body, set));
+        }
+        return set;
+    }
+
+    private static boolean isClosed(final Resolved r, final Set<Resolved.Definition> closed) {
+        switch (r.tag) {
+            case Resolved.QUOTE:
+            case Resolved.LABEL:
+                return true;
+
+            case Resolved.SLOT:
+                return r.depth == 0;
+
+            case Resolved.ATOM:
+            case Resolved.EQ:
+            case Resolved.CAR:
+            case Resolved.CDR:
+            case Resolved.CONS:
+            case Resolved.COND:
+                return Arrays.stream(r.operands).allMatch(o -> isClosed(o, closed));
+
+            case Resolved.CALL:
+                return closed.contains(r.definition)
+                        && Arrays.stream(r.operands).allMatch(o -> isClosed(o, closed));
+
+            default:
+                return false;
+        }
+    }
+
+    /** Gets symbols of given lambda parameter list, pairing them up as by {@link SExpr#zip(SExpr)}. */
+    static Symbol[] namesOf(final SExpr parameters) {
+        final Symbol[] names = new Symbol[parameters.size()];
+        SExpr p = parameters;
+        for (int i = 0; i < names.length; ++i, p = p.cdr()) {
+            names[i] = symbolOf(p.car());
+        }
+        return names;
+    }
+
+    private static Symbol symbolOf(final SExpr e) {
+        return e instanceof SExpr.Atom
+                ? ((SExpr.Atom) e).symbol()
+                : null;
+    }
+
+    /**
+     * Lexical scope, containing either lambda parameters or a single label.
+     * <p>
+     * A boundary scope holds the parameters of a label lambda, which may be called from anywhere in its label body.
+     * Scopes beyond a boundary scope can therefore not be addressed by depth.
+     */
+    private static class Scope {
+        private final Symbol[] names;
+        private final Resolved.Definition definition;
+        private final boolean isBoundary;
+        private final Scope parent;
+
+        private Scope(final Symbol[] names, final Resolved.Definition definition, final boolean isBoundary, final Scope parent) {
+            this.names = names;
+            this.definition = definition;
+            this.isBoundary = isBoundary;
+            this.parent = parent;
+        }
+    }
+}
@@ -4,9 +4,15 @@ import io.github.emanuelpalm.plisp.lexer.Token;
 import io.github.emanuelpalm.plisp.lexer.TokenClass;
 import io.github.emanuelpalm.plisp.lexer.TokenOrigin;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
 
 /**
  * Symbolic expression.
@@ -15,7 +21,11 @@ public interface SExpr {
     /** Global nil value. */
     Nil NIL = new Nil();
 
-    /** Token representing s-expression origin, if expression originated from explicit code. */
+    /**
+     * Token representing s-expression origin, if expression originated from explicit code.
+     * <p>
+     * Tokens are not kept by expressions, but are recreated from the positions recorded in {@link Positions}.
+     */
     default Optional<Token> token() {
         return Optional.empty();
     }
@@ -73,27 +83,64 @@ public interface SExpr {
      * Behaves as a single element list if used with some list operation, such as zip or concat.
      */
     class Atom implements SExpr {
-        private final Token token;
+        private final Symbol symbol;
+        private final long[] positions;
+        private final int index;
 
-        /** Constructs atom from given token. */
+        /** Constructs atom from given token, recording its position if it originates from source code. */
         public Atom(final Token t) {
-            token = t;
+            this(t.lexeme(), t.origin() != TokenOrigin.OTHER ? new long[]{t.origin().pack()} : null, 0);
+        }
+
+        /**
+         * Constructs atom with given name, originating from some source.
+         * <p>
+         * The packed source code positions of all atoms of the source are kept in one table, which is shared with the
+         * atom rather than copied, and must therefore not be modified.
+         *
+         * @param name      Atom name.
+         * @param positions Table of packed positions, as by {@link Positions#pack(int, int)}, or null if none.
+         * @param index     Index of atom position in table.
+         */
+        public Atom(final String name, final long[] positions, final int index) {
+            this.symbol = Symbols.intern(name);
+            this.positions = positions;
+            this.index = index;
         }
 
-        /** Constructs atom from given string name. */
+        /** Constructs canonical atom of given symbol. */
+        Atom(final Symbol s) {
+            symbol = s;
+            positions = null;
+            index = 0;
+        }
+
+        /** Gets canonical atom with given string name. */
         public static SExpr.Atom of(final String name) {
-            return new Atom(new Token(TokenClass.ATM, name));
+            return Symbols.intern(name).atom();
         }
 
         /** Atom name. */
         public String name() {
-            return token.lexeme();
+            return symbol.name();
+        }
+
+        /** Interned atom symbol. */
+        public Symbol symbol() {
+            return symbol;
+        }
+
+        /** Packed source code position of atom, or {@link Positions#NONE} if not originating from source code. */
+        long position() {
+            return positions != null ? positions[index] : Positions.NONE;
         }
 
         @Override
         public Optional<Token> token() {
-            return Optional.ofNullable(token.origin() != TokenOrigin.OTHER
-                    ? token
+            final long position = position();
+            return Optional.ofNullable(position != Positions.NONE
+                    ? new Token(new TokenOrigin(Positions.rowOf(position), Positions.columnOf(position)),
+                    TokenClass.ATM, name())
                     : null);
         }
 
@@ -118,48 +165,65 @@ public interface SExpr {
         @Override
         public boolean equals(final Object o) {
             return o != null && o instanceof Atom
-                    && ((Atom) o).name().equals(name());
+                    && ((Atom) o).symbol == symbol;
+        }
+
+        @Override
+        public int hashCode() {
+            return symbol.hashCode();
         }
     }
 
     /**
      * Memory cell with two registers for holding s-expressions.
+     * <p>
+     * Conses compare and hash structurally. Hashes are computed when first needed and are then kept by each cons hashed.
+     *
+     * @see Conses
+     * @see Vector
      */
     class Cons implements SExpr {
-        private final Optional<Token> token;
         private final SExpr car, cdr;
+        private final boolean isCanonical;
+        private int hash;
 
         /** Constructs cell from given two s-expressions. */
         public Cons(final SExpr car, final SExpr cdr) {
-            this.token = car.token();
             this.car = car;
             this.cdr = cdr;
+            this.isCanonical = false;
+        }
+
+        /** Constructs canonical cell from given two canonical s-expressions and their precomputed hash. */
+        Cons(final SExpr car, final SExpr cdr, final int hash) {
+            this.car = car;
+            this.cdr = cdr;
+            this.isCanonical = true;
+            this.hash = hash;
+        }
+
+        /** Constructs cell from given car, leaving it to the subclass to provide its cdr, and its car if null. */
+        Cons(final SExpr car) {
+            this.car = car;
+            this.cdr = null;
+            this.isCanonical = false;
         }
 
         /** Constructs cons list from given array of s-expressions. */
         public static SExpr of(final SExpr... es) {
-            return of(Arrays.asList(es));
+            return Vector.of(es, NIL);
         }
 
         /** Constructs cons list from given list of s-expressions. */
         public static SExpr of(final List<SExpr> es) {
-            SExpr e = NIL;
-            for (int i = es.size(); i-- != 0; ) {
-                e = new Cons(es.get(i), e);
-            }
-            return e;
+            return Vector.wrap(es.toArray(new SExpr[es.size()]), NIL);
         }
 
+        /** Token of first atom in cons with a source code position, if any. */
         @Override
         public Optional<Token> token() {
-            if (token.isPresent()) {
-                return token;
-            }
-            final Optional<Token> carToken = car().token();
-            if (carToken.isPresent()) {
-                return carToken;
-            }
-            return cdr().token();
+            final SExpr atom = Positions.atomOf(this);
+            return atom != null ? atom.token() : Optional.empty();
         }
 
         @Override
@@ -192,26 +256,320 @@ public interface SExpr {
 
         @Override
         public String toString() {
-            final StringBuilder builder = new StringBuilder("(").append(car());
+            return Printer.FULL.print(this);
+        }
 
-            final SExpr cdr = cdr();
-            if (cdr instanceof Nil) {
-                builder.append(")");
+        /** Determines whether cell was created by {@link Conses}, and is the only cell with its contents. */
+        public boolean isCanonical() {
+            return isCanonical;
+        }
 
-            } else if (cdr instanceof Atom) {
-                builder.append(" . ").append(cdr);
+        @Override
+        public boolean equals(final Object o) {
+            SExpr a = this;
+            Object b = o instanceof Future ? Future.touch((SExpr) o) : o;
+            while (a instanceof Cons && b instanceof Cons) {
+                final Cons c0 = (Cons) a, c1 = (Cons) b;
+                if (c0 == c1) {
+                    return true;
+                }
+                if (c0.isCanonical && c1.isCanonical || c0.hash != 0 && c1.hash != 0 && c0.hash != c1.hash
+                        || !Future.equal(c0.car(), c1.car())) {
+                    return false;
+                }
+                a = Future.touch(c0.cdr());
+                b = Future.touch(c1.cdr());
+            }
+            return !(a instanceof Cons) && a.equals(b);
+        }
 
-            } else {
-                builder.append(" ").append(cdr.toString().substring(1));
+        @Override
+        public int hashCode() {
+            final int h = hash;
+            return h != 0 ? h : computeHash();
+        }
+
+        /** Combines hashes of some car and cdr into the hash of a cons holding them. */
+        static int hashOf(final int carHash, final int cdrHash) {
+            final int h = 31 * carHash + cdrHash;
+            return h != 0 ? h : 1;
+        }
+
+        /** Computes and keeps hashes of this cons and any following conses in its list not already hashed. */
+        private int computeHash() {
+            final List<Cons> spine = new ArrayList<>();
+            SExpr s = this;
+            while (s instanceof Cons && !(s instanceof Vector) && ((Cons) s).hash == 0) {
+                spine.add((Cons) s);
+                s = s.cdr();
+            }
+            int h = s.hashCode();
+            for (int i = spine.size(); i-- != 0; ) {
+                final Cons c = spine.get(i);
+                h = hashOf(c.car().hashCode(), h);
+                c.hash = h;
+            }
+            return h;
+        }
+    }
+
+    /**
+     * Cons list storing its elements contiguously, also known as a CDR-coded list.
+     * <p>
+     * Behaves exactly like a chain of conses ending with some tail expression, which is nil for proper lists. The cdr
+     * of a vector is a view of the same elements, starting one element later, and is created when first requested.
+     * Vectors know their sizes and the hashes of all their views without walking their elements more than once.
+     */
+    class Vector extends Cons {
+        private final Block block;
+        private final int offset;
+        private SExpr cdr;
+
+        private Vector(final Block block, final int offset) {
+            super(block.elements[offset]);
+            this.block = block;
+            this.offset = offset;
+        }
+
+        /** Creates list holding copies of given elements, followed by given tail. */
+        public static SExpr of(final SExpr[] elements, final SExpr tail) {
+            return wrap(elements.clone(), tail);
+        }
+
+        /**
+         * Creates list holding given elements, followed by given tail. The array must not be modified afterwards.
+         * If the array is empty, the tail is returned.
+         */
+        static SExpr wrap(final SExpr[] elements, final SExpr tail) {
+            return elements.length == 0 ? tail : new Vector(new Block(elements, tail), 0);
+        }
+
+        /**
+         * Converts the cons lists in given expression e, and in all of its elements, into vectors. Canonical conses
+         * are left as they are.
+         */
+        public static SExpr compact(final SExpr e) {
+            if (!isConvertible(e)) {
+                return e;
+            }
+            final List<SExpr> elements = new ArrayList<>();
+            SExpr s = e;
+            for (; isConvertible(s); s = s.cdr()) {
+                elements.add(compact(s.car()));
+            }
+            return wrap(elements.toArray(new SExpr[elements.size()]), s);
+        }
+
+        private static boolean isConvertible(final SExpr e) {
+            return e instanceof Cons && !(e instanceof Vector) && !((Cons) e).isCanonical();
+        }
+
+        /** Copies vector elements into array, or returns its backing array if it holds exactly those elements. */
+        SExpr[] toArray() {
+            return offset == 0
+                    ? block.elements
+                    : Arrays.copyOfRange(block.elements, offset, block.elements.length);
+        }
+
+        /** Expression following the last element of vector. */
+        SExpr tail() {
+            return block.tail;
+        }
+
+        @Override
+        public SExpr cdr() {
+            SExpr c = cdr;
+            if (c == null) {
+                c = offset + 1 < block.elements.length
+                        ? new Vector(block, offset + 1)
+                        : block.tail;
+                cdr = c;
             }
-            return builder.toString();
+            return c;
+        }
+
+        @Override
+        public SExpr concat(final SExpr e) {
+            return new Vector(new Block(block.elements, block.tail.concat(e)), offset);
+        }
+
+        @Override
+        public SExpr zip(final SExpr e) {
+            final SExpr[] pairs = new SExpr[block.elements.length - offset];
+            SExpr s = e;
+            for (int i = 0; i < pairs.length; ++i, s = s.cdr()) {
+                pairs[i] = new Cons(block.elements[offset + i], s.car());
+            }
+            return wrap(pairs, block.tail.zip(s));
+        }
+
+        @Override
+        public int size() {
+            return block.elements.length - offset + block.tail.size();
+        }
+
+        @Override
+        public int hashCode() {
+            int[] hashes = block.hashes;
+            if (hashes == null) {
+                hashes = block.computeHashes();
+            }
+            return hashes[offset];
+        }
+
+        /**
+         * Elements and tail shared by a vector and all of its views.
+         */
+        private static final class Block {
+            private final SExpr[] elements;
+            private final SExpr tail;
+            private volatile int[] hashes;
+
+            private Block(final SExpr[] elements, final SExpr tail) {
+                this.elements = elements;
+                this.tail = tail;
+            }
+
+            private int[] computeHashes() {
+                final int[] hashes = new int[elements.length];
+                int h = tail.hashCode();
+                for (int i = elements.length; i-- != 0; ) {
+                    h = hashOf(elements[i].hashCode(), h);
+                    hashes[i] = h;
+                }
+                this.hashes = hashes;
+                return hashes;
+            }
+        }
+    }
+
+    /**
+     * Placeholder for the value of some expression being evaluated in parallel, as produced by the future primitive.
+     * <p>
+     * Futures are evaluated by the common fork/join pool. Futures created by pool workers are queued by those workers,
+     * from where idle workers may steal them. Touching a future waits for its value, meanwhile helping to evaluate other
+     * queued futures. Evaluators touch futures implicitly wherever values are inspected, and fully touch their results
+     * before returning them. All other methods of futures touch them and delegate to their values.
+     */
+    class Future implements SExpr {
+        private final ForkJoinTask<SExpr> task;
+
+        private Future(final ForkJoinTask<SExpr> task) {
+            this.task = task;
+        }
+
+        /** Starts evaluating given value in parallel, returning a future of it. */
+        public static Future of(final Supplier<SExpr> value) {
+            final ForkJoinTask<SExpr> task = new RecursiveTask<SExpr>() {
+                @Override
+                protected SExpr compute() {
+                    return value.get();
+                }
+            };
+            task.fork();
+            return new Future(task);
+        }
+
+        /** Gets value of given expression e, waiting for it if e is a future. */
+        public static SExpr touch(final SExpr e) {
+            SExpr s = e;
+            while (s instanceof Future) {
+                s = ((Future) s).task.join();
+            }
+            return s;
+        }
+
+        /**
+         * Gets value of given expression e, with all futures within it replaced by their values. If e contains no
+         * futures, it is returned as is.
+         */
+        public static SExpr touchAll(final SExpr e) {
+            if (!containsFuture(e)) {
+                return e;
+            }
+            final List<SExpr> elements = new ArrayList<>();
+            SExpr s = touch(e);
+            while (s instanceof Cons) {
+                elements.add(touchAll(s.car()));
+                s = touch(s.cdr());
+            }
+            return Vector.wrap(elements.toArray(new SExpr[elements.size()]), s);
+        }
+
+        /**
+         * Determines whether the values of given expressions e0 and e1 are equal. Futures are touched only as reached,
+         * which means that comparison stops at the first pair of differing or identical expressions without waiting for
+         * or traversing the rest of either expression.
+         */
+        public static boolean equal(final SExpr e0, final SExpr e1) {
+            final SExpr s0 = touch(e0), s1 = touch(e1);
+            return s0 == s1 || s0.equals(s1);
+        }
+
+        private static boolean containsFuture(final SExpr e) {
+            final Deque<SExpr> stack = new ArrayDeque<>();
+            stack.push(e);
+            while (!stack.isEmpty()) {
+                final SExpr s = stack.pop();
+                if (s instanceof Future) {
+                    return true;
+                }
+                if (s instanceof Cons) {
+                    stack.push(s.cdr());
+                    stack.push(s.car());
+                }
+            }
+            return false;
+        }
+
+        /** Determines whether the value of the future is available. */
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        @Override
+        public Optional<Token> token() {
+            return touch(this).token();
+        }
+
+        @Override
+        public SExpr car() {
+            return touch(this).car();
+        }
+
+        @Override
+        public SExpr cdr() {
+            return touch(this).cdr();
+        }
+
+        @Override
+        public SExpr concat(final SExpr s) {
+            return touch(this).concat(s);
+        }
+
+        @Override
+        public SExpr zip(final SExpr e) {
+            return touch(this).zip(e);
+        }
+
+        @Override
+        public int size() {
+            return touch(this).size();
         }
 
         @Override
         public boolean equals(final Object o) {
-            return o != null && o instanceof Cons
-                    && ((Cons) o).car().equals(car())
-                    && ((Cons) o).cdr().equals(cdr());
+            return o instanceof SExpr && equal(this, (SExpr) o);
+        }
+
+        @Override
+        public int hashCode() {
+            return touchAll(this).hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return Printer.FULL.print(this);
         }
     }
 }
@@ -4,9 +4,20 @@ package io.github.emanuelpalm.plisp.runtime;
  * Thrown to indicate that some exceptional condition involving some {@link SExpr} has occurred.
  */
 public class SExprException extends RuntimeException {
-    /** Creates new s-expression exception, containing given message and offending expression. */
+    private final transient SExpr e;
+
+    /**
+     * Creates new s-expression exception, containing given message and offending expression. The message is prefixed
+     * with the source code position of the expression, which is only looked up when the message is requested.
+     */
     public SExprException(final String message, final SExpr e) {
-        super((e.token().isPresent() ? e.token().get().origin().toString() + " " : "") + message);
+        super(message);
+        this.e = e;
+    }
+
+    @Override
+    public String getMessage() {
+        return e != null ? Positions.prefixOf(e) + super.getMessage() : super.getMessage();
     }
 
     /**
@@ -28,4 +39,22 @@ public class SExprException extends RuntimeException {
             super("No successful condition.", e);
         }
     }
+
+    /**
+     * Evaluation was stopped as some limit of its {@link Budget} would have been exceeded.
+     */
+    public static class BudgetExhausted extends SExprException {
+        private final Budget budget;
+
+        /** Creates new s-expression exception, containing exhausted budget and offending expression. */
+        public BudgetExhausted(final Budget budget, final SExpr e) {
+            super("Evaluation budget exhausted. " + budget, e);
+            this.budget = budget;
+        }
+
+        /** Exhausted budget, reporting how much of each limit was used. */
+        public Budget budget() {
+            return budget;
+        }
+    }
 }
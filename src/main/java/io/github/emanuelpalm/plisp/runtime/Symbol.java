@@ -0,0 +1,48 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+/**
+ * Canonical atom name.
+ * <p>
+ * Symbols are only created by {@link Symbols#intern(String)}, which guarantees that there is at most one symbol
+ * instance per name at any given time. Symbols may therefore be compared by reference or by {@link #id()}.
+ */
+public final class Symbol {
+    private final String name;
+    private final int id;
+    private final SExpr.Atom atom;
+
+    Symbol(final String name, final int id) {
+        this.name = name;
+        this.id = id;
+        this.atom = new SExpr.Atom(this);
+    }
+
+    /** Symbol name. */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Small integer uniquely identifying this symbol among all live symbols.
+     * <p>
+     * Identifiers of symbols no longer in use may be handed out to new symbols.
+     */
+    public int id() {
+        return id;
+    }
+
+    /** Canonical atom without any source code origin. */
+    public SExpr.Atom atom() {
+        return atom;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+}
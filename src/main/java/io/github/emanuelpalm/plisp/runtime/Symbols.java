@@ -0,0 +1,134 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide {@link Symbol} table.
+ * <p>
+ * The table is safe to use from any number of threads. Looking up an already interned symbol never blocks. Symbols are
+ * only weakly held by the table, which means that symbols no longer referred to by any live atom are eventually
+ * evicted, and their identifiers reused. The symbols of the elementary s-functions are always kept.
+ */
+public class Symbols {
+    /** Identifier of {@link #QUOTE}. */
+    public static final int QUOTE_ID = 0;
+
+    /** Identifier of {@link #ATOM}. */
+    public static final int ATOM_ID = 1;
+
+    /** Identifier of {@link #EQ}. */
+    public static final int EQ_ID = 2;
+
+    /** Identifier of {@link #CAR}. */
+    public static final int CAR_ID = 3;
+
+    /** Identifier of {@link #CDR}. */
+    public static final int CDR_ID = 4;
+
+    /** Identifier of {@link #CONS}. */
+    public static final int CONS_ID = 5;
+
+    /** Identifier of {@link #COND}. */
+    public static final int COND_ID = 6;
+
+    /** Identifier of {@link #LAMBDA}. */
+    public static final int LAMBDA_ID = 7;
+
+    /** Identifier of {@link #LABEL}. */
+    public static final int LABEL_ID = 8;
+
+    /** Identifier of {@link #T}. */
+    public static final int T_ID = 9;
+
+    /** Identifier of {@link #FUTURE}. */
+    public static final int FUTURE_ID = 10;
+
+    /** Identifier of {@link #TOUCH}. */
+    public static final int TOUCH_ID = 11;
+
+    private static final ConcurrentHashMap<String, Entry> table = new ConcurrentHashMap<>(256);
+    private static final ReferenceQueue<Symbol> evicted = new ReferenceQueue<>();
+    private static final BitSet ids = new BitSet(256);
+
+    public static final Symbol QUOTE = intern("quote");
+    public static final Symbol ATOM = intern("atom");
+    public static final Symbol EQ = intern("eq");
+    public static final Symbol CAR = intern("car");
+    public static final Symbol CDR = intern("cdr");
+    public static final Symbol CONS = intern("cons");
+    public static final Symbol COND = intern("cond");
+    public static final Symbol LAMBDA = intern("lambda");
+    public static final Symbol LABEL = intern("label");
+    public static final Symbol T = intern("t");
+    public static final Symbol FUTURE = intern("future");
+    public static final Symbol TOUCH = intern("touch");
+
+    /** Gets canonical symbol with given name, creating it if not already present. */
+    public static Symbol intern(final String name) {
+        expunge();
+
+        Entry entry = table.get(name);
+        while (true) {
+            if (entry != null) {
+                final Symbol symbol = entry.get();
+                if (symbol != null) {
+                    return symbol;
+                }
+            }
+            final Symbol symbol = new Symbol(name, acquireId());
+            final Entry candidate = new Entry(symbol, evicted);
+            final boolean isInserted = entry == null
+                    ? table.putIfAbsent(name, candidate) == null
+                    : table.replace(name, entry, candidate);
+
+            if (isInserted) {
+                return symbol;
+            }
+            candidate.clear();
+            releaseId(symbol.id());
+            entry = table.get(name);
+        }
+    }
+
+    /** Amount of symbols currently in table, including symbols about to be evicted. */
+    public static int size() {
+        expunge();
+        return table.size();
+    }
+
+    private static void expunge() {
+        Entry entry;
+        while ((entry = (Entry) evicted.poll()) != null) {
+            table.remove(entry.name, entry);
+            releaseId(entry.id);
+        }
+    }
+
+    private static int acquireId() {
+        synchronized (ids) {
+            final int id = ids.nextClearBit(0);
+            ids.set(id);
+            return id;
+        }
+    }
+
+    private static void releaseId(final int id) {
+        synchronized (ids) {
+            ids.clear(id);
+        }
+    }
+
+    private static class Entry extends WeakReference<Symbol> {
+        private final String name;
+        private final int id;
+
+        private Entry(final Symbol s, final ReferenceQueue<Symbol> q) {
+            super(s, q);
+            name = s.name();
+            id = s.id();
+        }
+    }
+}
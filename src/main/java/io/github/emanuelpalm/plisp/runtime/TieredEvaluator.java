@@ -0,0 +1,159 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Evaluates resolved programs, promoting frequently called labels to compiled code.
+ * <p>
+ * Programs are initially evaluated by {@link Evaluator#eval(Program)}, which counts how many times each label is
+ * called. When the calls to some label reach the promotion threshold, the labels of the program are compiled in the
+ * background, using the {@link BytecodeCompiler} where possible and the {@link ClosureCompiler} otherwise. As soon as
+ * compilation has finished, the compiled body of the promoted label replaces its evaluated body at all of its call
+ * sites. Other labels keep being evaluated until they are promoted themselves.
+ * <p>
+ * Only calls resolved by the {@link Resolver} are counted. Tiered evaluators may be used by any number of threads
+ * simultaneously, and keep their counters and compiled code between evaluations.
+ */
+public class TieredEvaluator {
+    /** Default amount of calls required for a label to be promoted. */
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    private final Program program;
+    private final int threshold;
+    private final Executor executor;
+    private final Consumer<Promotion> listener;
+    private final AtomicLongArray counts;
+    private final AtomicReferenceArray<ClosureCompiler.Code> promoted;
+    private final Evaluator.Calls calls = this::call;
+    private volatile ClosureCompiler.Code[] compiled;
+
+    /**
+     * Creates tiered evaluator for given program p.
+     *
+     * @param p         Program to evaluate.
+     * @param threshold Amount of calls required for a label to be promoted.
+     * @param executor  Executor used to compile promoted labels.
+     * @param listener  Function notified each time a label has been promoted.
+     */
+    public TieredEvaluator(final Program p, final int threshold, final Executor executor,
+                           final Consumer<Promotion> listener) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Promotion threshold must be positive.");
+        }
+        this.program = p;
+        this.threshold = threshold;
+        this.executor = executor;
+        this.listener = listener;
+        this.counts = new AtomicLongArray(p.definitions().size());
+        this.promoted = new AtomicReferenceArray<>(p.definitions().size());
+    }
+
+    /** Creates tiered evaluator for given program p, compiling promoted labels using the common fork/join pool. */
+    public TieredEvaluator(final Program p, final int threshold, final Consumer<Promotion> listener) {
+        this(p, threshold, ForkJoinPool.commonPool(), listener);
+    }
+
+    /** Evaluates program. */
+    public SExpr eval() {
+        return Evaluator.eval(program, calls);
+    }
+
+    /**
+     * Convenience function for evaluating an expression using default threshold and no promotion listener.
+     *
+     * @see #eval()
+     */
+    public static SExpr eval(final SExpr e) {
+        return new TieredEvaluator(Resolver.resolve(e), DEFAULT_THRESHOLD, promotion -> {
+        }).eval();
+    }
+
+    /**
+     * Convenience function for evaluating a string.
+     *
+     * @see #eval(SExpr)
+     */
+    public static SExpr eval(final String s) {
+        return eval(Parser.parse(s));
+    }
+
+    /** Amount of times label with given definition d has been called by this evaluator. */
+    public long countOf(final Resolved.Definition d) {
+        return counts.get(d.index);
+    }
+
+    /** Determines whether label with given definition d has been promoted. */
+    public boolean isPromoted(final Resolved.Definition d) {
+        return promoted.get(d.index) != null;
+    }
+
+    /** Counts call to label with given definition d, calling its compiled body if promoted. */
+    private SExpr call(final Resolved.Definition d, final SExpr[] arguments, final Environment b) {
+        final ClosureCompiler.Code code = promoted.get(d.index);
+        if (code != null) {
+            return code.run(b);
+        }
+        if (counts.incrementAndGet(d.index) == threshold) {
+            executor.execute(() -> promote(d));
+        }
+        return Evaluator.evalBody(d, b, calls);
+    }
+
+    private void promote(final Resolved.Definition d) {
+        final long start = System.nanoTime();
+        ClosureCompiler.Code[] codes = compiled;
+        if (codes == null) {
+            synchronized (this) {
+                codes = compiled;
+                if (codes == null) {
+                    codes = ClosureCompiler.compileBodies(program, BytecodeCompiler.compileLabelsOf(program)::get);
+                    compiled = codes;
+                }
+            }
+        }
+        promoted.set(d.index, codes[d.index]);
+        listener.accept(new Promotion(d, counts.get(d.index), System.nanoTime() - start));
+    }
+
+    /**
+     * Describes the promotion of some label to compiled code.
+     */
+    public static final class Promotion {
+        private final Resolved.Definition definition;
+        private final long count, nanos;
+
+        private Promotion(final Resolved.Definition definition, final long count, final long nanos) {
+            this.definition = definition;
+            this.count = count;
+            this.nanos = nanos;
+        }
+
+        /** Definition of promoted label. */
+        public Resolved.Definition definition() {
+            return definition;
+        }
+
+        /** Amount of times label had been called when promotion completed. */
+        public long count() {
+            return count;
+        }
+
+        /** Time spent compiling label, in nanoseconds. */
+        public long nanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Promoted label '" + definition + "' after " + count + " calls, compiled in "
+                    + String.format(Locale.ROOT, "%.3f", nanos / 1e6) + " ms.";
+        }
+    }
+}
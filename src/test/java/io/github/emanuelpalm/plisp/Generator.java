@@ -0,0 +1,186 @@
+package io.github.emanuelpalm.plisp;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic programs of arbitrary size, for finding out how well the lexer, parser and evaluator scale.
+ * <p>
+ * Two kinds of programs are generated. Data programs take the car of one huge quoted list, which makes them cheap to
+ * evaluate but expensive to lex and parse. Compute programs define a chain of labels, each substituting atoms in its
+ * argument while passing every element to the label before it, and apply the last label repeatedly to a quoted list.
+ * Their evaluation cost grows with the amount of labels, the size of the list and the recursion depth.
+ * <p>
+ * Quoted lists are made of atoms drawn from a vocabulary, and of nested lists with random lengths. The total size of a
+ * program is approximately the given amount of bytes for data programs, while compute programs use the size for their
+ * quoted list alone. Programs are written as they are generated, making any size possible, and are fully determined by
+ * the seed and other parameters used.
+ */
+public class Generator {
+    private static final List<String> FLAGS = Arrays.asList("--kind", "--seed", "--size", "--length", "--depth",
+            "--nesting", "--labels", "--vocabulary", "--recursion", "--output");
+    private static final String USAGE = "Usage: Generator [--kind=data|compute] [--seed=<n>] [--size=<bytes>] "
+            + "[--length=<n>] [--depth=<n>] [--nesting=<percent>] [--labels=<n>] [--vocabulary=<n>] "
+            + "[--recursion=<n>] [--output=<file>]";
+
+    private final Random random;
+    private final long size;
+    private final int length, depth, nesting, labels, vocabulary, recursion;
+
+    /**
+     * Creates new generator.
+     *
+     * @param seed       Seed of random number generator.
+     * @param size       Approximate amount of bytes of quoted list.
+     * @param length     Maximum length of nested lists.
+     * @param depth      Maximum nesting depth of lists.
+     * @param nesting    Percentage of list elements that are nested lists, as long as the maximum depth allows it.
+     * @param labels     Amount of label definitions in compute programs.
+     * @param vocabulary Amount of distinct atoms in quoted lists.
+     * @param recursion  Amount of times the last label is applied in compute programs.
+     */
+    public Generator(final long seed, final long size, final int length, final int depth, final int nesting,
+                     final int labels, final int vocabulary, final int recursion) {
+        if (size < 0 || length < 1 || depth < 0 || nesting < 0 || nesting > 100 || labels < 1 || vocabulary < 1
+                || recursion < 1) {
+            throw new IllegalArgumentException("Invalid generator parameters.");
+        }
+        this.random = new Random(seed);
+        this.size = size;
+        this.length = length;
+        this.depth = depth;
+        this.nesting = nesting;
+        this.labels = labels;
+        this.vocabulary = vocabulary;
+        this.recursion = recursion;
+    }
+
+    /** Writes data program to given output. */
+    public void writeData(final Writer out) throws IOException {
+        out.write("(car '");
+        writeList(out);
+        out.write(")\n");
+    }
+
+    /** Writes compute program to given output. */
+    public void writeCompute(final Writer out) throws IOException {
+        out.write("(\n");
+        for (int i = 0; i < labels; ++i) {
+            out.write("(label f" + i + " (lambda (z) (cond\n");
+            out.write("    ((atom z) (cond ((eq z '" + atomOf(random.nextInt(vocabulary)) + ") '"
+                    + atomOf(random.nextInt(vocabulary)) + ") ('t z)))\n");
+            out.write("    ('t (cons (" + (i == 0 ? "car z" : "f" + (i - 1) + " (car z)") + ") (f" + i
+                    + " (cdr z)))))))\n(\n");
+        }
+        out.write("(label run (lambda (n) (cond\n");
+        out.write("    ((eq (cdr n) '()) (f" + (labels - 1) + " data))\n");
+        out.write("    ((eq (f" + (labels - 1) + " data) '()) '())\n");
+        out.write("    ('t (run (cdr n))))))\n");
+        out.write("((lambda (data) (run '(");
+        for (int i = 0; i < recursion; ++i) {
+            out.write(i == 0 ? "1" : " 1");
+        }
+        out.write("))) '");
+        writeList(out);
+        out.write(")\n");
+        for (int i = 0; i < labels; ++i) {
+            out.write(")");
+        }
+        out.write(")\n");
+    }
+
+    /** Writes list of approximately the configured size to given output, without recursion. */
+    private void writeList(final Writer out) throws IOException {
+        int[] remaining = new int[16];
+        boolean[] isFirst = new boolean[16];
+        int top = 0;
+        long written = 1;
+        remaining[0] = Integer.MAX_VALUE;
+        isFirst[0] = true;
+        out.write('(');
+        while (top >= 0) {
+            if (remaining[top] == 0 || written >= size) {
+                out.write(')');
+                written += 1;
+                top -= 1;
+                continue;
+            }
+            remaining[top] -= 1;
+            if (!isFirst[top]) {
+                out.write(' ');
+                written += 1;
+            }
+            isFirst[top] = false;
+            if (top < depth && random.nextInt(100) < nesting) {
+                if (++top == remaining.length) {
+                    remaining = Arrays.copyOf(remaining, top * 2);
+                    isFirst = Arrays.copyOf(isFirst, top * 2);
+                }
+                remaining[top] = random.nextInt(length + 1);
+                isFirst[top] = true;
+                out.write('(');
+                written += 1;
+                continue;
+            }
+            final String atom = atomOf(random.nextInt(vocabulary));
+            out.write(atom);
+            written += atom.length();
+        }
+    }
+
+    private static String atomOf(final int index) {
+        return "a" + index;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Map<String, String> flags = new HashMap<>();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            flags.put(separator < 0 ? arg : arg.substring(0, separator),
+                    separator < 0 ? "" : arg.substring(separator + 1));
+        }
+        final String kind = flags.getOrDefault("--kind", "data");
+        if (!FLAGS.containsAll(flags.keySet()) || !(kind.equals("data") || kind.equals("compute"))) {
+            System.err.println(USAGE);
+            return;
+        }
+
+        final Generator generator;
+        try {
+            generator = new Generator(
+                    Long.parseLong(flags.getOrDefault("--seed", "0")),
+                    Long.parseLong(flags.getOrDefault("--size", kind.equals("data") ? "1000000" : "1000")),
+                    Integer.parseInt(flags.getOrDefault("--length", "8")),
+                    Integer.parseInt(flags.getOrDefault("--depth", "8")),
+                    Integer.parseInt(flags.getOrDefault("--nesting", "25")),
+                    Integer.parseInt(flags.getOrDefault("--labels", "4")),
+                    Integer.parseInt(flags.getOrDefault("--vocabulary", "16")),
+                    Integer.parseInt(flags.getOrDefault("--recursion", "100")));
+
+        } catch (final IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return;
+        }
+
+        final String output = flags.get("--output");
+        try (final OutputStream stream = output == null ? System.out : new FileOutputStream(output);
+             final Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            if (kind.equals("data")) {
+                generator.writeData(out);
+
+            } else {
+                generator.writeCompute(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.anaylzer.AnalyzerException;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import io.github.emanuelpalm.plisp.runtime.Evaluator;
+import io.github.emanuelpalm.plisp.runtime.Image;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestCache {
+    @Test
+    public void shouldLoadCachedProgram() throws IOException, AnalyzerException {
+        final Path directory = Files.createTempDirectory("plisp");
+        final Cache cache = new Cache(directory, Cache.DEFAULT_CAPACITY);
+        final File source = sourceOf("(car '(a b))");
+
+        assertEquals(Evaluator.eval(cache.load(source, false)), SExpr.Atom.of("a"));
+        final List<Path> images = filesOf(directory, ".plpi");
+        assertEquals(images.size(), 1);
+
+        try (final OutputStream out = Files.newOutputStream(images.get(0))) {
+            Image.write(Parser.parse("(cdr '(a b))"), out);
+        }
+        assertEquals(Evaluator.eval(cache.load(source, false)), SExpr.Cons.of(SExpr.Atom.of("b")));
+    }
+
+    @Test
+    public void shouldParseProgramsOfCorruptImages() throws IOException, AnalyzerException {
+        final Path directory = Files.createTempDirectory("plisp");
+        final Cache cache = new Cache(directory, Cache.DEFAULT_CAPACITY);
+        final File source = sourceOf("(car '(a b))");
+        cache.load(source, false);
+
+        final Path image = filesOf(directory, ".plpi").get(0);
+        final byte[] bytes = Files.readAllBytes(image);
+        Arrays.fill(bytes, 32, bytes.length, (byte) 0xff);
+        Files.write(image, bytes);
+        assertEquals(Evaluator.eval(cache.load(source, false)), SExpr.Atom.of("a"));
+        assertEquals(Evaluator.eval(cache.load(source, false)), SExpr.Atom.of("a"));
+    }
+
+    @Test
+    public void shouldParseChangedProgram() throws IOException, AnalyzerException {
+        final Path directory = Files.createTempDirectory("plisp");
+        final Cache cache = new Cache(directory, Cache.DEFAULT_CAPACITY);
+        final File source = sourceOf("(car '(a b))");
+        cache.load(source, false);
+
+        Files.write(source.toPath(), "(car '(c d))".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Evaluator.eval(cache.load(source, false)), SExpr.Atom.of("c"));
+        assertEquals(filesOf(directory, ".plpi").size(), 2);
+    }
+
+    @Test
+    public void shouldRememberAnalyzedPrograms() throws IOException, AnalyzerException {
+        final Path directory = Files.createTempDirectory("plisp");
+        final Cache cache = new Cache(directory, Cache.DEFAULT_CAPACITY);
+        cache.load(sourceOf("(car '(a b))"), true);
+        assertEquals(filesOf(directory, ".analyzed").size(), 1);
+    }
+
+    @Test
+    public void shouldNotRememberFailedAnalyses() throws IOException {
+        final Path directory = Files.createTempDirectory("plisp");
+        final Cache cache = new Cache(directory, Cache.DEFAULT_CAPACITY);
+        final File source = sourceOf("(car x)");
+        for (int i = 0; i < 2; ++i) {
+            try {
+                cache.load(source, true);
+                throw new AssertionError("Expected analyzer exception.");
+
+            } catch (final AnalyzerException e) {
+                assertTrue(filesOf(directory, ".analyzed").isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void shouldEvictEntriesBeyondCapacity() throws IOException, AnalyzerException {
+        final Path directory = Files.createTempDirectory("plisp");
+        final Cache cache = new Cache(directory, 3 * 4096);
+        for (int i = 0; i < 8; ++i) {
+            assertEquals(Evaluator.eval(cache.load(sourceOf("(car '(a" + i + "))"), false)), SExpr.Atom.of("a" + i));
+        }
+        assertTrue(filesOf(directory, "").size() <= 3);
+        assertFalse(filesOf(directory, ".plpi").isEmpty());
+        assertTrue(filesOf(directory, ".tmp").isEmpty());
+    }
+
+    private static File sourceOf(final String source) throws IOException {
+        final File file = File.createTempFile("plisp", ".plp");
+        file.deleteOnExit();
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<Path> filesOf(final Path directory, final String suffix) throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.runtime.Budget;
+import io.github.emanuelpalm.plisp.runtime.Printer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestDaemon {
+    private static final String TAK = "((label lt (lambda (a b) (cond ((eq b '()) '()) ((eq a '()) 't) " +
+            "('t (lt (cdr a) (cdr b)))))) ((label tak (lambda (x y z) (cond ((lt y x) " +
+            "(tak (tak (cdr x) y z) (tak (cdr y) z x) (tak (cdr z) x y))) ('t z)))) (tak '%s '%s '())))";
+
+    private Daemon daemon;
+
+    @BeforeClass
+    public void start() throws IOException {
+        daemon = new Daemon(0, 4, 500, () -> new Budget(Budget.UNLIMITED, Budget.UNLIMITED, 1000),
+                new Printer(8, 8));
+        final Thread thread = new Thread(() -> {
+            try {
+                daemon.run();
+
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @AfterClass
+    public void stop() throws IOException {
+        daemon.close();
+    }
+
+    @Test
+    public void shouldEvaluateManyRequestsPerConnection() throws IOException {
+        try (final Client client = new Client(daemon.port())) {
+            for (int i = 0; i < 100; ++i) {
+                final Client.Reply reply = client.eval("(cons 'a" + i + " '(b))");
+                assertTrue(reply.isOk(), reply.body());
+                assertEquals(reply.body(), "(a" + i + " b)");
+            }
+            assertEquals(client.eval(String.format(TAK, "(1 1 1 1 1 1)", "(1 1 1)")).body(), "(1 1 1)");
+        }
+    }
+
+    @Test
+    public void shouldEvaluateConnectionsConcurrently() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 32; ++i) {
+                final String atom = "a" + i;
+                replies.add(executor.submit(() -> {
+                    try (final Client client = new Client(daemon.port())) {
+                        return client.eval("(car '(" + atom + "))").body();
+                    }
+                }));
+            }
+            for (int i = 0; i < replies.size(); ++i) {
+                assertEquals(replies.get(i).get(), "a" + i);
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReportErrors() throws IOException {
+        try (final Client client = new Client(daemon.port())) {
+            final Client.Reply parser = client.eval("(car '(a)");
+            assertFalse(parser.isOk());
+            assertTrue(parser.body().startsWith("Parser error: "), parser.body());
+
+            final Client.Reply runtime = client.eval("(cond ('() 'a))");
+            assertFalse(runtime.isOk());
+            assertTrue(runtime.body().startsWith("Runtime error: "), runtime.body());
+
+            final Client.Reply budget = client.eval("((label f (lambda (x) (f x))) (f 'a))");
+            assertFalse(budget.isOk());
+            assertTrue(budget.body().contains("Evaluation budget exhausted."), budget.body());
+
+            assertEquals(client.eval("'(a b c d e f g h i j)").body(), "(a b c d e f g h ...)");
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldTimeOutLongEvaluations() throws IOException {
+        try (final Client client = new Client(daemon.port())) {
+            final Client.Reply reply = client.eval(String.format(TAK, "(1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 " +
+                    "1 1 1 1 1 1 1 1)", "(1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1)"));
+            assertFalse(reply.isOk());
+            assertEquals(reply.body(), "Runtime error: Evaluation timed out after 500 ms.");
+            assertEquals(client.eval("'a").body(), "a");
+        }
+    }
+
+    @Test
+    public void shouldEvaluateChangedFiles() throws IOException {
+        final Path file = Files.createTempFile("plisp", ".plp");
+        try (final Client client = new Client(daemon.port())) {
+            Files.write(file, "'a".getBytes(StandardCharsets.UTF_8));
+            assertEquals(client.eval(file).body(), "a");
+            assertEquals(client.eval(file).body(), "a");
+
+            Files.write(file, "'(b c)".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+            assertEquals(client.eval(file).body(), "(b c)");
+
+            Files.delete(file);
+            assertTrue(client.eval(file).body().startsWith("File error: "));
+
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void shouldReadLinesAsUtf8() throws IOException {
+        final String header = "FILE /tmp/\u00e5\u00e4\u00f6.plp";
+        final InputStream in = new ByteArrayInputStream((header + "\n").getBytes(StandardCharsets.UTF_8));
+        assertEquals(Daemon.readLine(in), header);
+        assertNull(Daemon.readLine(in));
+    }
+
+    @Test
+    public void shouldReportDeeplyNestedSourcesAsErrors() throws IOException {
+        final StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 1000000; ++i) {
+            source.append('(');
+        }
+        try (final Client client = new Client(daemon.port())) {
+            final Client.Reply reply = client.eval(source.toString());
+            assertFalse(reply.isOk());
+            assertEquals(reply.body(), "Parser error: Expression nested too deeply.");
+            assertEquals(client.eval("'a").body(), "a");
+        }
+    }
+
+    @Test
+    public void shouldCloseConnectionsSendingUnknownRequests() throws IOException {
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.port());
+             final InputStream in = socket.getInputStream();
+             final OutputStream out = socket.getOutputStream()) {
+            out.write("HELLO\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertTrue(Daemon.readLine(in).startsWith("ERROR "));
+            assertEquals(Daemon.readBody(in, "Request error: Unknown request.".length()),
+                    "Request error: Unknown request.");
+            assertEquals(in.read(), -1);
+        }
+    }
+}
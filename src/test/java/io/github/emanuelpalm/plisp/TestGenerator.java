@@ -0,0 +1,64 @@
+package io.github.emanuelpalm.plisp;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import io.github.emanuelpalm.plisp.runtime.Evaluator;
+import io.github.emanuelpalm.plisp.runtime.Resolver;
+import io.github.emanuelpalm.plisp.runtime.SExpr;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestGenerator {
+    @Test(dataProvider = "parameters")
+    public void shouldGenerateValidDataPrograms(final long size, final int length, final int depth, final int nesting)
+            throws IOException {
+        final String program = dataOf(new Generator(7, size, length, depth, nesting, 1, 16, 1));
+        assertTrue(program.length() >= size && program.length() < size + 64 * (depth + 1), program);
+        Evaluator.eval(Parser.parse(program));
+    }
+
+    @Test(dataProvider = "parameters")
+    public void shouldGenerateValidComputePrograms(final long size, final int length, final int depth,
+                                                   final int nesting) throws IOException {
+        final StringWriter out = new StringWriter();
+        new Generator(7, size, length, depth, nesting, 5, 8, 3).writeCompute(out);
+        final SExpr e = Parser.parse(out.toString());
+        assertEquals(Evaluator.eval(Resolver.resolve(e)), Evaluator.eval(e));
+    }
+
+    @DataProvider(name = "parameters")
+    public Object[][] provideParameters() {
+        return new Object[][]{
+                {0, 1, 0, 0},
+                {100, 8, 0, 25},
+                {1000, 8, 8, 25},
+                {1000, 2, 100, 90},
+                {10000, 100, 4, 10},
+        };
+    }
+
+    @Test
+    public void shouldBeDeterministic() throws IOException {
+        assertEquals(dataOf(new Generator(1, 1000, 8, 8, 25, 1, 16, 1)),
+                dataOf(new Generator(1, 1000, 8, 8, 25, 1, 16, 1)));
+        assertNotEquals(dataOf(new Generator(1, 1000, 8, 8, 25, 1, 16, 1)),
+                dataOf(new Generator(2, 1000, 8, 8, 25, 1, 16, 1)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectInvalidParameters() {
+        new Generator(0, 1000, 0, 8, 25, 1, 16, 1);
+    }
+
+    private static String dataOf(final Generator generator) throws IOException {
+        final StringWriter out = new StringWriter();
+        generator.writeData(out);
+        return out.toString();
+    }
+}
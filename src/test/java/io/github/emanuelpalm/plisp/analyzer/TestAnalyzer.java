@@ -35,6 +35,7 @@ public class TestAnalyzer {
                 new Object[]{"((label cadr (lambda (x) (car (cdr x)))) (cadr '(a b)))", Optional.empty()},
                 new Object[]{"((label cdar (lambda (x) (cdar (car x)))) cdar)", Optional.empty()},
                 new Object[]{"((lambda (x) (car (car (x)))) ((a) (b)))", Optional.empty()},
+                new Object[]{"(cons (future (car '(a))) (touch (future '(b))))", Optional.empty()},
 
                 new Object[]{"x", Optional.of(AnalyzerException.NotDefined.class)},
                 new Object[]{"(a b c)", Optional.of(AnalyzerException.NotDefined.class)},
@@ -45,6 +46,7 @@ public class TestAnalyzer {
                 new Object[]{"((label cdar (lambda (x) (cdr (cadar x)))) cdar)", Optional.of(AnalyzerException.NotDefined.class)},
                 new Object[]{"((lambda (x) (car (car (x)))) 'a 'b)", Optional.of(AnalyzerException.LambdaMisuse.class)},
                 new Object[]{"((lambda (x) (eq x y)) 'a)", Optional.of(AnalyzerException.NotDefined.class)},
+                new Object[]{"(future 'a 'b)", Optional.of(AnalyzerException.PrototypeMismatch.class)},
         };
     }
 }
@@ -0,0 +1,137 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestBudget {
+    private static final String LOOP = "((label f (lambda (x) (f (cons x x)))) (f 'a))";
+    private static final String TAK = "((label lt (lambda (a b) (cond ((eq b '()) '()) ((eq a '()) 't) " +
+            "('t (lt (cdr a) (cdr b)))))) ((label tak (lambda (x y z) (cond ((lt y x) " +
+            "(tak (tak (cdr x) y z) (tak (cdr y) z x) (tak (cdr z) x y))) ('t z)))) " +
+            "(tak '(1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1) '(1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1) " +
+            "'())))";
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluatorWithinBudget(final String input, final SExpr expected) {
+        final SExpr e = Parser.parse(input);
+        assertEquals(Evaluator.eval(e, new Budget(10000, 10000, 1000)), expected);
+        assertEquals(Evaluator.eval(Resolver.resolve(e), new Budget(10000, 10000, 1000)), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test
+    public void shouldEvaluateFuturesWithinBudget() {
+        final Budget budget = new Budget(Budget.UNLIMITED, Budget.UNLIMITED, Budget.UNLIMITED);
+        assertEquals(Evaluator.eval(Parser.parse("(cons (future 'a) (touch (future '(b))))"), budget),
+                Parser.parse("(a b)"));
+        assertEquals(budget.conses(), 1);
+    }
+
+    @Test
+    public void shouldCountStepsConsesAndDepth() {
+        final Budget budget = new Budget(Budget.UNLIMITED, Budget.UNLIMITED, Budget.UNLIMITED);
+        Evaluator.eval(Parser.parse("(cons 'a (cons 'b '()))"), budget);
+        assertEquals(budget.steps(), 5);
+        assertEquals(budget.conses(), 2);
+        assertEquals(budget.depth(), 3);
+    }
+
+    @Test(dataProvider = "limits")
+    public void shouldStopRunawayEvaluations(final long steps, final long conses, final long depth,
+                                            final boolean isResolved) {
+        final Budget budget = new Budget(steps, conses, depth);
+        try {
+            if (isResolved) {
+                Evaluator.eval(Resolver.resolve(Parser.parse(LOOP)), budget);
+
+            } else {
+                Evaluator.eval(Parser.parse(LOOP), budget);
+            }
+            fail();
+
+        } catch (final SExprException.BudgetExhausted e) {
+            assertTrue(e.budget() == budget);
+            assertTrue(budget.steps() <= steps && budget.conses() <= conses && budget.depth() <= depth);
+            assertTrue(budget.steps() == steps || budget.conses() == conses || budget.depth() == depth);
+            assertTrue(e.getMessage().contains("Evaluation budget exhausted."), e.getMessage());
+        }
+    }
+
+    @DataProvider(name = "limits")
+    public Object[][] provideLimits() {
+        return new Object[][]{
+                {1000, Budget.UNLIMITED, Budget.UNLIMITED, false},
+                {Budget.UNLIMITED, 100, Budget.UNLIMITED, false},
+                {Budget.UNLIMITED, Budget.UNLIMITED, 500, false},
+                {1000, Budget.UNLIMITED, Budget.UNLIMITED, true},
+                {Budget.UNLIMITED, 100, Budget.UNLIMITED, true},
+                {Budget.UNLIMITED, Budget.UNLIMITED, 500, true},
+        };
+    }
+
+    @Test
+    public void shouldReportUsageOfEachLimit() {
+        final Budget budget = new Budget(20, Budget.UNLIMITED, 100);
+        try {
+            Evaluator.eval(Parser.parse(LOOP), budget);
+            fail();
+
+        } catch (final SExprException.BudgetExhausted e) {
+            assertTrue(e.getMessage().contains("Used 20 of 20 steps, " + budget.conses() + " of unlimited conses and "
+                    + budget.depth() + " of 100 depth."), e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldRestoreDepthAfterFailedEvaluations() {
+        final Budget budget = new Budget(Budget.UNLIMITED, Budget.UNLIMITED, 10);
+        for (int i = 0; i < 10; ++i) {
+            try {
+                Evaluator.eval(Parser.parse("(car (cdr (unknown-atom)))"), budget);
+                fail();
+
+            } catch (final SExprException.AtomNotFound e) {
+                assertEquals(budget.depth(), 3);
+            }
+        }
+        assertEquals(Evaluator.eval(Parser.parse("(car (cdr '(a b)))"), budget), SExpr.Atom.of("b"));
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldStopCancelledEvaluations() throws InterruptedException {
+        final Budget budget = new Budget(Budget.UNLIMITED, Budget.UNLIMITED, Budget.UNLIMITED);
+        final Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+
+            } catch (final InterruptedException e) {
+                // Cancel immediately.
+            }
+            budget.cancel();
+        });
+        canceller.start();
+        try {
+            Evaluator.eval(Resolver.resolve(Parser.parse(TAK)), budget);
+            fail();
+
+        } catch (final SExprException.BudgetExhausted e) {
+            assertTrue(budget.isCancelled());
+            assertTrue(e.getMessage().endsWith("Cancelled."), e.getMessage());
+        }
+        canceller.join();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectNegativeLimits() {
+        new Budget(-1, 0, 0);
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestBytecodeCompiler {
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(BytecodeCompiler.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test(dataProvider = "futures")
+    public void shouldEvaluateFuturesLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(BytecodeCompiler.eval(input), expected);
+    }
+
+    @DataProvider(name = "futures")
+    public Object[][] providerFuture() {
+        return new TestEvaluator().providerFuture();
+    }
+
+    @Test
+    public void shouldReuseCompiledProgramBetweenEvaluations() {
+        final Function<Environment, SExpr> f = BytecodeCompiler.compile(Parser.parse("((label f (lambda (x) (car x))) " +
+                "(cons (f '(a b)) (cons (f 'c) (eq (f '(d)) 'd))))"));
+
+        assertEquals(f.apply(Environment.EMPTY), Parser.parse("(a . (c . t))"));
+        assertEquals(f.apply(Environment.EMPTY), Parser.parse("(a . (c . t))"));
+    }
+
+    @Test
+    public void shouldCompileOnlyLabelsWithoutDynamicReferences() {
+        final Program p = Resolver.resolve(Parser.parse("((label g (lambda (y) (car y))) " +
+                "((label f (lambda (x) (cons (g x) x))) ((label h (lambda (z) (cons z w))) (f '(a)))))"));
+
+        final Set<String> names = new HashSet<>();
+        for (final Resolved.Definition d : BytecodeCompiler.compilableLabelsOf(p)) {
+            names.add(d.name().toString());
+        }
+        assertEquals(names, new HashSet<>(Arrays.asList("f", "g")));
+        assertEquals(BytecodeCompiler.compile(p).apply(Environment.EMPTY), Parser.parse("(a . (a))"));
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowSExprExceptionCondExhaustedFromCompiledLabel() {
+        BytecodeCompiler.eval("((label f (lambda (x) (cond ((eq x 'a) 'b)))) (f 'c))");
+    }
+
+    @Test(expectedExceptions = SExprException.AtomNotFound.class)
+    public void shouldThrowSExprExceptionAtomNotFound() {
+        BytecodeCompiler.eval("(unknown-atom 'a 'b)");
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowSExprExceptionCondExhausted() {
+        BytecodeCompiler.eval("(cond ((eq 'a 'b) '10))");
+    }
+
+    @Test(expectedExceptions = SExprException.class)
+    public void shouldThrowSExprException() {
+        BytecodeCompiler.eval("(('() 'a 'b))");
+    }
+}
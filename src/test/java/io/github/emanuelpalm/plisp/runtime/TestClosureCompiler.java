@@ -0,0 +1,55 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.function.Function;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestClosureCompiler {
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(ClosureCompiler.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test(dataProvider = "futures")
+    public void shouldEvaluateFuturesLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(ClosureCompiler.eval(input), expected);
+    }
+
+    @DataProvider(name = "futures")
+    public Object[][] providerFuture() {
+        return new TestEvaluator().providerFuture();
+    }
+
+    @Test
+    public void shouldReuseCompiledProgramBetweenEvaluations() {
+        final Function<Environment, SExpr> f = ClosureCompiler.compile(Parser.parse("((label f (lambda (x) (car x))) " +
+                "(cons (f '(a b)) (cons (f 'c) (eq (f '(d)) 'd))))"));
+
+        assertEquals(f.apply(Environment.EMPTY), Parser.parse("(a . (c . t))"));
+        assertEquals(f.apply(Environment.EMPTY), Parser.parse("(a . (c . t))"));
+    }
+
+    @Test(expectedExceptions = SExprException.AtomNotFound.class)
+    public void shouldThrowSExprExceptionAtomNotFound() {
+        ClosureCompiler.eval("(unknown-atom 'a 'b)");
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowSExprExceptionCondExhausted() {
+        ClosureCompiler.eval("(cond ((eq 'a 'b) '10))");
+    }
+
+    @Test(expectedExceptions = SExprException.class)
+    public void shouldThrowSExprException() {
+        ClosureCompiler.eval("(('() 'a 'b))");
+    }
+}
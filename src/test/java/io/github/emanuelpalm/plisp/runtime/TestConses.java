@@ -0,0 +1,90 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestConses {
+    @Test
+    public void shouldInternEqualConsesIntoSameCons() {
+        final SExpr a = Conses.intern(Parser.parse("(a (b c) (b c))"));
+        final SExpr b = Conses.intern(Parser.parse("(a (b c) (b c))"));
+        assertSame(a, b);
+        assertSame(a.cdr().car(), a.cdr().cdr().car());
+        assertTrue(((SExpr.Cons) a).isCanonical());
+    }
+
+    @Test
+    public void shouldKeepCanonicalExpressionsAsIs() {
+        final SExpr a = Conses.intern(Parser.parse("(a b)"));
+        assertSame(Conses.intern(a), a);
+        assertSame(Conses.cons(a.car(), a.cdr()), a);
+        assertSame(Conses.intern(SExpr.NIL), SExpr.NIL);
+    }
+
+    @Test
+    public void shouldCompareCanonicalAndOtherConsesStructurally() {
+        final SExpr a = Conses.intern(Parser.parse("(a (b c))"));
+        assertEquals(a, Parser.parse("(a (b c))"));
+        assertEquals(Parser.parse("(a (b c))"), a);
+        assertNotEquals(a, Conses.intern(Parser.parse("(a (b d))")));
+        assertFalse(((SExpr.Cons) Parser.parse("(a b)")).isCanonical());
+    }
+
+    @Test
+    public void shouldInternLongLists() {
+        SExpr e = SExpr.NIL;
+        for (int i = 0; i < 100000; ++i) {
+            e = new SExpr.Cons(SExpr.Atom.of("x"), e);
+        }
+        final SExpr a = Conses.intern(e);
+        assertEquals(a, e);
+        assertSame(a.cdr(), Conses.intern(e.cdr()));
+    }
+
+    @Test
+    public void shouldEvictDroppedListsAtOnce() throws InterruptedException {
+        SExpr e = SExpr.NIL;
+        for (int i = 0; i < 100000; ++i) {
+            e = Conses.cons(SExpr.Atom.of("dropped"), e);
+        }
+        final int expected = Conses.size() - 100000;
+        assertTrue(expected >= 0);
+
+        e = null;
+        for (int i = 0; i < 10 && Conses.size() > expected; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(Conses.size() <= expected, "Size " + Conses.size() + " > " + expected);
+    }
+
+    @Test
+    public void shouldInternSameConsFromManyThreads() throws InterruptedException, ExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<SExpr>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; ++i) {
+                futures.add(executor.submit(() -> Conses.intern(Parser.parse("(concurrent (list))"))));
+            }
+            final SExpr expected = Conses.intern(Parser.parse("(concurrent (list))"));
+            for (final Future<SExpr> future : futures) {
+                assertSame(future.get(), expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestEnvironment {
+    private static final SExpr.Atom A = SExpr.Atom.of("a");
+    private static final SExpr.Atom B = SExpr.Atom.of("b");
+    private static final SExpr.Atom C = SExpr.Atom.of("c");
+
+    @Test
+    public void shouldFindBoundParameters() {
+        final Environment env = Environment.EMPTY.bind(SExpr.Cons.of(A, B), SExpr.Cons.of(B, C));
+        assertEquals(env.lookup(A), B);
+        assertEquals(env.lookup(B), C);
+    }
+
+    @Test
+    public void shouldBindMissingArgumentsToNil() {
+        final Environment env = Environment.EMPTY.bind(SExpr.Cons.of(A, B), SExpr.Cons.of(C));
+        assertEquals(env.lookup(B), SExpr.NIL);
+    }
+
+    @Test
+    public void shouldFindMostRecentBinding() {
+        final Environment env = Environment.EMPTY
+                .label(A, B)
+                .bind(SExpr.Cons.of(A), SExpr.Cons.of(C));
+        assertEquals(env.lookup(A), C);
+        assertEquals(env.label(A, A).lookup(A), A);
+    }
+
+    @Test
+    public void shouldFindLabelsBelowDeepRecursion() {
+        Environment env = Environment.EMPTY.label(C, A);
+        for (int i = 0; i < 10000; ++i) {
+            env = env.bind(SExpr.Cons.of(A, B), SExpr.Cons.of(SExpr.Atom.of("x" + i), B));
+        }
+        assertEquals(env.lookup(C), A);
+        assertEquals(env.lookup(A), SExpr.Atom.of("x9999"));
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldFindLabelsBelowDeepRecursionBindingCollidingSymbols() {
+        SExpr.Atom colliding = null;
+        for (int i = 0; colliding == null; ++i) {
+            final SExpr.Atom atom = SExpr.Atom.of("p" + i);
+            if (atom != C && (atom.symbol().id() & 63) == (C.symbol().id() & 63)) {
+                colliding = atom;
+            }
+        }
+        Environment env = Environment.EMPTY.label(C, A);
+        for (int i = 0; i < 100000; ++i) {
+            env = env.bind(SExpr.Cons.of(colliding), SExpr.Cons.of(B));
+            assertEquals(env.lookup(C), A);
+        }
+    }
+
+    @Test
+    public void shouldNotAffectOuterLabelsWhenLabeling() {
+        final Environment outer = Environment.EMPTY.label(A, A);
+        final Environment inner = outer.bind(SExpr.Cons.of(B), SExpr.Cons.of(B)).label(A, C).label(C, C);
+        assertEquals(outer.lookup(A), A);
+        assertEquals(inner.lookup(A), C);
+        assertEquals(inner.lookup(B), B);
+        assertEquals(inner.lookup(C), C);
+        for (int i = 0; i < 1000; ++i) {
+            final SExpr.Atom atom = SExpr.Atom.of("l" + i);
+            assertEquals(inner.label(atom, atom).lookup(atom), atom);
+            assertEquals(inner.label(atom, atom).lookup(A), C);
+        }
+    }
+
+    @Test
+    public void shouldKeepLambdaBindingsWhenLabeling() {
+        final Environment env = Environment.EMPTY
+                .bind(SExpr.Cons.of(A), SExpr.Cons.of(B))
+                .label(C, C);
+        assertEquals(env.lookup(A), B);
+        assertEquals(env.lookup(C), C);
+    }
+
+    @Test(expectedExceptions = SExprException.AtomNotFound.class)
+    public void shouldThrowAtomNotFound() {
+        Environment.EMPTY.bind(SExpr.Cons.of(A), SExpr.Cons.of(B)).lookup(C);
+    }
+}
@@ -1,9 +1,15 @@
 package io.github.emanuelpalm.plisp.runtime;
 
+import io.github.emanuelpalm.plisp.parser.Parser;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestEvaluator {
     @Test(dataProvider = "functions")
@@ -41,6 +47,83 @@ public class TestEvaluator {
         };
     }
 
+    @Test(dataProvider = "futures")
+    public void shouldEvaluateFutures(final String input, final SExpr expected) {
+        assertEquals(Evaluator.eval(input), expected);
+        assertEquals(Evaluator.eval(Resolver.resolve(Parser.parse(input))), expected);
+    }
+
+    @DataProvider(name = "futures")
+    public Object[][] providerFuture() {
+        return new Object[][]{
+                new Object[]{"(touch (future 'a))", SExpr.Atom.of("a")},
+                new Object[]{"(future (future 'a))", SExpr.Atom.of("a")},
+                new Object[]{"(atom (future '(a)))", Evaluator.F},
+                new Object[]{"(eq (future 'a) 'a)", Evaluator.T},
+                new Object[]{"(eq (cons 'a (future '(b))) '(a b))", Evaluator.T},
+                new Object[]{"(car (future '(a b)))", SExpr.Atom.of("a")},
+                new Object[]{"(cdr (future '(a b)))", Parser.parse("(b)")},
+                new Object[]{"(cond ((future (eq 'a 'b)) '1) ((future 't) '2))", SExpr.Atom.of("2")},
+                new Object[]{"(cons (future 'a) (future '(b)))", Parser.parse("(a b)")},
+                new Object[]{"((lambda (x) (cons x x)) (future 'a))", Parser.parse("(a . a)")},
+                new Object[]{"((lambda (f) (f '(a))) (future 'car))", SExpr.Atom.of("a")},
+                new Object[]{"((label subst (lambda (x y z) (cond " +
+                        "((atom z) (cond ((eq z y) x) ('t z))) " +
+                        "('t (cons (future (subst x y (car z))) (subst x y (cdr z))))))) " +
+                        "(subst 'm 'b '((a b) (a (b c)) b)))", Parser.parse("((a m) (a (m c)) m)")},
+        };
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldNotTraverseListsWithFuturesWhenComparingToNil() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final SExpr.Future pending = SExpr.Future.of(() -> {
+            try {
+                latch.await();
+
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return SExpr.NIL;
+        });
+        try {
+            final SExpr[] elements = new SExpr[100000];
+            Arrays.fill(elements, SExpr.Atom.of("a"));
+            final SExpr list = SExpr.Vector.of(elements, pending);
+            final SExpr e = SExpr.Cons.of(SExpr.Atom.of("eq"), SExpr.Cons.of(SExpr.Atom.of("quote"), list),
+                    Parser.parse("'()"));
+
+            assertEquals(Evaluator.eval(e), Evaluator.F);
+            assertEquals(Evaluator.eval(Resolver.resolve(e)), Evaluator.F);
+            assertEquals(ClosureCompiler.eval(e), Evaluator.F);
+            assertEquals(BytecodeCompiler.eval(e), Evaluator.F);
+            assertFalse(pending.isDone());
+
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void shouldEvaluateFuturesInParallel() {
+        final SExpr f = Evaluator.eval(Parser.parse("(future 'a)"), Environment.EMPTY);
+        assertTrue(f instanceof SExpr.Future);
+        assertEquals(SExpr.Future.touch(f), SExpr.Atom.of("a"));
+        assertTrue(((SExpr.Future) f).isDone());
+    }
+
+    @Test
+    public void shouldTouchAllFuturesInResults() {
+        final SExpr e = Evaluator.eval("(cons (future 'a) (cons (future (cons 'b (future '()))) '()))");
+        assertEquals(e, Parser.parse("(a (b))"));
+        assertFalse(e.car() instanceof SExpr.Future || e.cdr().car().cdr() instanceof SExpr.Future);
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowExceptionsOfFuturesWhenTouched() {
+        Evaluator.eval("(touch (future (cond ((eq 'a 'b) '10))))");
+    }
+
     @Test(expectedExceptions = SExprException.AtomNotFound.class)
     public void shouldThrowSExprExceptionAtomNotFound() {
         Evaluator.eval("(unknown-atom 'a 'b)");
@@ -0,0 +1,126 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import com.sun.management.ThreadMXBean;
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestHeapMachine {
+    private static final String COPY = "((label copy (lambda (x) (cond ((eq x '()) '()) ('t (cons (car x) (copy (cdr x)))))))";
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(HeapMachine.eval(input), expected);
+    }
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluatorWhileCollectingGarbage(final String input, final SExpr expected) {
+        assertEquals(new HeapMachine(Parser.parse(input), 2).eval(), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test
+    public void shouldEvaluateDeepRecursionWithoutStackOverflow() {
+        final String program = "((label last (lambda (x) (cond ((eq (cdr x) '()) (car x)) ('t (last (cdr x)))))) " +
+                COPY + " (last (copy " + listOf(100000, "a") + "))))";
+
+        assertEquals(HeapMachine.eval(program), SExpr.Atom.of("b"));
+    }
+
+    @Test
+    public void shouldEvaluateFramesReferredToByContinuationsLikeMachine() {
+        final String program = "((label f (lambda (x y) (cond ((eq x '()) y) " +
+                "('t (cons (car x) (g (cdr x) ((label h (lambda (z) (cons z y))) (car x)))))))) " +
+                "((label g (lambda (y x) (cond ((eq y '()) x) ('t (f y (cons (car y) x)))))) " +
+                "(f " + listOf(200, "a") + " '(c))))";
+
+        assertEquals(new HeapMachine(Parser.parse(program), 2).eval(), Machine.eval(program));
+    }
+
+    @Test
+    public void shouldKeepHeapSizeFlatWhenGarbageDoesNotAccumulate() {
+        final String program = "((label loop (lambda (n x) (cond ((eq n '()) x) ('t (loop (cdr n) (copy x)))))) " +
+                COPY + " (loop " + listOf(1000, "i") + " " + listOf(100, "a") + ")))";
+        final HeapMachine machine = new HeapMachine(Parser.parse(program), 1024);
+
+        assertEquals(machine.eval().size(), 101);
+        assertTrue(machine.heap().collections() > 10);
+        assertTrue(machine.heap().capacity() <= 4096);
+    }
+
+    @Test
+    public void shouldAllocateNoJvmObjectsPerCell() {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Allocation measurements not supported.");
+        }
+        final String program = "((label loop (lambda (n x) (cond ((eq n '()) (eq x x)) ('t (loop (cdr n) (copy x)))))) " +
+                COPY + " (loop " + listOf(1000, "i") + " " + listOf(100, "a") + ")))";
+        final SExpr e = Parser.parse(program);
+        new HeapMachine(e, 4096).eval();
+
+        final HeapMachine machine = new HeapMachine(e, 4096);
+        final long id = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(id);
+        machine.eval();
+        final long bytes = threads.getThreadAllocatedBytes(id) - before;
+
+        assertTrue(machine.heap().allocated() > 100000);
+        assertTrue(bytes < machine.heap().allocated(), bytes + " bytes allocated for "
+                + machine.heap().allocated() + " cells.");
+    }
+
+    @Test
+    public void shouldReportPositionsOfOffendingExpressions() {
+        final String program = "((label f (lambda (x) (cond ((eq x 'a) (unknown-atom x))))) (f (car (cons 'a '(b c)))))";
+        final SExprException expected = expectException(() -> Machine.eval(program));
+        final SExprException actual = expectException(() -> new HeapMachine(Parser.parse(program), 2).eval());
+
+        assertNotNull(expected);
+        assertEquals(actual.getMessage(), expected.getMessage());
+    }
+
+    @Test(expectedExceptions = SExprException.AtomNotFound.class)
+    public void shouldThrowSExprExceptionAtomNotFound() {
+        HeapMachine.eval("(unknown-atom 'a 'b)");
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowSExprExceptionCondExhausted() {
+        HeapMachine.eval("(cond ((eq 'a 'b) '10))");
+    }
+
+    @Test(expectedExceptions = SExprException.class)
+    public void shouldThrowSExprException() {
+        HeapMachine.eval("(('() 'a 'b))");
+    }
+
+    private static String listOf(final int size, final String element) {
+        final StringBuilder list = new StringBuilder("'(");
+        for (int i = 0; i < size; ++i) {
+            list.append(element).append(' ');
+        }
+        return list.append("b)").toString();
+    }
+
+    private static SExprException expectException(final Runnable runnable) {
+        try {
+            runnable.run();
+            return null;
+
+        } catch (final SExprException e) {
+            return e;
+        }
+    }
+}
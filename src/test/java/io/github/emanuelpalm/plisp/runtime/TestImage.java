@@ -0,0 +1,182 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestImage {
+    @Test(dataProvider = "expressions")
+    public void shouldReadWrittenExpression(final String source) throws IOException {
+        final SExpr e = Parser.parse(source);
+        assertEquals(roundTrip(e).toString(), e.toString());
+    }
+
+    @DataProvider(name = "expressions")
+    public Object[][] provideExpressions() {
+        return new Object[][]{
+                {"a"},
+                {"()"},
+                {"(a)"},
+                {"(a . b)"},
+                {"(a (b (c)) () (d . e))"},
+                {"((label f (lambda (x) (cond ((atom x) x) ('t (f (car x)))))) (f '((a b) c)))"},
+        };
+    }
+
+    @Test
+    public void shouldReadInternedAtoms() throws IOException {
+        final SExpr e = roundTrip(Parser.parse("(abc abc)"));
+        assertSame(((SExpr.Atom) e.car()).symbol(), Symbols.intern("abc"));
+        assertSame(((SExpr.Atom) e.cdr().car()).symbol(), Symbols.intern("abc"));
+    }
+
+    @Test
+    public void shouldHandleLongLists() throws IOException {
+        SExpr e = SExpr.NIL;
+        for (int i = 0; i < 100000; ++i) {
+            e = new SExpr.Cons(new SExpr.Cons(SExpr.Atom.of("x"), SExpr.NIL), e);
+        }
+        SExpr f = roundTrip(e);
+        for (int i = 0; i < 100000; ++i) {
+            assertEquals(f.car().car(), SExpr.Atom.of("x"));
+            f = f.cdr();
+        }
+        assertSame(f, SExpr.NIL);
+    }
+
+    @Test
+    public void shouldPreserveSharedSubstructure() throws IOException {
+        final SExpr shared = Parser.parse("(b c)");
+        final SExpr e = roundTrip(SExpr.Cons.of(shared, shared, Parser.parse("(b c)")));
+        assertEquals(e.toString(), "((b c) (b c) (b c))");
+        assertSame(e.car(), e.cdr().car());
+        assertNotSame(e.car(), e.cdr().cdr().car());
+    }
+
+    @Test
+    public void shouldPreservePositions() throws IOException {
+        final SExpr e = Parser.parse("((lambda (x)\n    (cond ((atom x) y)))\n 'a)");
+        final SExpr f = roundTrip(e);
+        assertEquals(Positions.find(f), Positions.find(e));
+        assertEquals(Positions.find(f.car().cdr().cdr()), Positions.find(e.car().cdr().cdr()));
+        String expected = null, actual = null;
+        try {
+            Evaluator.eval(e);
+        } catch (final SExprException exception) {
+            expected = exception.getMessage();
+        }
+        try {
+            Evaluator.eval(f);
+        } catch (final SExprException exception) {
+            actual = exception.getMessage();
+        }
+        assertNotNull(expected);
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void shouldMapWrittenFile() throws IOException {
+        final File file = File.createTempFile("plisp", ".plpi");
+        file.deleteOnExit();
+        final SExpr e = Parser.parse("((label f (lambda (x) (cond ((atom x) x) ('t (f (car x)))))) (f '((a b) c)))");
+        try (final OutputStream out = new FileOutputStream(file)) {
+            Image.write(e, out);
+        }
+        assertTrue(Image.isImage(file));
+        final SExpr f = Image.map(file);
+        assertEquals(f, e);
+        assertEquals(Evaluator.eval(f), SExpr.Atom.of("a"));
+    }
+
+    @Test
+    public void shouldRejectCorruptImagesWhenVerifying() throws IOException {
+        final File file = File.createTempFile("plisp", ".plpi");
+        file.deleteOnExit();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Image.write(Parser.parse("(car '(a b))"), out);
+        final byte[] bytes = out.toByteArray();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(32 + 4 * buffer.getInt(8) + buffer.getInt(20) + 4, -1); // Cdr of first node.
+        Files.write(file.toPath(), bytes);
+
+        Image.map(file);
+        try {
+            Image.mapVerified(file);
+            throw new AssertionError("Expected IOException.");
+
+        } catch (final IOException e) {
+            assertEquals(e.getMessage(), "Corrupt plisp image.");
+        }
+    }
+
+    @Test
+    public void shouldRejectCyclicImagesWhenVerifying() throws IOException {
+        for (final int reference : new int[]{0 << 2 | 2, 0 << 2 | 3}) { // Unshared and shared node 0.
+            final File file = File.createTempFile("plisp", ".plpi");
+            file.deleteOnExit();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Image.write(Parser.parse("(car '(a b))"), out);
+            final byte[] bytes = out.toByteArray();
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.putInt(32 + 4 * buffer.getInt(8) + buffer.getInt(20) + 8 + 4, reference); // Cdr of second node.
+            Files.write(file.toPath(), bytes);
+
+            try {
+                Image.mapVerified(file);
+                throw new AssertionError("Expected IOException.");
+
+            } catch (final IOException e) {
+                assertEquals(e.getMessage(), "Corrupt plisp image.");
+            }
+        }
+    }
+
+    @Test
+    public void shouldVerifyImagesWithSharedSubstructure() throws IOException {
+        final File file = File.createTempFile("plisp", ".plpi");
+        file.deleteOnExit();
+        final SExpr shared = Parser.parse("(b c)");
+        final SExpr e = SExpr.Cons.of(shared, SExpr.Cons.of(shared, shared), Parser.parse("(b c)"));
+        try (final OutputStream out = new FileOutputStream(file)) {
+            Image.write(e, out);
+        }
+        assertEquals(Image.mapVerified(file), e);
+    }
+
+    @Test
+    public void shouldNotTakeSourceForImage() throws IOException {
+        final File file = File.createTempFile("plisp", ".plp");
+        file.deleteOnExit();
+        try (final OutputStream out = new FileOutputStream(file)) {
+            out.write("(car '(PLSP PLSP PLSP PLSP PLSP))".getBytes("UTF-8"));
+        }
+        assertFalse(Image.isImage(file));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectNonImages() throws IOException {
+        Image.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}));
+    }
+
+    private static SExpr roundTrip(final SExpr e) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Image.write(e, out);
+        return Image.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
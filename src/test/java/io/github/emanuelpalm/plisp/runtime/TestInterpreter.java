@@ -0,0 +1,49 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestInterpreter {
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(Interpreter.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test
+    public void shouldReuseSpecializedNodesBetweenEvaluations() {
+        final Interpreter interpreter = new Interpreter(Parser.parse("((label f (lambda (x) (car x))) " +
+                "(cons (f '(a b)) (cons (f 'c) (eq (f '(d)) 'd))))"));
+
+        assertEquals(interpreter.eval(), Parser.parse("(a . (c . t))"));
+        assertEquals(interpreter.eval(), Parser.parse("(a . (c . t))"));
+    }
+
+    @Test
+    public void shouldFallBackToGenericCallsWhenOperatorChanges() {
+        assertEquals(Interpreter.eval("((label g (lambda (f x) (f x))) " +
+                "(cons (g '(lambda (y) (cons y y)) 'a) (g 'car '(b c))))"), Parser.parse("((a . a) . b)"));
+    }
+
+    @Test(expectedExceptions = SExprException.AtomNotFound.class)
+    public void shouldThrowSExprExceptionAtomNotFound() {
+        Interpreter.eval("(unknown-atom 'a 'b)");
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowSExprExceptionCondExhausted() {
+        Interpreter.eval("(cond ((eq 'a 'b) '10))");
+    }
+
+    @Test(expectedExceptions = SExprException.class)
+    public void shouldThrowSExprException() {
+        Interpreter.eval("(('() 'a 'b))");
+    }
+}
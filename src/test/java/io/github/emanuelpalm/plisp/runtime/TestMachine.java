@@ -0,0 +1,46 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestMachine {
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(Machine.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test
+    public void shouldEvaluateDeepRecursionWithoutStackOverflow() {
+        final StringBuilder list = new StringBuilder("'(");
+        for (int i = 0; i < 100000; ++i) {
+            list.append("a ");
+        }
+        final String program = "((label last (lambda (x) (cond ((eq (cdr x) '()) (car x)) ('t (last (cdr x)))))) " +
+                "((label copy (lambda (x) (cond ((eq x '()) '()) ('t (cons (car x) (copy (cdr x))))))) " +
+                "(last (copy " + list.append("b)") + "))))";
+
+        assertEquals(Machine.eval(program), SExpr.Atom.of("b"));
+    }
+
+    @Test(expectedExceptions = SExprException.AtomNotFound.class)
+    public void shouldThrowSExprExceptionAtomNotFound() {
+        Machine.eval("(unknown-atom 'a 'b)");
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowSExprExceptionCondExhausted() {
+        Machine.eval("(cond ((eq 'a 'b) '10))");
+    }
+
+    @Test(expectedExceptions = SExprException.class)
+    public void shouldThrowSExprException() {
+        Machine.eval("(('() 'a 'b))");
+    }
+}
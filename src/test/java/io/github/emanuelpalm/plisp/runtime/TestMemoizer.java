@@ -0,0 +1,81 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestMemoizer {
+    private static final String SUBST = "((label subst (lambda (x y z) (cond " +
+            "((atom z) (cond ((eq z y) x) ('t z))) " +
+            "('t (cons (subst x y (car z)) (subst x y (cdr z))))))) " +
+            "(subst 'm 'b '((a b) (a b) (a b))))";
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(Memoizer.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test
+    public void shouldReuseResultsOfRepeatedCalls() {
+        final Memoizer m = new Memoizer(Resolver.resolve(Parser.parse(SUBST)), d -> true, 1024);
+        assertEquals(m.eval(), Parser.parse("((a m) (a m) (a m))"));
+        assertTrue(m.hits() > 0);
+
+        final long misses = m.misses();
+        assertEquals(m.eval(), Parser.parse("((a m) (a m) (a m))"));
+        assertEquals(m.misses(), misses);
+        assertEquals(m.evictions(), 0);
+    }
+
+    @Test
+    public void shouldOnlyMemoizeSelectedLabels() {
+        final Program p = Resolver.resolve(Parser.parse("((label f (lambda (x) (car x))) " +
+                "((label g (lambda (x) (f (f x)))) (cons (g '((a))) (g '((a))))))"));
+        final Memoizer m = new Memoizer(p, d -> d.name().equals(SExpr.Atom.of("g")), 1024);
+
+        assertEquals(m.eval(), Parser.parse("(a . a)"));
+        assertFalse(m.isMemoized(p.definitions().get(0)));
+        assertTrue(m.isMemoized(p.definitions().get(1)));
+        assertEquals(m.hits(), 1);
+        assertEquals(m.misses(), 1);
+    }
+
+    @Test
+    public void shouldNotMemoizeLabelsDependingOnDynamicEnvironment() {
+        final Program p = Resolver.resolve(Parser.parse("((label f (lambda (x) (cons x y))) " +
+                "(cons ((lambda (y) (f 'a)) 'b) ((lambda (y) (f 'a)) 'c)))"));
+        final Memoizer m = new Memoizer(p, d -> true, 1024);
+
+        assertEquals(m.eval(), Parser.parse("((a . b) . (a . c))"));
+        assertFalse(m.isMemoized(p.definitions().get(0)));
+        assertEquals(m.hits(), 0);
+    }
+
+    @Test
+    public void shouldEvictResultsWhenFull() {
+        final Memoizer m = new Memoizer(Resolver.resolve(Parser.parse(SUBST)), d -> true, 1);
+        assertEquals(m.eval(), Parser.parse("((a m) (a m) (a m))"));
+        assertTrue(m.evictions() > 0);
+    }
+
+    @Test
+    public void shouldSpreadCapacityOverStripes() {
+        for (final int capacity : new int[]{1, 3, 16, 100, 1023, Memoizer.DEFAULT_CAPACITY}) {
+            assertEquals(new Memoizer(Resolver.resolve(Parser.parse("'a")), d -> true, capacity).capacity(), capacity);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveCapacity() {
+        new Memoizer(Resolver.resolve(Parser.parse("'a")), d -> true, 0);
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestParallelEvaluator {
+    private static final String SUBST = "((label subst (lambda (x y z) (cond " +
+            "((atom z) (cond ((eq z y) x) ('t z))) " +
+            "('t (cons (subst x y (car z)) (subst x y (cdr z))))))) " +
+            "(subst 'm 'b '%s))";
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterClass
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(ParallelEvaluator.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test(dataProvider = "futures")
+    public void shouldEvaluateFuturesLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(ParallelEvaluator.eval(input), expected);
+    }
+
+    @DataProvider(name = "futures")
+    public Object[][] providerFuture() {
+        return new TestEvaluator().providerFuture();
+    }
+
+    @Test(dataProvider = "cutoffs")
+    public void shouldEvaluateLargeTreesLikeEvaluator(final int cutoff) {
+        final String tree = treeOf(10);
+        final Program p = Resolver.resolve(Parser.parse(String.format(SUBST, tree)));
+        final SExpr expected = Evaluator.eval(p);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(new ParallelEvaluator(p, pool, cutoff).eval(), expected);
+        }
+        assertTrue(expected.toString().contains("m") && !expected.toString().contains("b"));
+    }
+
+    @DataProvider(name = "cutoffs")
+    public Object[][] provideCutoffs() {
+        return new Object[][]{{0}, {1}, {ParallelEvaluator.DEFAULT_CUTOFF}, {Integer.MAX_VALUE}};
+    }
+
+    @Test
+    public void shouldThrowExceptionOfFirstFailingOperand() {
+        final Program p = Resolver.resolve(Parser.parse("((label f (lambda (x) (cond ((eq x 'a) (car x))))) " +
+                "(cons (f 'b) (f 'a)))"));
+        for (int i = 0; i < 10; ++i) {
+            try {
+                new ParallelEvaluator(p, pool, ParallelEvaluator.DEFAULT_CUTOFF).eval();
+                fail();
+
+            } catch (final SExprException.CondExhausted e) {
+                // Expected, as (f 'b) precedes (f 'a).
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectNegativeCutoff() {
+        new ParallelEvaluator(Resolver.resolve(Parser.parse("a")), pool, -1);
+    }
+
+    /** Creates binary tree of given depth, with leaves alternating between the atoms a and b. */
+    private static String treeOf(final int depth) {
+        return depth == 0 ? "(a b)" : "(" + treeOf(depth - 1) + " " + treeOf(depth - 1) + ")";
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestPositions {
+    @Test(dataProvider = "positions")
+    public void shouldPackAndUnpackPositions(final int row, final int column) {
+        final long position = Positions.pack(row, column);
+        assertEquals(Positions.rowOf(position), row);
+        assertEquals(Positions.columnOf(position), column);
+    }
+
+    @DataProvider(name = "positions")
+    public Object[][] providePositions() {
+        return new Object[][]{
+                {1, 1},
+                {12, 345},
+                {Integer.MAX_VALUE, Integer.MAX_VALUE},
+        };
+    }
+
+    @Test
+    public void shouldRecordPositionsOfParsedAtoms() {
+        final SExpr e = Parser.parse("(a\n  (b c))");
+        assertEquals(Positions.get(e.car()), Positions.pack(1, 2));
+        assertEquals(Positions.get(e.cdr().car().cdr().car()), Positions.pack(2, 6));
+    }
+
+    @Test
+    public void shouldRecordPositionsOfBacktrackedAtoms() {
+        final SExpr e = Parser.parse("(a\n . b)");
+        assertEquals(Positions.get(e.car()), Positions.pack(1, 2));
+        assertEquals(Positions.get(e.cdr()), Positions.pack(2, 4));
+    }
+
+    @Test
+    public void shouldFindPositionsOfParsedConses() {
+        final SExpr e = Parser.parse("(a\n  (b c))");
+        assertEquals(Positions.get(e), Positions.NONE);
+        assertEquals(Positions.find(e), Positions.pack(1, 2));
+        assertEquals(Positions.find(e.cdr().car()), Positions.pack(2, 4));
+    }
+
+    @Test
+    public void shouldNotRecordPositionsOfRuntimeExpressions() {
+        final SExpr e = new SExpr.Cons(SExpr.Atom.of("a"), SExpr.NIL);
+        assertEquals(Positions.find(e), Positions.NONE);
+        assertEquals(Positions.prefixOf(e), "");
+        assertFalse(e.token().isPresent());
+    }
+
+    @Test
+    public void shouldRecreateTokensFromPositions() {
+        final SExpr e = Parser.parse("(a\n  (b c))").cdr().car();
+        assertTrue(e.token().isPresent());
+        assertEquals(e.token().get().lexeme(), "b");
+        assertEquals(e.token().get().origin().toString(), "2:4");
+    }
+
+    @Test
+    public void shouldReportPositionsInExceptions() {
+        try {
+            Evaluator.eval("(cond\n  ((eq 'a 'b) 'c))");
+            fail();
+
+        } catch (final SExprException e) {
+            assertTrue(e.getMessage().startsWith("2:5 "), e.getMessage());
+        }
+    }
+}
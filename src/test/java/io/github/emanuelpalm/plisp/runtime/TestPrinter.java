@@ -0,0 +1,92 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestPrinter {
+    @Test(dataProvider = "expressions")
+    public void shouldPrintExpressions(final String input, final String expected) {
+        assertEquals(Printer.FULL.print(Parser.parse(input)), expected);
+    }
+
+    @DataProvider(name = "expressions")
+    public Object[][] provideExpressions() {
+        return new Object[][]{
+                {"a", "a"},
+                {"()", "NIL"},
+                {"(a)", "(a)"},
+                {"(a b c)", "(a b c)"},
+                {"(a . b)", "(a . b)"},
+                {"(a . (b . c))", "(a b . c)"},
+                {"(a (b (c)) () d)", "(a (b (c)) NIL d)"},
+                {"((a . b) (c . d))", "((a . b) (c . d))"},
+                {"'a", "(quote a)"},
+        };
+    }
+
+    @Test(dataProvider = "truncations")
+    public void shouldTruncateExpressions(final int depth, final int length, final String expected) {
+        final SExpr e = Parser.parse("(a (b (c d) e) f g)");
+        assertEquals(new Printer(depth, length).print(e), expected);
+    }
+
+    @DataProvider(name = "truncations")
+    public Object[][] provideTruncations() {
+        return new Object[][]{
+                {0, 10, "..."},
+                {1, 10, "(a ... f g)"},
+                {2, 10, "(a (b ... e) f g)"},
+                {3, 10, "(a (b (c d) e) f g)"},
+                {10, 0, "(...)"},
+                {10, 2, "(a (b (c d) ...) ...)"},
+                {2, 1, "(a ...)"},
+        };
+    }
+
+    @Test
+    public void shouldPrintConsesLikeToString() {
+        final SExpr e = Parser.parse("(a (b . c) ((d)) NIL)");
+        assertEquals(e.toString(), Printer.FULL.print(e));
+    }
+
+    @Test
+    public void shouldPrintToWriters() throws IOException {
+        final StringWriter writer = new StringWriter();
+        Printer.FULL.print(Parser.parse("(a (b c))"), writer);
+        assertEquals(writer.toString(), "(a (b c))");
+    }
+
+    @Test
+    public void shouldPrintLongLists() {
+        final SExpr[] elements = new SExpr[100000];
+        for (int i = 0; i < elements.length; ++i) {
+            elements[i] = SExpr.Atom.of("a");
+        }
+        SExpr e = SExpr.NIL;
+        for (final SExpr element : elements) {
+            e = new SExpr.Cons(element, e);
+        }
+        final String s = e.toString();
+        assertEquals(s.length(), 2 * elements.length + 1);
+        assertEquals(SExpr.Vector.of(elements, SExpr.NIL).toString(), s);
+    }
+
+    @Test
+    public void shouldPrintDeepLists() {
+        SExpr e = SExpr.NIL;
+        for (int i = 0; i < 100000; ++i) {
+            e = new SExpr.Cons(e, SExpr.NIL);
+        }
+        final String s = e.toString();
+        assertEquals(s.length(), 100000 * 2 + 3);
+        assertEquals(s.indexOf("NIL"), 100000);
+        assertTrue(s.startsWith("((((") && s.endsWith("))))"));
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestProfiler {
+    private static final String SUBST = "((label subst (lambda (x y z) (cond " +
+            "((atom z) (cond ((eq z y) x) ('t z))) " +
+            "('t (cons (subst x y (car z)) (subst x y (cdr z))))))) " +
+            "((label twice (lambda (z) (cons (subst 'm 'b z) (subst 'n 'a z)))) (twice '(a b (a b)))))";
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(Profiler.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test(dataProvider = "futures")
+    public void shouldEvaluateFuturesLikeEvaluator(final String input, final SExpr expected) {
+        assertEquals(Profiler.eval(input), expected);
+    }
+
+    @DataProvider(name = "futures")
+    public Object[][] providerFuture() {
+        return new TestEvaluator().providerFuture();
+    }
+
+    @Test(dataProvider = "intervals")
+    public void shouldCountCallsAndConsesPerLabel(final long interval) {
+        final Profiler profiler = new Profiler(Resolver.resolve(Parser.parse(SUBST)), interval);
+        assertEquals(profiler.eval(), Parser.parse("((a m (a m)) . (n b (n b)))"));
+
+        final Map<String, Profiler.Entry> entries = entriesOf(profiler.entries());
+        assertEquals(entries.size(), 2);
+        assertEquals(entries.get("twice").calls(), 1);
+        assertEquals(entries.get("twice").conses(), 1);
+        assertEquals(entries.get("subst").calls(), 22);
+        assertEquals(entries.get("subst").conses(), 10);
+        assertEquals(profiler.isSampled(), interval != Profiler.DETERMINISTIC);
+    }
+
+    @DataProvider(name = "intervals")
+    public Object[][] provideIntervals() {
+        return new Object[][]{{Profiler.DETERMINISTIC}, {1}, {Profiler.DEFAULT_INTERVAL}};
+    }
+
+    @Test
+    public void shouldIncludeRecursiveCallsOnce() {
+        final Profiler profiler = new Profiler(Resolver.resolve(Parser.parse(SUBST)), Profiler.DETERMINISTIC);
+        for (int i = 0; i < 10; ++i) {
+            profiler.eval();
+        }
+        final Map<String, Profiler.Entry> entries = entriesOf(profiler.entries());
+        final Profiler.Entry twice = entries.get("twice"), subst = entries.get("subst");
+        assertEquals(subst.calls(), 220);
+        assertTrue(subst.exclusive() > 0 && subst.exclusive() <= subst.inclusive());
+        assertTrue(twice.inclusive() >= twice.exclusive() + subst.inclusive());
+        assertTrue(twice.inclusive() <= profiler.nanos());
+    }
+
+    @Test
+    public void shouldWriteCollapsedStacks() throws IOException {
+        final Profiler profiler = new Profiler(Resolver.resolve(Parser.parse(SUBST)), Profiler.DETERMINISTIC);
+        profiler.eval();
+
+        final StringBuilder builder = new StringBuilder();
+        profiler.writeCollapsed(builder);
+        final String[] lines = builder.toString().split("\n");
+        assertEquals(lines[0].substring(0, lines[0].indexOf(' ')), Profiler.ROOT);
+        assertEquals(lines[1].substring(0, lines[1].indexOf(' ')), "program;twice");
+        assertEquals(lines[2].substring(0, lines[2].indexOf(' ')), "program;twice;subst");
+        assertEquals(lines.length, 3);
+
+        long sum = 0;
+        for (final String line : lines) {
+            assertTrue(line.matches(Profiler.ROOT + "(;twice(;subst)?)? [1-9][0-9]*"), line);
+            sum += Long.parseLong(line.substring(line.indexOf(' ') + 1));
+        }
+        assertEquals(sum, profiler.nanos());
+    }
+
+    @Test
+    public void shouldFoldRecursiveCallsIntoNearestCallToSameLabel() throws IOException {
+        final StringBuilder list = new StringBuilder("'(");
+        for (int i = 0; i < 200; ++i) {
+            list.append("a ");
+        }
+        final String program = "((label copy (lambda (x) (cond ((eq x '()) '()) ('t (cons (car x) (copy (cdr x))))))) " +
+                "(copy " + list.append(")") + "))";
+        final Profiler profiler = new Profiler(Resolver.resolve(Parser.parse(program)), Profiler.DETERMINISTIC);
+        assertEquals(profiler.eval().size(), 200);
+
+        final StringBuilder builder = new StringBuilder();
+        profiler.writeCollapsed(builder);
+        for (final String line : builder.toString().split("\n")) {
+            assertTrue(line.matches(Profiler.ROOT + "(;copy)? [1-9][0-9]*"), line);
+        }
+        final Profiler.Entry copy = entriesOf(profiler.entries()).get("copy");
+        assertEquals(copy.calls(), 201);
+        assertTrue(copy.exclusive() <= copy.inclusive());
+        assertTrue(copy.inclusive() <= profiler.nanos());
+    }
+
+    @Test
+    public void shouldWriteSummarySortedByExclusiveTime() {
+        final Profiler profiler = new Profiler(Resolver.resolve(Parser.parse(SUBST)), Profiler.DETERMINISTIC);
+        profiler.eval();
+
+        final List<Profiler.Entry> entries = profiler.entries();
+        assertTrue(entries.get(0).exclusive() >= entries.get(1).exclusive());
+        final String summary = profiler.toString();
+        assertTrue(summary.indexOf(entries.get(0).definition().toString())
+                < summary.indexOf(entries.get(1).definition().toString()), summary);
+        assertTrue(summary.contains(" 22 "), summary);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectNegativeInterval() {
+        new Profiler(Resolver.resolve(Parser.parse("a")), -1);
+    }
+
+    private static Map<String, Profiler.Entry> entriesOf(final List<Profiler.Entry> list) {
+        final Map<String, Profiler.Entry> entries = new HashMap<>();
+        for (final Profiler.Entry entry : list) {
+            entries.put(entry.definition().toString(), entry);
+        }
+        return entries;
+    }
+}
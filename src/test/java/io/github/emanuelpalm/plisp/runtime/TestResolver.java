@@ -0,0 +1,70 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestResolver {
+    private static final String SUBST = "((label subst (lambda (x y z) (cond ((atom z) (cond ((eq z y) x) ('t z))) " +
+            "('t (cons (subst x y (car z)) (subst x y (cdr z))))))) %s)";
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateResolvedProgramLikeExpression(final String input, final SExpr expected) {
+        assertEquals(Evaluator.eval(Resolver.resolve(Parser.parse(input))), expected);
+        assertEquals(Evaluator.eval(input), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        final Object[][] functions = new TestEvaluator().providerFunction();
+        final Object[][] more = new Object[][]{
+                new Object[]{String.format(SUBST, "(subst 'x 'b '(a b (c b)))"), Parser.parse("(a x (c x))")},
+                new Object[]{"((label f (lambda () x)) ((lambda (x) (f)) 'a))", SExpr.Atom.of("a")},
+                new Object[]{"((label f (lambda (x) x)) ((lambda (f) (f 'a)) 'car))", SExpr.Atom.of("a")},
+                new Object[]{"((label f (lambda (x) (g x))) ((label g (lambda (y) (cons y y))) (f 'a)))", Parser.parse("(a . a)")},
+                new Object[]{"((lambda (x) ((lambda (y) (cons x y)) 'b)) 'a)", Parser.parse("(a . b)")},
+                new Object[]{"((lambda (g) (g 'a)) '(lambda (x) (cons x x)))", Parser.parse("(a . a)")},
+                new Object[]{"((label x 'c) x)", Parser.parse("'c")},
+        };
+        final Object[][] all = new Object[functions.length + more.length][];
+        System.arraycopy(functions, 0, all, 0, functions.length);
+        System.arraycopy(more, 0, all, functions.length, more.length);
+        return all;
+    }
+
+    @Test
+    public void shouldResolveSelfRecursiveLabelCall() {
+        final Program p = Resolver.resolve(Parser.parse(String.format(SUBST, "(subst 'x 'b 'b)")));
+        assertEquals(p.definitions().size(), 1);
+
+        final Resolved.Definition subst = p.definitions().get(0);
+        assertEquals(p.root().tag(), Resolved.BIND);
+        assertEquals(p.root().operands[0].tag(), Resolved.CALL);
+        assertEquals(subst.body.operands[3].operands[0].tag(), Resolved.CALL);
+        assertEquals(subst.body.operands[0].operands[0].tag(), Resolved.SLOT);
+    }
+
+    @Test
+    public void shouldLeaveShadowableLabelsDynamic() {
+        final Program p = Resolver.resolve(Parser.parse("((label f (lambda (x) (f x))) ((lambda (f) (f 'a)) 'car))"));
+        assertEquals(p.definitions().get(0).body.tag(), Resolved.INVOKE);
+        assertEquals(p.definitions().get(0).body.operands[0].tag(), Resolved.DYNAMIC);
+    }
+
+    @Test(expectedExceptions = SExprException.AtomNotFound.class)
+    public void shouldThrowSExprExceptionAtomNotFound() {
+        Evaluator.eval(Resolver.resolve(Parser.parse("(unknown-atom 'a 'b)")));
+    }
+
+    @Test(expectedExceptions = SExprException.CondExhausted.class)
+    public void shouldThrowSExprExceptionCondExhausted() {
+        Evaluator.eval(Resolver.resolve(Parser.parse("(cond ((eq 'a 'b) '10))")));
+    }
+
+    @Test(expectedExceptions = SExprException.class)
+    public void shouldThrowSExprException() {
+        Evaluator.eval(Resolver.resolve(Parser.parse("(('() 'a 'b))")));
+    }
+}
@@ -8,6 +8,8 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestSExpr {
     @Test
@@ -71,6 +73,77 @@ public class TestSExpr {
         ));
     }
 
+    @Test(dataProvider = "structures")
+    public void shouldHashStructurallyEqualConsesEqually(final String input) {
+        final SExpr a = Parser.parse(input), b = Parser.parse(input);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.hashCode(), Conses.intern(b).hashCode());
+    }
+
+    @DataProvider(name = "structures")
+    public Object[][] provideStructures() {
+        return new Object[][]{
+                {"(a)"},
+                {"(a . b)"},
+                {"((a b) (c (d)) ())"},
+        };
+    }
+
+    @Test
+    public void shouldCompareAndHashLongLists() {
+        SExpr a = SExpr.NIL, b = SExpr.NIL;
+        for (int i = 0; i < 100000; ++i) {
+            a = new SExpr.Cons(SExpr.Atom.of("x"), a);
+            b = new SExpr.Cons(SExpr.Atom.of("x"), b);
+        }
+        assertTrue(a.equals(b));
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(b.cdr()));
+    }
+
+    @Test
+    public void shouldBehaveLikeConsChainIfVector() {
+        final SExpr[] elements = {SExpr.Atom.of("a"), SExpr.Atom.of("b"), SExpr.Atom.of("c")};
+        final SExpr v = SExpr.Vector.of(elements, SExpr.Atom.of("d"));
+        final SExpr c = Parser.parse("(a . (b . (c . d)))");
+
+        assertTrue(v instanceof SExpr.Vector);
+        assertEquals(v, c);
+        assertEquals(c, v);
+        assertEquals(v.hashCode(), c.hashCode());
+        assertEquals(v.cdr(), c.cdr());
+        assertEquals(v.cdr().hashCode(), c.cdr().hashCode());
+        assertEquals(v.cdr().cdr().cdr(), SExpr.Atom.of("d"));
+        assertEquals(v.size(), c.size());
+        assertEquals(v.cdr().size(), c.cdr().size());
+        assertEquals(v.toString(), c.toString());
+        assertEquals(v.concat(SExpr.Atom.of("e")), c.concat(SExpr.Atom.of("e")));
+        assertEquals(v.zip(Parser.parse("(1 2)")), c.zip(Parser.parse("(1 2)")));
+
+        elements[0] = SExpr.Atom.of("x");
+        assertEquals(v.car(), SExpr.Atom.of("a"));
+    }
+
+    @Test
+    public void shouldBuildVectorsFromListsOfSExprs() {
+        assertTrue(SExpr.Cons.of(SExpr.Atom.of("a"), SExpr.Atom.of("b")) instanceof SExpr.Vector);
+        assertTrue(Parser.parse("(a b c)") instanceof SExpr.Vector);
+        assertEquals(SExpr.Cons.of(), SExpr.NIL);
+    }
+
+    @Test
+    public void shouldCompactConsChains() {
+        final SExpr c = new SExpr.Cons(SExpr.Atom.of("a"), new SExpr.Cons(
+                new SExpr.Cons(SExpr.Atom.of("b"), SExpr.NIL), SExpr.Atom.of("c")));
+        final SExpr v = SExpr.Vector.compact(c);
+
+        assertTrue(v instanceof SExpr.Vector);
+        assertTrue(v.cdr().car() instanceof SExpr.Vector);
+        assertEquals(v, c);
+        assertEquals(v.size(), 3);
+    }
+
     @Test
     public void shouldProvideChildTokenIfNoConsTokenIsAvailable() {
         final SExpr c0 = SExpr.Cons.of(
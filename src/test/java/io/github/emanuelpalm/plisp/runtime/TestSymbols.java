@@ -0,0 +1,97 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestSymbols {
+    @Test
+    public void shouldInternEqualNamesIntoSameSymbol() {
+        assertSame(Symbols.intern("abc"), Symbols.intern(new String("abc")));
+    }
+
+    @Test
+    public void shouldGiveDistinctNamesDistinctIds() {
+        assertNotEquals(Symbols.intern("abc").id(), Symbols.intern("abd").id());
+    }
+
+    @Test
+    public void shouldKeepElementaryFunctionIds() {
+        assertEquals(Symbols.intern("quote").id(), Symbols.QUOTE_ID);
+        assertEquals(Symbols.intern("cond").id(), Symbols.COND_ID);
+        assertEquals(Symbols.intern("label").id(), Symbols.LABEL_ID);
+        assertEquals(Symbols.intern("t").id(), Symbols.T_ID);
+    }
+
+    @Test
+    public void shouldInternParsedAtoms() {
+        final SExpr e = Parser.parse("(a a)");
+        assertSame(((SExpr.Atom) e.car()).symbol(), ((SExpr.Atom) e.cdr().car()).symbol());
+        assertSame(((SExpr.Atom) e.car()).symbol(), SExpr.Atom.of("a").symbol());
+    }
+
+    @Test
+    public void shouldEvictDroppedSymbolsAndGiveReinternedNamesFreshIds() throws InterruptedException {
+        final List<Symbol> kept = new ArrayList<>();
+        List<Symbol> dropped = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            kept.add(Symbols.intern("kept-symbol-" + i));
+            dropped.add(Symbols.intern("dropped-symbol-" + i));
+        }
+        final int expected = Symbols.size() - 1000;
+        final WeakReference<Symbol> first = new WeakReference<>(dropped.get(0));
+
+        dropped = null;
+        for (int i = 0; i < 10 && Symbols.size() > expected; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(Symbols.size() <= expected, "Size " + Symbols.size() + " > " + expected);
+        assertNull(first.get());
+
+        final Set<Integer> ids = new HashSet<>();
+        for (final Symbol s : kept) {
+            ids.add(s.id());
+        }
+        for (final Symbol s : new Symbol[]{Symbols.QUOTE, Symbols.COND, Symbols.T, Symbols.TOUCH}) {
+            ids.add(s.id());
+        }
+        for (int i = 0; i < 1000; ++i) {
+            final Symbol s = Symbols.intern("dropped-symbol-" + i);
+            assertEquals(s.name(), "dropped-symbol-" + i);
+            assertTrue(ids.add(s.id()), "Id " + s.id() + " of " + s.name() + " already in use.");
+        }
+        assertSame(Symbols.intern("kept-symbol-0"), kept.get(0));
+    }
+
+    @Test
+    public void shouldInternSameSymbolFromManyThreads() throws InterruptedException, ExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Symbol>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; ++i) {
+                futures.add(executor.submit(() -> Symbols.intern("concurrent")));
+            }
+            for (final Future<Symbol> future : futures) {
+                assertSame(future.get(), Symbols.intern("concurrent"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
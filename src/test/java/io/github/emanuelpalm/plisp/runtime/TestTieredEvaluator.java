@@ -0,0 +1,84 @@
+package io.github.emanuelpalm.plisp.runtime;
+
+import io.github.emanuelpalm.plisp.parser.Parser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestTieredEvaluator {
+    private static final String SUBST = "((label subst (lambda (x y z) (cond " +
+            "((atom z) (cond ((eq z y) x) ('t z))) " +
+            "('t (cons (subst x y (car z)) (subst x y (cdr z))))))) " +
+            "(subst 'm 'b '(a b (a b c) d)))";
+
+    @Test(dataProvider = "functions")
+    public void shouldEvaluateInputLikeEvaluator(final String input, final SExpr expected) {
+        final Program p = Resolver.resolve(Parser.parse(input));
+        assertEquals(new TieredEvaluator(p, 1, Runnable::run, promotion -> {
+        }).eval(), expected);
+    }
+
+    @DataProvider(name = "functions")
+    public Object[][] providerFunction() {
+        return new TestResolver().providerFunction();
+    }
+
+    @Test
+    public void shouldCountLabelCalls() {
+        final Program p = Resolver.resolve(Parser.parse(SUBST));
+        final TieredEvaluator t = new TieredEvaluator(p, 1000, Runnable::run, promotion -> {
+        });
+        assertEquals(t.eval(), Parser.parse("(a m (a m c) d)"));
+        assertEquals(t.countOf(p.definitions().get(0)), 15);
+        assertFalse(t.isPromoted(p.definitions().get(0)));
+    }
+
+    @Test
+    public void shouldPromoteLabelReachingThreshold() {
+        final Program p = Resolver.resolve(Parser.parse(SUBST));
+        final List<TieredEvaluator.Promotion> promotions = new ArrayList<>();
+        final TieredEvaluator t = new TieredEvaluator(p, 5, Runnable::run, promotions::add);
+
+        assertEquals(t.eval(), Parser.parse("(a m (a m c) d)"));
+        assertTrue(t.isPromoted(p.definitions().get(0)));
+        assertEquals(t.countOf(p.definitions().get(0)), 5);
+        assertEquals(promotions.size(), 1);
+        assertEquals(promotions.get(0).definition(), p.definitions().get(0));
+
+        assertEquals(t.eval(), Parser.parse("(a m (a m c) d)"));
+        assertEquals(t.countOf(p.definitions().get(0)), 5);
+        assertEquals(promotions.size(), 1);
+    }
+
+    @Test
+    public void shouldPromoteLabelsInBackground() throws InterruptedException {
+        final Program p = Resolver.resolve(Parser.parse(SUBST));
+        final List<TieredEvaluator.Promotion> promotions = new ArrayList<>();
+        final TieredEvaluator t = new TieredEvaluator(p, 1, promotion -> {
+            synchronized (promotions) {
+                promotions.add(promotion);
+                promotions.notifyAll();
+            }
+        });
+        assertEquals(t.eval(), Parser.parse("(a m (a m c) d)"));
+        synchronized (promotions) {
+            while (promotions.isEmpty()) {
+                promotions.wait();
+            }
+        }
+        assertTrue(t.isPromoted(p.definitions().get(0)));
+        assertEquals(t.eval(), Parser.parse("(a m (a m c) d)"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveThreshold() {
+        new TieredEvaluator(Resolver.resolve(Parser.parse("'a")), 0, promotion -> {
+        });
+    }
+}